@@ -2,8 +2,10 @@ package com.wishlist.cst438project2;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class Cst438Project2Application {
 
 	public static void main(String[] args) {
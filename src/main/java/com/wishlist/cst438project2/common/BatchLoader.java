@@ -0,0 +1,159 @@
+package com.wishlist.cst438project2.common;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Collects point reads from concurrent requests into multi-key reads
+ * <p>
+ * the first load() after a dispatch opens a window, every key asked for until the window closes or maxBatchSize
+ * distinct keys are waiting goes out in one call of the batch function, and each caller's future completes with
+ * the value found for its key (null if the batch function didn't return one). A key asked for twice in one window
+ * is read once. A zero window dispatches every load() right away, as a batch of one.
+ * Keys that fail the validKey check are answered with null on their own and never reach the batch function,
+ * so one malformed key can't fail the reads it would have been batched with
+ * @version %I% %G%
+ */
+
+public class BatchLoader<K, V> implements StatsProvider {
+
+    private final String name;
+    private final Function<List<K>, CompletableFuture<Map<K, V>>> batchFunction;
+    private final Predicate<K> validKey;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Executor delayedExecutor;
+
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+    private long generation;
+
+    private long loads;
+    private long invalidKeys;
+    private long batches;
+    private long dispatchedKeys;
+    private long largestBatch;
+    private long fullBatches;
+
+    public BatchLoader(String name, Function<List<K>, CompletableFuture<Map<K, V>>> batchFunction, Duration window, int maxBatchSize) {
+        this(name, batchFunction, key -> true, window, maxBatchSize);
+    }
+
+    public BatchLoader(String name, Function<List<K>, CompletableFuture<Map<K, V>>> batchFunction, Predicate<K> validKey,
+                       Duration window, int maxBatchSize) {
+        this.name = name;
+        this.batchFunction = batchFunction;
+        this.validKey = validKey;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.delayedExecutor = CompletableFuture.delayedExecutor(windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * returns the value stored under key or null, read together with the other keys of its window
+     */
+    public CompletableFuture<V> load(K key) {
+
+        CompletableFuture<V> future;
+        Map<K, CompletableFuture<V>> full = null;
+
+        if (!validKey.test(key)) {
+            synchronized (this) {
+                loads++;
+                invalidKeys++;
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        synchronized (this) {
+            loads++;
+            future = pending.get(key);
+            if (Objects.isNull(future)) {
+                future = new CompletableFuture<>();
+                pending.put(key, future);
+
+                if (pending.size() >= maxBatchSize || windowNanos <= 0) {
+                    if (windowNanos > 0)
+                        fullBatches++;
+                    full = takePending();
+                } else if (pending.size() == 1) {
+                    long windowGeneration = generation;
+                    delayedExecutor.execute(() -> flush(windowGeneration));
+                }
+            }
+        }
+
+        if (Objects.nonNull(full))
+            dispatch(full);
+        // a copy, so one caller cancelling its future can't affect another caller of the same key
+        return future.copy();
+    }
+
+    @Override
+    public String getStatsName() {
+        return name;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("loads", loads);
+        stats.put("invalidKeys", invalidKeys);
+        stats.put("batches", batches);
+        stats.put("dispatchedKeys", dispatchedKeys);
+        stats.put("largestBatch", largestBatch);
+        stats.put("fullBatches", fullBatches);
+        stats.put("pending", (long) pending.size());
+        return stats;
+    }
+
+    /**
+     * dispatches the keys of the window that was opened at windowGeneration, unless they went out already
+     * because the batch filled up
+     */
+    private void flush(long windowGeneration) {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            if (generation != windowGeneration || pending.isEmpty())
+                return;
+            batch = takePending();
+        }
+        dispatch(batch);
+    }
+
+    private synchronized Map<K, CompletableFuture<V>> takePending() {
+        Map<K, CompletableFuture<V>> batch = pending;
+        pending = new LinkedHashMap<>();
+        generation++;
+
+        batches++;
+        dispatchedKeys += batch.size();
+        largestBatch = Math.max(largestBatch, batch.size());
+        return batch;
+    }
+
+    private void dispatch(Map<K, CompletableFuture<V>> batch) {
+
+        CompletableFuture<Map<K, V>> values;
+        try {
+            values = batchFunction.apply(new ArrayList<>(batch.keySet()));
+        } catch (RuntimeException ex) {
+            values = CompletableFuture.failedFuture(ex);
+        }
+
+        values.whenComplete((found, ex) -> batch.forEach((key, future) -> {
+            if (Objects.nonNull(ex))
+                future.completeExceptionally(ex);
+            else
+                future.complete(found.get(key));
+        }));
+    }
+}
@@ -7,22 +7,44 @@ package com.wishlist.cst438project2.common;
 
 public class Constants {
 
+    /** PROFILES */
+    public static final String PROFILE_IN_MEMORY = "in-memory";
+
+    /** LIMITS */
+    public static final int MAX_SEARCH_LIMIT = 1000;
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /** MEDIA TYPES */
+    public static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+    public static final String MEDIA_TYPE_CSV = "text/csv";
+
     /** FIREBASE DOCUMENTS */
     public static final String DOCUMENT_PRODUCT = "product";
     public static final String DOCUMENT_USER = "user";
     public static final String DOCUMENT_ITEM = "item";
     public static final String DOCUMENT_USER_WISHLIST = "wishlist";
     public static final String DOCUMENT_ACCESS_TOKEN = "access_token";
+    public static final String DOCUMENT_ID_SEQUENCE = "id_sequence";
+    public static final String DOCUMENT_ITEM_ID_KEY = "item_id";
 
     /** FIREBASE FIELDS **/
     public static final String FIELD_USERNAME = "username";
+    public static final String FIELD_FIRST_NAME = "firstName";
+    public static final String FIELD_LAST_NAME = "lastName";
+    public static final String FIELD_EMAIL_ID = "emailId";
+    public static final String FIELD_PASSWORD = "password";
+    public static final String FIELD_ROLE = "role";
     public static final String FIELD_USER_ID = "userId";
     public static final String FIELD_ITEM_NAME = "name";
     public static final String FIELD_ITEM_ID = "itemId";
     public static final String FIELD_ITEM_LINK = "link";
     public static final String FIELD_ITEM_DESCRIPTION = "description";
     public static final String FIELD_ITEM_IMG_URL = "imgUrl";
+    public static final String FIELD_ITEM_PRIORITY = "priority";
     public static final String FIELD_ITEM_USER_ID = "userId";
+    public static final String FIELD_NEXT_ID = "nextId";
+    public static final String FIELD_DOC_ID = "docId";
+    public static final String FIELD_ITEM_IDS = "itemIds";
 
     /** ERROR MESSAGES */
     public static final String ERROR_BAD_REQUEST = "Bad request";
@@ -36,12 +58,29 @@ public class Constants {
     public static final String ERROR_INVALID_PASSWORD = "Invalid password!";
     public static final String ERROR_ITEM_NOT_FOUND = "Item not found";
     public static final String ERROR_ITEM_ALREADY_EXISTS = "Item with name: {name} already exists!";
+    public static final String ERROR_ITEMS_ALREADY_EXIST = "One or more of the items already exist!";
     public static final String ERROR_ITEM_DOES_NOT_EXISTS = "Item with name: {name} does not exists!";
     public static final String ERROR_UNAUTHORIZED = "Unauthorized";
     public static final String ERROR_INVALID_TOKEN = "Invalid user token";
     public static final String ERROR_UNABLE_TO_ADD_ITEM_TO_WISHLIST = "Unable to add item to wishlist at the moment";
     public static final String ERROR_UNABLE_TO_FETCH_WISHLIST = "Unable to fetch wishlist at the moment";
+    public static final String ERROR_UNABLE_TO_REMOVE_ITEM_FROM_WISHLIST = "Unable to remove item from wishlist at the moment";
+    public static final String ERROR_WISHLIST_REORDER_MISMATCH = "Reordered item ids must be exactly the items on the wishlist";
+    public static final String ERROR_EMPTY_ITEM_QUERY = "Item query needs at least one of userIds, priorities, hasLink or keywords";
+    public static final String ERROR_INVALID_SEARCH_LIMIT = "Search limit must be between 1 and " + MAX_SEARCH_LIMIT;
+    public static final String ERROR_INVALID_PAGE_SIZE = "pageSize must be between 1 and " + MAX_SEARCH_LIMIT;
+    public static final String ERROR_INVALID_CURSOR = "Invalid page cursor";
+    public static final String ERROR_INVALID_PAGE = "Page must be 0 or more and pageSize between 1 and " + MAX_SEARCH_LIMIT;
     public static final String ERROR_UNABLE_TO_CREATE_USER = "Unable to create user at the moment";
+    public static final String ERROR_UNABLE_TO_SAVE_ITEM = "Unable to save item at the moment";
+    public static final String ERROR_ITEM_NAME_REQUIRED = "Item must have a name.";
+    public static final String ERROR_INVALID_PRIORITY = "valid priority levels: low, med, high";
+    public static final String ERROR_INVALID_IMPORT_ROW = "Invalid row: ";
+    public static final String ERROR_IMPORT_FIELD_COUNT = "Row doesn't have as many fields as the header";
+    public static final String ERROR_IMPORT_CSV_HEADER = "CSV header must have a name column";
+    public static final String ERROR_JOB_NOT_FOUND = "Job not found";
+    public static final String ERROR_VERSION_MISMATCH = "Changed since it was read, fetch it again and retry";
+    public static final String ERROR_IMPORT_TOO_LARGE = "Import is limited to {rows} rows";
 
     /** SUCCESS MESSAGES */
     public static final String USER_DELETED = "User deleted successfully";
@@ -53,10 +92,12 @@ public class Constants {
     public static final String USER_LOGOUT_SUCCESSFUL = "User logged-out successfully";
     public static final String USER_ACCESS_TOKEN_DELETED = "User access token deleted!";
     public static final String USER_CREATED = "User created successfully!";
+    public static final String ITEM_KEYS_MIGRATED = "Item documents moved to keyed ids: ";
 
     /** KEYS */
     public static final String KEY_USERNAME = "{username}";
     public static final String KEY_ITEM_NAME = "{name}";
+    public static final String KEY_ROWS = "{rows}";
 
     /** SECRETS */
     public static final String KEY_SECRET_TOKEN = "wi$#|i$t";
@@ -0,0 +1,99 @@
+package com.wishlist.cst438project2.common;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * reads RFC 4180 style CSV one record at a time
+ * <p>
+ * fields may be quoted, a quoted field can hold commas, line breaks and doubled quotes ("").
+ * Records end at \n or \r\n, blank lines are skipped. Only the current record is held in memory. Not thread-safe.
+ * @version %I% %G%
+ */
+
+public class CsvReader {
+
+    private final Reader reader;
+    private int peeked = -2;
+    private long line = 1;
+    private long recordLine;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * returns the fields of the next record or null at the end of the input
+     * @throws IllegalArgumentException when a quoted field isn't closed before the end of the input
+     */
+    public List<String> next() throws IOException {
+        int c = read();
+        while (c == '\r' || c == '\n')
+            c = read();
+        if (c == -1)
+            return null;
+
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        while (true) {
+            if (quoted) {
+                if (c == -1)
+                    throw new IllegalArgumentException("unclosed quote in record starting at line " + recordLine);
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' && peek() == '\n') {
+                // the \n ends the record on the next turn
+            } else if (c == '\n' || c == -1) {
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * returns the line the last record returned by next() started at, counting from 1
+     */
+    public long getRecordLine() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (peeked != -2) {
+            c = peeked;
+            peeked = -2;
+        } else {
+            c = reader.read();
+        }
+        if (c == '\n')
+            line++;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2)
+            peeked = reader.read();
+        return peeked;
+    }
+}
@@ -0,0 +1,85 @@
+package com.wishlist.cst438project2.common;
+
+import com.wishlist.cst438project2.enums.IdSequence;
+import com.wishlist.cst438project2.repository.IdBlockRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Hands out unique numeric ids (hi-lo)
+ * <p>
+ * ids are reserved from the shared counter in blocks and then served from memory, so only one in every
+ * block-size calls touches the database. Blocks are never shared between nodes, which keeps ids collision-free;
+ * ids left in a block when the app stops are simply skipped, so ids are unique and increasing per node but not gap-free.
+ * @version %I% %G%
+ */
+
+@Component
+@Slf4j
+public class IdAllocator {
+
+    @Autowired
+    private IdBlockRepository idBlockRepository;
+
+    @Value("${wishlist.id-allocator.block-size:50}")
+    private long blockSize;
+
+    private final Map<IdSequence, Block> blocks = new EnumMap<>(IdSequence.class);
+
+    public IdAllocator() {
+        for (IdSequence sequence : IdSequence.values())
+            blocks.put(sequence, new Block());
+    }
+
+    /**
+     * returns the next unused id of the given sequence
+     */
+    public CompletableFuture<Long> nextId(IdSequence sequence) {
+
+        Block block = blocks.get(sequence);
+        CompletableFuture<Void> refill;
+
+        synchronized (block) {
+            if (block.next < block.end)
+                return CompletableFuture.completedFuture(block.next++);
+
+            // callers arriving while a block is being reserved wait for that same reservation
+            if (Objects.isNull(block.pending) || block.pending.isDone()) {
+                log.info("IdAllocator: reserving {} ids for {}", blockSize, sequence);
+                block.pending = idBlockRepository.reserveBlock(sequence, blockSize).thenAccept(start -> {
+                    synchronized (block) {
+                        block.next = start;
+                        block.end = start + blockSize;
+                    }
+                });
+            }
+            refill = block.pending;
+        }
+
+        return refill.thenCompose(reserved -> nextId(sequence));
+    }
+
+    /**
+     * reserves count consecutive ids of the given sequence in one round trip, for bulk writes that would
+     * otherwise drain several blocks. The ids don't come from (or disturb) the block nextId() serves from
+     * returns the first id of the reserved range [first, first + count)
+     */
+    public CompletableFuture<Long> reserve(IdSequence sequence, int count) {
+
+        log.info("IdAllocator: reserving {} ids in bulk for {}", count, sequence);
+        return idBlockRepository.reserveBlock(sequence, count);
+    }
+
+    private static class Block {
+        private long next;
+        private long end;
+        private CompletableFuture<Void> pending;
+    }
+}
@@ -0,0 +1,739 @@
+package com.wishlist.cst438project2.common;
+
+import com.wishlist.cst438project2.document.Item;
+import com.wishlist.cst438project2.dto.ItemDTO;
+import com.wishlist.cst438project2.dto.ItemQueryDTO;
+import com.wishlist.cst438project2.dto.ItemSearchResultDTO;
+import com.wishlist.cst438project2.enums.QueryOperator;
+import com.wishlist.cst438project2.repository.ItemRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory trigram index over item names and descriptions, used for keyword search
+ * <p>
+ * a keyword matches an item when the lowercased name or description contains it, same as the scan it replaces.
+ * Items get a dense int ordinal and every 3 character window of their lowercased text maps to the ordinals
+ * containing it. A keyword's candidates are the intersection of its trigram postings (smallest first), which are
+ * then checked with contains(), so "phone" still finds "headphones". Keywords shorter than 3 characters have no
+ * trigram and are checked against every item.
+ * <p>
+ * item names also go into a PrefixTrie for autocomplete, weighted by how many items carry the same name.
+ * The words of name and description form a second trie, the term dictionary, which fuzzy searches walk
+ * for terms within a few edits of the keyword's words. userId, priority and whether the item has a link are
+ * indexed too, for structured queries.
+ * <p>
+ * The index is loaded once the application is ready and kept up to date by FirebaseIntegration on every item
+ * write of this node. Writes made by other nodes only show up after the periodic reload
+ * (wishlist.search.refresh-ms). Until the first load finishes, isReady() is false and callers are expected to
+ * fall back to scanning. getStats() reports an estimate of the heap the index takes.
+ * @version %I% %G%
+ */
+
+@Component
+@Slf4j
+public class ItemSearchIndex implements StatsProvider {
+
+    // a keyword found in the name counts more than one found in the description
+    public static final int NAME_WEIGHT = 3;
+    public static final int DESCRIPTION_WEIGHT = 1;
+
+    private static final int GRAM_LENGTH = 3;
+
+    // priority facet of items without one
+    public static final String NO_PRIORITY = "none";
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // rough 64-bit JVM sizes used by the memory estimate: a HashSet entry holding a boxed Integer,
+    // a gram with its key String, HashMap entry and empty HashSet, and an indexed item
+    private static final long POSTING_ENTRY_BYTES = 48;
+    private static final long GRAM_BYTES = 160;
+    private static final long ITEM_BYTES = 200;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Postings postings = new Postings();
+    private boolean ready;
+
+    // writes made while a reload is in flight, replayed onto the reloaded postings
+    private List<Consumer<Postings>> journal;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        reload();
+    }
+
+    @Scheduled(initialDelayString = "${wishlist.search.refresh-ms:300000}", fixedDelayString = "${wishlist.search.refresh-ms:300000}")
+    public void refresh() {
+        reload();
+    }
+
+    /**
+     * rebuilds the index from the item collection
+     */
+    public CompletableFuture<Void> reload() {
+
+        log.info("ItemSearchIndex: Starting reload");
+
+        lock.writeLock().lock();
+        try {
+            if (Objects.nonNull(journal))
+                return CompletableFuture.completedFuture(null);
+            journal = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        return itemRepository.findAll().handle((items, ex) -> {
+
+            lock.writeLock().lock();
+            try {
+                if (Objects.nonNull(ex)) {
+                    log.error("ItemSearchIndex: reload failed, keeping the current index", ex);
+                } else {
+                    Postings reloaded = new Postings();
+                    for (Item item : items)
+                        reloaded.put(item.getDocId(), item.fetchItemDTO());
+                    journal.forEach(write -> write.accept(reloaded));
+
+                    postings = reloaded;
+                    ready = true;
+                    log.info("ItemSearchIndex: Exiting reload, {} items, {} grams", reloaded.size(), reloaded.gramCount());
+                }
+                journal = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return null;
+        });
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return ready;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * adds or replaces the item stored under the given document id
+     */
+    public void put(String docId, ItemDTO itemDTO) {
+        write(current -> current.put(docId, itemDTO));
+    }
+
+    public void remove(String docId) {
+        write(current -> current.remove(docId));
+    }
+
+    /**
+     * applies the non-null fields of changes to the indexed copy of an item and moves it to newDocId,
+     * so a partial update doesn't need the whole item read back. Does nothing if the item isn't indexed
+     */
+    public void patch(String docId, String newDocId, ItemDTO changes, String version) {
+        write(current -> current.patch(docId, newDocId, changes, version));
+    }
+
+    @Override
+    public String getStatsName() {
+        return "itemSearchIndex";
+    }
+
+    @Override
+    public Map<String, Long> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("items", (long) postings.size());
+            stats.put("grams", (long) postings.gramCount());
+            stats.put("postingEntries", postings.postingEntries);
+            stats.put("indexedChars", postings.indexedChars);
+            stats.put("estimatedBytes", postings.estimatedBytes());
+            stats.put("suggestNames", (long) postings.names.size());
+            stats.put("terms", (long) postings.terms.size());
+            stats.put("ready", ready ? 1L : 0L);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * returns the items whose name or description contains at least one of the keywords, ignoring case
+     */
+    public List<ItemDTO> search(List<String> keywords) {
+        lock.readLock().lock();
+        try {
+            return postings.search(keywords);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * returns at most limit matching items, highest score first. Every keyword adds NAME_WEIGHT when the name
+     * contains it and DESCRIPTION_WEIGHT when the description does, ties keep the order of the unranked search
+     */
+    public List<ItemDTO> searchTop(List<String> keywords, int limit) {
+        lock.readLock().lock();
+        try {
+            return postings.searchTop(keywords, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * typo tolerant search: every word of a keyword may be off by up to maxEdits(word) edits from a word of the
+     * item's name or description. An item matches a keyword when all of its words match, and results come
+     * best first by the total number of edits, at most limit of them
+     */
+    public List<ItemDTO> searchFuzzy(List<String> keywords, int limit) {
+        lock.readLock().lock();
+        try {
+            return postings.searchFuzzy(keywords, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * the unranked search as one page plus priority and owner counts over every match
+     */
+    public ItemSearchResultDTO searchFaceted(List<String> keywords, int page, int pageSize) {
+        lock.readLock().lock();
+        try {
+            return postings.searchFaceted(keywords, page, pageSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * builds a result page and its facet counts in a single pass over the matches, only the items of the page
+     * are kept
+     */
+    public static ItemSearchResultDTO facetPage(Iterable<ItemDTO> matches, int page, int pageSize) {
+        long first = (long) page * pageSize;
+        List<ItemDTO> items = new ArrayList<>();
+        Map<String, Long> priorityCounts = new TreeMap<>();
+        Map<Long, Long> ownerCounts = new TreeMap<>();
+        long total = 0;
+
+        for (ItemDTO itemDTO : matches) {
+            if (total >= first && items.size() < pageSize)
+                items.add(itemDTO);
+            total++;
+
+            String priority = normalizePriority(itemDTO.getPriority());
+            priorityCounts.merge(priority.isEmpty() ? NO_PRIORITY : priority, 1L, Long::sum);
+            ownerCounts.merge(itemDTO.getUserId(), 1L, Long::sum);
+        }
+        return new ItemSearchResultDTO(items, page, pageSize, total, priorityCounts, ownerCounts);
+    }
+
+    /**
+     * returns the items matching the structured query, at most limit of them. Each predicate is backed by
+     * postings: for AND the one with the smallest estimated result is materialized and the others are only
+     * probed for its ordinals, for OR the postings are unioned
+     */
+    public List<ItemDTO> query(ItemQueryDTO itemQueryDTO, int limit) {
+        lock.readLock().lock();
+        try {
+            return postings.query(itemQueryDTO, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * evaluates the structured query against a single item, for callers without the index
+     */
+    public static boolean matches(ItemQueryDTO itemQueryDTO, ItemDTO itemDTO) {
+        List<Boolean> results = new ArrayList<>();
+
+        if (Objects.nonNull(itemQueryDTO.getUserIds()))
+            results.add(itemQueryDTO.getUserIds().contains(itemDTO.getUserId()));
+        if (Objects.nonNull(itemQueryDTO.getPriorities()))
+            results.add(normalizePriorities(itemQueryDTO.getPriorities()).contains(normalizePriority(itemDTO.getPriority())));
+        if (Objects.nonNull(itemQueryDTO.getHasLink()))
+            results.add(itemQueryDTO.getHasLink() == hasLink(itemDTO));
+        if (Objects.nonNull(itemQueryDTO.getKeywords())) {
+            String name = normalize(itemDTO.getName());
+            String description = normalize(itemDTO.getDescription());
+            results.add(itemQueryDTO.getKeywords().stream().anyMatch(keyword -> score(name, description, normalize(keyword)) > 0));
+        }
+
+        return itemQueryDTO.getOperator() == QueryOperator.OR ? results.contains(true) : !results.contains(false);
+    }
+
+    /**
+     * returns up to limit item names starting with prefix (ignoring case), most common names first
+     */
+    public List<String> suggest(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return postings.names.complete(normalize(prefix).trim(), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static String normalize(String text) {
+        return Objects.isNull(text) ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    static String normalizePriority(String priority) {
+        return normalize(priority).trim();
+    }
+
+    static Set<String> normalizePriorities(List<String> priorities) {
+        Set<String> normalized = new HashSet<>();
+        for (String priority : priorities)
+            normalized.add(normalizePriority(priority));
+        return normalized;
+    }
+
+    static boolean hasLink(ItemDTO itemDTO) {
+        return Objects.nonNull(itemDTO.getLink()) && !itemDTO.getLink().isBlank();
+    }
+
+    static <K> void addPosting(Map<K, Set<Integer>> postings, K key, int ordinal) {
+        postings.computeIfAbsent(key, k -> new HashSet<>()).add(ordinal);
+    }
+
+    static <K> void removePosting(Map<K, Set<Integer>> postings, K key, int ordinal) {
+        Set<Integer> posting = postings.get(key);
+        if (Objects.nonNull(posting) && posting.remove(ordinal) && posting.isEmpty())
+            postings.remove(key);
+    }
+
+    static Set<String> words(String normalizedText) {
+        Set<String> words = new HashSet<>();
+        for (String word : WORD_SEPARATOR.split(normalizedText))
+            if (!word.isEmpty())
+                words.add(word);
+        return words;
+    }
+
+    /**
+     * edits allowed for a keyword word, short words have to match exactly
+     */
+    static int maxEdits(String word) {
+        if (word.length() <= 2)
+            return 0;
+        return word.length() <= 5 ? 1 : 2;
+    }
+
+    /**
+     * returns the distinct GRAM_LENGTH character windows of the (normalized) text
+     */
+    static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++)
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        return grams;
+    }
+
+    /**
+     * how well one keyword matches an item, 0 when it doesn't
+     */
+    public static long score(String normalizedName, String normalizedDescription, String normalizedKeyword) {
+        return (normalizedName.contains(normalizedKeyword) ? NAME_WEIGHT : 0)
+                + (normalizedDescription.contains(normalizedKeyword) ? DESCRIPTION_WEIGHT : 0);
+    }
+
+    private void write(Consumer<Postings> write) {
+        lock.writeLock().lock();
+        try {
+            write.accept(postings);
+            if (Objects.nonNull(journal))
+                journal.add(write);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * the index data, not thread-safe on its own
+     */
+    private static class Postings {
+
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final List<Entry> entries = new ArrayList<>();
+        private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+        private final Map<String, Set<Integer>> postings = new HashMap<>();
+        private final PrefixTrie names = new PrefixTrie();
+        private final PrefixTrie terms = new PrefixTrie();
+        private final Map<String, Set<Integer>> termPostings = new HashMap<>();
+        private final Map<Long, Set<Integer>> userPostings = new HashMap<>();
+        private final Map<String, Set<Integer>> priorityPostings = new HashMap<>();
+        private final Set<Integer> withLink = new HashSet<>();
+
+        private long postingEntries;
+        private long indexedChars;
+
+        void put(String docId, ItemDTO itemDTO) {
+            remove(docId);
+
+            Entry entry = new Entry(itemDTO);
+            int ordinal = freeOrdinals.isEmpty() ? entries.size() : freeOrdinals.pop();
+            if (ordinal == entries.size())
+                entries.add(entry);
+            else
+                entries.set(ordinal, entry);
+            ordinals.put(docId, ordinal);
+
+            for (String gram : entry.grams()) {
+                postings.computeIfAbsent(gram, key -> new HashSet<>()).add(ordinal);
+                postingEntries++;
+            }
+            indexedChars += entry.name.length() + entry.description.length();
+            if (!entry.name.isBlank())
+                names.add(entry.name.trim(), entry.itemDTO.getName().trim(), 1);
+            for (String term : entry.terms()) {
+                termPostings.computeIfAbsent(term, key -> new HashSet<>()).add(ordinal);
+                terms.add(term, term, 1);
+            }
+            addPosting(userPostings, itemDTO.getUserId(), ordinal);
+            addPosting(priorityPostings, normalizePriority(itemDTO.getPriority()), ordinal);
+            if (hasLink(itemDTO))
+                withLink.add(ordinal);
+        }
+
+        void patch(String docId, String newDocId, ItemDTO changes, String version) {
+            Integer ordinal = ordinals.get(docId);
+            if (Objects.isNull(ordinal))
+                return;
+
+            ItemDTO indexed = entries.get(ordinal).itemDTO;
+            ItemDTO patched = new ItemDTO(indexed.getItemId(),
+                    changed(changes.getName(), indexed.getName()),
+                    changed(changes.getLink(), indexed.getLink()),
+                    changed(changes.getDescription(), indexed.getDescription()),
+                    changed(changes.getImgUrl(), indexed.getImgUrl()),
+                    indexed.getUserId(),
+                    changed(changes.getPriority(), indexed.getPriority()));
+            patched.setVersion(version);
+
+            remove(docId);
+            put(newDocId, patched);
+        }
+
+        private static String changed(String change, String current) {
+            return Objects.isNull(change) ? current : change;
+        }
+
+        void remove(String docId) {
+            Integer ordinal = ordinals.remove(docId);
+            if (Objects.isNull(ordinal))
+                return;
+
+            Entry entry = entries.get(ordinal);
+            for (String gram : entry.grams()) {
+                Set<Integer> posting = postings.get(gram);
+                if (Objects.nonNull(posting) && posting.remove(ordinal)) {
+                    postingEntries--;
+                    if (posting.isEmpty())
+                        postings.remove(gram);
+                }
+            }
+            indexedChars -= entry.name.length() + entry.description.length();
+            if (!entry.name.isBlank())
+                names.add(entry.name.trim(), null, -1);
+            for (String term : entry.terms()) {
+                Set<Integer> posting = termPostings.get(term);
+                if (Objects.nonNull(posting) && posting.remove(ordinal) && posting.isEmpty())
+                    termPostings.remove(term);
+                terms.add(term, null, -1);
+            }
+            removePosting(userPostings, entry.itemDTO.getUserId(), ordinal);
+            removePosting(priorityPostings, normalizePriority(entry.itemDTO.getPriority()), ordinal);
+            withLink.remove(ordinal);
+
+            entries.set(ordinal, null);
+            freeOrdinals.push(ordinal);
+        }
+
+        List<ItemDTO> search(List<String> keywords) {
+            Map<Integer, Long> matches = match(keywords);
+
+            List<ItemDTO> result = new ArrayList<>(matches.size());
+            for (Integer ordinal : matches.keySet())
+                result.add(entries.get(ordinal).itemDTO);
+            return result;
+        }
+
+        /**
+         * the matching ordinals are collected first, the postings of different keywords overlap and an item
+         * may only be counted once. Only the item list of the page is built from them
+         */
+        ItemSearchResultDTO searchFaceted(List<String> keywords, int page, int pageSize) {
+            Set<Integer> matches = match(keywords).keySet();
+
+            return facetPage(() -> matches.stream().map(ordinal -> entries.get(ordinal).itemDTO).iterator(), page, pageSize);
+        }
+
+        List<ItemDTO> searchTop(List<String> keywords, int limit) {
+            TopK<ItemDTO> top = new TopK<>(limit);
+            match(keywords).forEach((ordinal, score) -> top.offer(entries.get(ordinal).itemDTO, score));
+            return top.toList();
+        }
+
+        List<ItemDTO> searchFuzzy(List<String> keywords, int limit) {
+            Map<Integer, Integer> edits = new TreeMap<>();
+
+            for (String keyword : keywords) {
+                Map<Integer, Integer> keywordEdits = null;
+
+                for (String word : words(normalize(keyword))) {
+                    Map<Integer, Integer> wordEdits = new HashMap<>();
+                    terms.forEachWithin(word, maxEdits(word), (term, distance) -> {
+                        for (Integer ordinal : termPostings.get(term))
+                            wordEdits.merge(ordinal, distance, Math::min);
+                    });
+
+                    if (Objects.isNull(keywordEdits)) {
+                        keywordEdits = wordEdits;
+                    } else {
+                        keywordEdits.keySet().retainAll(wordEdits.keySet());
+                        keywordEdits.replaceAll((ordinal, distance) -> distance + wordEdits.get(ordinal));
+                    }
+                    if (keywordEdits.isEmpty())
+                        break;
+                }
+
+                if (Objects.nonNull(keywordEdits))
+                    keywordEdits.forEach((ordinal, distance) -> edits.merge(ordinal, distance, Math::min));
+            }
+
+            TopK<ItemDTO> top = new TopK<>(limit);
+            edits.forEach((ordinal, distance) -> top.offer(entries.get(ordinal).itemDTO, -distance));
+            return top.toList();
+        }
+
+        List<ItemDTO> query(ItemQueryDTO itemQueryDTO, int limit) {
+            List<QueryPredicate> predicates = predicates(itemQueryDTO);
+            Set<Integer> matches = new TreeSet<>();
+
+            if (itemQueryDTO.getOperator() == QueryOperator.OR) {
+                for (QueryPredicate predicate : predicates)
+                    matches.addAll(predicate.ordinals.get());
+            } else if (!predicates.isEmpty()) {
+                predicates.sort(Comparator.comparingLong(predicate -> predicate.estimate));
+                for (Integer ordinal : predicates.get(0).ordinals.get()) {
+                    boolean all = true;
+                    for (int i = 1; i < predicates.size() && all; i++)
+                        all = predicates.get(i).test.test(ordinal);
+                    if (all)
+                        matches.add(ordinal);
+                }
+            }
+
+            List<ItemDTO> result = new ArrayList<>(Math.min(matches.size(), limit));
+            for (Integer ordinal : matches) {
+                if (result.size() == limit)
+                    break;
+                result.add(entries.get(ordinal).itemDTO);
+            }
+            return result;
+        }
+
+        private List<QueryPredicate> predicates(ItemQueryDTO itemQueryDTO) {
+            List<QueryPredicate> predicates = new ArrayList<>();
+
+            if (Objects.nonNull(itemQueryDTO.getUserIds()))
+                predicates.add(anyOf(userPostings, new HashSet<>(itemQueryDTO.getUserIds())));
+
+            if (Objects.nonNull(itemQueryDTO.getPriorities()))
+                predicates.add(anyOf(priorityPostings, normalizePriorities(itemQueryDTO.getPriorities())));
+
+            if (Objects.nonNull(itemQueryDTO.getHasLink())) {
+                if (itemQueryDTO.getHasLink()) {
+                    predicates.add(new QueryPredicate(withLink.size(), () -> withLink, withLink::contains));
+                } else {
+                    IntPredicate withoutLink = ordinal -> !withLink.contains(ordinal);
+                    predicates.add(new QueryPredicate(ordinals.size() - withLink.size(), () -> filter(ordinals.values(), withoutLink), withoutLink));
+                }
+            }
+
+            if (Objects.nonNull(itemQueryDTO.getKeywords())) {
+                List<String> keywords = itemQueryDTO.getKeywords();
+                long estimate = 0;
+                for (String keyword : keywords)
+                    estimate += estimateCandidates(normalize(keyword));
+
+                predicates.add(new QueryPredicate(estimate, () -> match(keywords).keySet(), ordinal -> {
+                    Entry entry = entries.get(ordinal);
+                    return keywords.stream().anyMatch(keyword -> score(entry.name, entry.description, normalize(keyword)) > 0);
+                }));
+            }
+            return predicates;
+        }
+
+        private static <K> QueryPredicate anyOf(Map<K, Set<Integer>> index, Set<K> keys) {
+            List<Set<Integer>> keyPostings = new ArrayList<>();
+            long estimate = 0;
+            for (K key : keys) {
+                Set<Integer> posting = index.get(key);
+                if (Objects.nonNull(posting)) {
+                    keyPostings.add(posting);
+                    estimate += posting.size();
+                }
+            }
+
+            return new QueryPredicate(estimate, () -> {
+                Set<Integer> union = new HashSet<>();
+                keyPostings.forEach(union::addAll);
+                return union;
+            }, ordinal -> keyPostings.stream().anyMatch(posting -> posting.contains(ordinal)));
+        }
+
+        private static List<Integer> filter(Collection<Integer> ordinals, IntPredicate test) {
+            List<Integer> filtered = new ArrayList<>();
+            for (Integer ordinal : ordinals)
+                if (test.test(ordinal))
+                    filtered.add(ordinal);
+            return filtered;
+        }
+
+        /**
+         * upper bound of the candidates(normalizedKeyword) size, without intersecting anything
+         */
+        private long estimateCandidates(String normalizedKeyword) {
+            Set<String> keywordGrams = grams(normalizedKeyword);
+            if (keywordGrams.isEmpty())
+                return ordinals.size();
+
+            long smallest = Long.MAX_VALUE;
+            for (String gram : keywordGrams)
+                smallest = Math.min(smallest, postings.getOrDefault(gram, Collections.emptySet()).size());
+            return smallest;
+        }
+
+        /**
+         * returns the score of every matching ordinal, in ordinal order
+         */
+        private Map<Integer, Long> match(List<String> keywords) {
+            Map<Integer, Long> scores = new TreeMap<>();
+
+            for (String keyword : keywords) {
+                String normalizedKeyword = normalize(keyword);
+
+                for (Integer ordinal : candidates(normalizedKeyword)) {
+                    Entry entry = entries.get(ordinal);
+                    long score = score(entry.name, entry.description, normalizedKeyword);
+                    if (score > 0)
+                        scores.merge(ordinal, score, Long::sum);
+                }
+            }
+            return scores;
+        }
+
+        /**
+         * ordinals that have every trigram of the keyword, all of them if it is too short to have any
+         */
+        private Collection<Integer> candidates(String normalizedKeyword) {
+            Set<String> keywordGrams = grams(normalizedKeyword);
+            if (keywordGrams.isEmpty())
+                return ordinals.values();
+
+            List<Set<Integer>> keywordPostings = new ArrayList<>(keywordGrams.size());
+            for (String gram : keywordGrams) {
+                Set<Integer> posting = postings.get(gram);
+                if (Objects.isNull(posting))
+                    return Collections.emptyList();
+                keywordPostings.add(posting);
+            }
+            keywordPostings.sort(Comparator.comparingInt(Set::size));
+
+            List<Integer> candidates = new ArrayList<>();
+            for (Integer ordinal : keywordPostings.get(0)) {
+                boolean all = true;
+                for (int i = 1; i < keywordPostings.size() && all; i++)
+                    all = keywordPostings.get(i).contains(ordinal);
+                if (all)
+                    candidates.add(ordinal);
+            }
+            return candidates;
+        }
+
+        int size() {
+            return ordinals.size();
+        }
+
+        int gramCount() {
+            return postings.size();
+        }
+
+        long estimatedBytes() {
+            // Strings are counted at 2 bytes per char although latin-1 text is stored compactly
+            return postingEntries * POSTING_ENTRY_BYTES + postings.size() * GRAM_BYTES
+                    + ordinals.size() * ITEM_BYTES + indexedChars * 2;
+        }
+    }
+
+    /**
+     * one predicate of a structured query: an estimate of how many ordinals it matches, a way to list them
+     * and a membership test that is cheap next to listing
+     */
+    private static class QueryPredicate {
+
+        private final long estimate;
+        private final Supplier<Collection<Integer>> ordinals;
+        private final IntPredicate test;
+
+        private QueryPredicate(long estimate, Supplier<Collection<Integer>> ordinals, IntPredicate test) {
+            this.estimate = estimate;
+            this.ordinals = ordinals;
+            this.test = test;
+        }
+    }
+
+    /**
+     * an indexed item with its normalized text
+     */
+    private static class Entry {
+
+        private final ItemDTO itemDTO;
+        private final String name;
+        private final String description;
+
+        private Entry(ItemDTO itemDTO) {
+            this.itemDTO = itemDTO;
+            this.name = normalize(itemDTO.getName());
+            this.description = normalize(itemDTO.getDescription());
+        }
+
+        private Set<String> terms() {
+            Set<String> terms = words(name);
+            terms.addAll(words(description));
+            return terms;
+        }
+
+        private Set<String> grams() {
+            Set<String> grams = ItemSearchIndex.grams(name);
+            grams.addAll(ItemSearchIndex.grams(description));
+            return grams;
+        }
+    }
+}
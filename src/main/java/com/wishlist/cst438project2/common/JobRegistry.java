@@ -0,0 +1,122 @@
+package com.wishlist.cst438project2.common;
+
+import com.wishlist.cst438project2.dto.JobDTO;
+import com.wishlist.cst438project2.enums.JobStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Tracks long running operations that callers start and then poll by job id
+ * <p>
+ * jobs live in memory on the node that started them, finished jobs are dropped retention-minutes after they end
+ * @version %I% %G%
+ */
+
+@Component
+@Slf4j
+public class JobRegistry implements StatsProvider {
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Value("${wishlist.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    /**
+     * starts the work and returns its job right away, the work's result is recorded as the job's count
+     */
+    public JobDTO submit(Supplier<CompletableFuture<Integer>> work) {
+        evictFinished();
+
+        Job job = new Job(new JobDTO(UUID.randomUUID().toString(), JobStatus.RUNNING, null, null));
+        jobs.put(job.state.getJobId(), job);
+        log.info("JobRegistry: started job {}", job.state.getJobId());
+
+        CompletableFuture<Integer> future;
+        try {
+            future = work.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+
+        future.whenComplete((count, ex) -> {
+            String jobId = job.state.getJobId();
+            if (Objects.isNull(ex)) {
+                job.finish(new JobDTO(jobId, JobStatus.DONE, count, null));
+                log.info("JobRegistry: job {} done, count {}", jobId, count);
+            } else {
+                Throwable cause = ex instanceof CompletionException && Objects.nonNull(ex.getCause()) ? ex.getCause() : ex;
+                job.finish(new JobDTO(jobId, JobStatus.FAILED, null, cause.getMessage()));
+                log.error("JobRegistry: job {} failed", jobId, cause);
+            }
+        });
+
+        return job.snapshot();
+    }
+
+    /**
+     * returns the current state of the job or null if it is unknown or expired
+     */
+    public JobDTO get(String jobId) {
+        Job job = jobs.get(jobId);
+        return Objects.isNull(job) ? null : job.snapshot();
+    }
+
+    @Override
+    public String getStatsName() {
+        return "jobRegistry";
+    }
+
+    @Override
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new TreeMap<>();
+        for (JobStatus status : JobStatus.values())
+            stats.put(status.getValue().toLowerCase(), 0L);
+        for (Job job : jobs.values())
+            stats.merge(job.snapshot().getStatus().getValue().toLowerCase(), 1L, Long::sum);
+        return stats;
+    }
+
+    private void evictFinished() {
+        long cutoff = System.nanoTime() - retentionMinutes * 60_000_000_000L;
+
+        Iterator<Job> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            Job job = iterator.next();
+            if (job.isFinishedBefore(cutoff))
+                iterator.remove();
+        }
+    }
+
+    private static class Job {
+        private JobDTO state;
+        private long finishedAt;
+
+        private Job(JobDTO state) {
+            this.state = state;
+        }
+
+        private synchronized void finish(JobDTO finished) {
+            state = finished;
+            finishedAt = System.nanoTime();
+        }
+
+        private synchronized boolean isFinishedBefore(long nanoTime) {
+            return state.getStatus() != JobStatus.RUNNING && finishedAt - nanoTime < 0;
+        }
+
+        private synchronized JobDTO snapshot() {
+            return new JobDTO(state.getJobId(), state.getStatus(), state.getCount(), state.getError());
+        }
+    }
+}
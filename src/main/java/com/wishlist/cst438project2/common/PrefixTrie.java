@@ -0,0 +1,250 @@
+package com.wishlist.cst438project2.common;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * weighted radix trie used for autocomplete
+ * <p>
+ * chains of single-child nodes are merged into one edge label, so the trie has at most two nodes per key.
+ * Every key carries a weight (how many times it was added minus removed) and every node remembers the highest
+ * weight in its subtree, which lets complete() walk the subtree best-first and stop after k results instead of
+ * visiting every completion of a short prefix. forEachWithin() walks the trie with an edit distance DP row per
+ * character and drops a branch as soon as every cell of its row is over the edit budget. Not thread-safe.
+ * @version %I% %G%
+ */
+
+public class PrefixTrie {
+
+    private final Node root = new Node("");
+    private int keys;
+
+    /**
+     * adds delta to the weight of key, the key is dropped once its weight reaches 0
+     * @param display what complete() returns for the key, kept from the latest positive add
+     */
+    public void add(String key, String display, int delta) {
+        add(root, key, display, delta);
+    }
+
+    public int size() {
+        return keys;
+    }
+
+    /**
+     * returns the displays of the k heaviest keys starting with prefix, heaviest first,
+     * equal weights in key order
+     */
+    public List<String> complete(String prefix, int k) {
+        List<String> completions = new ArrayList<>();
+
+        // find the node whose path covers the prefix
+        Node node = root;
+        String path = "";
+        String remaining = prefix;
+        while (!remaining.isEmpty()) {
+            Node child = node.children.get(remaining.charAt(0));
+            if (Objects.isNull(child))
+                return completions;
+
+            if (remaining.startsWith(child.label)) {
+                remaining = remaining.substring(child.label.length());
+            } else if (child.label.startsWith(remaining)) {
+                remaining = "";
+            } else {
+                return completions;
+            }
+            path += child.label;
+            node = child;
+        }
+
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(Candidate.BEST_FIRST);
+        queue.add(new Candidate(node, path, node.max, false));
+
+        while (!queue.isEmpty() && completions.size() < k) {
+            Candidate candidate = queue.poll();
+
+            if (candidate.terminal) {
+                completions.add(candidate.node.display);
+                continue;
+            }
+
+            if (candidate.node.weight > 0)
+                queue.add(new Candidate(candidate.node, candidate.path, candidate.node.weight, true));
+            for (Node child : candidate.node.children.values())
+                queue.add(new Candidate(child, candidate.path + child.label, child.max, false));
+        }
+        return completions;
+    }
+
+    /**
+     * calls back with every key within maxEdits edits of word and its distance. An edit is inserting, deleting
+     * or substituting a character or swapping two adjacent ones (optimal string alignment distance)
+     */
+    public void forEachWithin(String word, int maxEdits, BiConsumer<String, Integer> consumer) {
+        int[] row = new int[word.length() + 1];
+        for (int i = 0; i < row.length; i++)
+            row[i] = i;
+
+        StringBuilder path = new StringBuilder();
+        for (Node child : root.children.values())
+            walk(child, word, null, row, maxEdits, path, consumer);
+    }
+
+    /**
+     * @param rowBefore the row before previousRow, null at the root
+     */
+    private void walk(Node node, String word, int[] rowBefore, int[] previousRow, int maxEdits, StringBuilder path,
+                      BiConsumer<String, Integer> consumer) {
+        int pathLength = path.length();
+        int[] before = rowBefore;
+        int[] row = previousRow;
+
+        for (int i = 0; i < node.label.length(); i++) {
+            char c = node.label.charAt(i);
+            char previous = path.length() > 0 ? path.charAt(path.length() - 1) : 0;
+
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            int best = next[0];
+            for (int j = 1; j < row.length; j++) {
+                int substitute = row[j - 1] + (word.charAt(j - 1) == c ? 0 : 1);
+                next[j] = Math.min(substitute, Math.min(row[j], next[j - 1]) + 1);
+                if (Objects.nonNull(before) && j > 1 && word.charAt(j - 1) == previous && word.charAt(j - 2) == c)
+                    next[j] = Math.min(next[j], before[j - 2] + 1);
+                best = Math.min(best, next[j]);
+            }
+
+            // no later row can get back under the budget once this one is over it
+            path.append(c);
+            if (best > maxEdits) {
+                path.setLength(pathLength);
+                return;
+            }
+            before = row;
+            row = next;
+        }
+
+        int distance = row[row.length - 1];
+        if (node.weight > 0 && distance <= maxEdits)
+            consumer.accept(path.toString(), distance);
+
+        for (Node child : node.children.values())
+            walk(child, word, before, row, maxEdits, path, consumer);
+
+        path.setLength(pathLength);
+    }
+
+    private void add(Node node, String remaining, String display, int delta) {
+
+        if (remaining.isEmpty()) {
+            int weight = Math.max(0, node.weight + delta);
+            if (node.weight == 0 && weight > 0)
+                keys++;
+            else if (node.weight > 0 && weight == 0)
+                keys--;
+
+            node.weight = weight;
+            if (weight == 0)
+                node.display = null;
+            else if (delta > 0)
+                node.display = display;
+
+            node.updateMax();
+            return;
+        }
+
+        Node child = node.children.get(remaining.charAt(0));
+        if (Objects.isNull(child)) {
+            if (delta <= 0)
+                return;
+
+            child = new Node(remaining);
+            node.children.put(remaining.charAt(0), child);
+            add(child, "", display, delta);
+            node.updateMax();
+            return;
+        }
+
+        int common = commonPrefixLength(child.label, remaining);
+        if (common < child.label.length()) {
+            if (delta <= 0)
+                return;
+
+            // split the edge at the end of the common part
+            Node split = new Node(child.label.substring(0, common));
+            child.label = child.label.substring(common);
+            split.children.put(child.label.charAt(0), child);
+            split.updateMax();
+            node.children.put(split.label.charAt(0), split);
+            child = split;
+        }
+
+        add(child, remaining.substring(common), display, delta);
+
+        if (child.weight == 0 && child.children.isEmpty()) {
+            node.children.remove(child.label.charAt(0));
+        } else if (child.weight == 0 && child.children.size() == 1) {
+            // merge the now pointless node with its only child
+            Node only = child.children.values().iterator().next();
+            only.label = child.label + only.label;
+            node.children.put(only.label.charAt(0), only);
+        }
+        node.updateMax();
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i))
+            i++;
+        return i;
+    }
+
+    private static class Node {
+        private String label;
+        private final Map<Character, Node> children = new HashMap<>();
+        private int weight;
+        private String display;
+        private int max;
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private void updateMax() {
+            int subtreeMax = weight;
+            for (Node child : children.values())
+                subtreeMax = Math.max(subtreeMax, child.max);
+            max = subtreeMax;
+        }
+    }
+
+    /**
+     * a subtree still to expand, or a key ready to be returned. No key in a subtree outweighs the subtree's max
+     * and no key sorts before the subtree's path, so ordering by (weight, path) returns keys in that same order
+     */
+    private static class Candidate {
+
+        private static final Comparator<Candidate> BEST_FIRST = Comparator.<Candidate>comparingInt(candidate -> -candidate.priority)
+                .thenComparing(candidate -> candidate.path);
+
+        private final Node node;
+        private final String path;
+        private final int priority;
+        private final boolean terminal;
+
+        private Candidate(Node node, String path, int priority, boolean terminal) {
+            this.node = node;
+            this.path = path;
+            this.priority = priority;
+            this.terminal = terminal;
+        }
+    }
+}
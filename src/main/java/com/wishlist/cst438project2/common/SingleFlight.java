@@ -0,0 +1,95 @@
+package com.wishlist.cst438project2.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent identical reads
+ * <p>
+ * the first caller for a key starts the load, callers asking for the same key while it is in flight get the same
+ * result instead of starting their own. Nothing is kept once the load completes, so this only merges reads that
+ * overlap in time. forget() makes the next caller start a fresh load, writers call it so that a read issued after
+ * a write can't be answered by a load that started before it. Callers share the loaded value, it must not be
+ * mutated.
+ * @version %I% %G%
+ */
+
+public class SingleFlight<K, V> implements StatsProvider {
+
+    private final String name;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * returns the result of the load in flight for key, or of a new loader.apply(key) if there is none
+     */
+    public CompletableFuture<V> execute(K key, Function<K, CompletableFuture<V>> loader) {
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (Objects.nonNull(existing)) {
+            shared.incrementAndGet();
+            // a copy, so one caller cancelling or completing its future can't affect the others
+            return existing.copy();
+        }
+
+        loads.incrementAndGet();
+        CompletableFuture<V> load;
+        try {
+            load = loader.apply(key);
+        } catch (RuntimeException ex) {
+            load = CompletableFuture.failedFuture(ex);
+        }
+
+        load.whenComplete((value, ex) -> {
+            inFlight.remove(key, flight);
+            if (Objects.isNull(ex))
+                flight.complete(value);
+            else
+                flight.completeExceptionally(ex);
+        });
+        return flight.copy();
+    }
+
+    /**
+     * lets the next caller for key start a new load, callers already waiting still get the current one
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * forget() for every key, for writes that can't tell which keys they touch
+     */
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    @Override
+    public String getStatsName() {
+        return name;
+    }
+
+    /**
+     * shared is the number of backend calls saved
+     */
+    @Override
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("loads", loads.get());
+        stats.put("shared", shared.get());
+        stats.put("inFlight", (long) inFlight.size());
+        return stats;
+    }
+}
@@ -0,0 +1,19 @@
+package com.wishlist.cst438project2.common;
+
+import java.util.Map;
+
+/**
+ * implemented by components that keep runtime counters (caches, batchers, ...),
+ * every StatsProvider bean is listed by the admin stats endpoint
+ * @version %I% %G%
+ */
+
+public interface StatsProvider {
+
+    String getStatsName();
+
+    /**
+     * returns a snapshot of the counters, keyed by counter name
+     */
+    Map<String, Long> getStats();
+}
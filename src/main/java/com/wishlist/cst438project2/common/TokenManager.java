@@ -12,7 +12,6 @@ import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.spec.SecretKeySpec;
@@ -20,35 +19,51 @@ import javax.xml.bind.DatatypeConverter;
 import java.security.Key;
 import java.util.Date;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Managing tokens
+ * <p>
+ * validated tokens are cached for wishlist.cache.access-token.ttl-seconds (10s by default), so most authenticated
+ * requests skip both the signature check and the access token read. Logging out drops the token from the cache of
+ * the node that handled the logout right away, every other node keeps accepting it until its cached entry
+ * expires, i.e. for at most that ttl.
  * @author Chaitanya Parwatkar
  * @version %I% %G%
  */
 
 @Component
 @Slf4j
-@DependsOn("firebaseConfig")
 public class TokenManager {
 
     @Autowired
     private FirebaseIntegration firebaseIntegration;
 
+    @Autowired
+    private TtlCache<String, UserTokenDTO> accessTokenCache;
+
     /**
      * This method is used to generate token and save token on firebase
      * @param user, for which token needs to be generated
      * @return jwt token
      */
     public String generateToken(User user) {
+        return Utils.await(generateTokenAsync(user));
+    }
+
+    /**
+     * Non-blocking variant of generateToken, completes once the token is saved on firebase
+     * @param user, for which token needs to be generated
+     * @return jwt token or null if it couldn't be issued
+     */
+    public CompletableFuture<String> generateTokenAsync(User user) {
 
         String token = issueToken(user);
 
-        if(Objects.nonNull(token) && !token.isEmpty()) {
-            firebaseIntegration.saveAccessToken(new AccessToken(user.getUserId(), token));
-            return token;
-        } else
-            return null;
+        if(Objects.nonNull(token) && !token.isEmpty())
+            return firebaseIntegration.saveAccessTokenAsync(new AccessToken(user.getUserId(), token)).thenApply(saved -> token);
+        else
+            return CompletableFuture.completedFuture(null);
     }
 
     /**
@@ -57,33 +72,64 @@ public class TokenManager {
      * @return user info
      */
     public UserTokenDTO getUser(String accessToken) {
+        return Utils.await(getUserAsync(accessToken));
+    }
 
-        try {
+    /**
+     * Non-blocking variant of getUser, fails with UnauthorizedException if the token is invalid,
+     * expired or was not issued by us
+     * @param accessToken
+     * @return user info
+     */
+    public CompletableFuture<UserTokenDTO> getUserAsync(String accessToken) {
+
+        if (Objects.isNull(accessToken))
+            return CompletableFuture.failedFuture(new UnauthorizedException());
 
-            Claims claims = Jwts.parser().setSigningKey(DatatypeConverter.parseBase64Binary(Constants.KEY_SECRET_TOKEN))
-                    .parseClaimsJws(accessToken).getBody();
+        return accessTokenCache.getOrLoad(accessToken, this::validateToken);
+    }
 
-            UserTokenDTO userTokenDTO;
+    /**
+     * checks signature and that the token is still stored, i.e. the user hasn't logged out
+     */
+    private CompletableFuture<UserTokenDTO> validateToken(String accessToken) {
 
-            if (claims.containsKey("user")) {
+        UserTokenDTO userTokenDTO;
 
-                ObjectMapper objectMapper = new ObjectMapper();
-                userTokenDTO = objectMapper.convertValue(claims.get("user"), UserTokenDTO.class);
+        try {
+            userTokenDTO = parseToken(accessToken);
+        } catch (Exception ex) {
+            log.error(ex.getMessage());
+            return CompletableFuture.failedFuture(new UnauthorizedException());
+        }
 
-                AccessToken token = firebaseIntegration.fetchAccessToken(accessToken);
-                if(Objects.isNull(token))
-                    throw new UnauthorizedException();
+        return firebaseIntegration.fetchAccessTokenAsync(accessToken).handle((token, ex) -> {
 
-            } else {
-                log.warn("User token invalid or expired!");
+            if(Objects.nonNull(ex) || Objects.isNull(token)) {
+                if (Objects.nonNull(ex))
+                    log.error(ex.getMessage());
                 throw new UnauthorizedException();
             }
 
             return userTokenDTO;
-        } catch (Exception ex) {
-            log.error(ex.getMessage());
+        });
+    }
+
+    /**
+     * verifies the token signature and reads the user claim
+     */
+    private UserTokenDTO parseToken(String accessToken) {
+
+        Claims claims = Jwts.parser().setSigningKey(DatatypeConverter.parseBase64Binary(Constants.KEY_SECRET_TOKEN))
+                .parseClaimsJws(accessToken).getBody();
+
+        if (!claims.containsKey("user")) {
+            log.warn("User token invalid or expired!");
             throw new UnauthorizedException();
         }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        return objectMapper.convertValue(claims.get("user"), UserTokenDTO.class);
     }
 
     /**
@@ -0,0 +1,69 @@
+package com.wishlist.cst438project2.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * keeps the k highest scored values offered to it, in a min-heap of at most k entries,
+ * so ranking n candidates costs O(n log k) and never holds more than k of them
+ * <p>
+ * among equal scores the value offered first wins. Not thread-safe.
+ * @version %I% %G%
+ */
+
+public class TopK<T> {
+
+    private static final Comparator<Entry<?>> WORST_FIRST = Comparator.<Entry<?>>comparingLong(entry -> entry.score)
+            .thenComparing(Comparator.<Entry<?>>comparingLong(entry -> entry.sequence).reversed());
+
+    private final int k;
+    private final PriorityQueue<Entry<T>> heap;
+    private long offered;
+
+    public TopK(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive: " + k);
+
+        this.k = k;
+        this.heap = new PriorityQueue<>(Math.min(k, 1024), WORST_FIRST);
+    }
+
+    public void offer(T value, long score) {
+        Entry<T> entry = new Entry<>(value, score, offered++);
+
+        if (heap.size() < k) {
+            heap.add(entry);
+        } else if (WORST_FIRST.compare(entry, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    /**
+     * returns the kept values, best first
+     */
+    public List<T> toList() {
+        List<Entry<T>> entries = new ArrayList<>(heap);
+        entries.sort(Collections.reverseOrder(WORST_FIRST));
+
+        List<T> values = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries)
+            values.add(entry.value);
+        return values;
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long score;
+        private final long sequence;
+
+        private Entry(T value, long score, long sequence) {
+            this.value = value;
+            this.score = score;
+            this.sequence = sequence;
+        }
+    }
+}
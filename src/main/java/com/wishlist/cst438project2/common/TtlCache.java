@@ -0,0 +1,107 @@
+package com.wishlist.cst438project2.common;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache with a fixed time to live
+ * <p>
+ * entries expire ttl after they were loaded, and the least recently used entry is evicted once maxSize is exceeded.
+ * Misses are loaded asynchronously outside the lock. A value whose load started before an invalidate() is
+ * returned to its caller but not cached, so a read racing with a write can't put the old value back.
+ * Null values are not cached.
+ * @version %I% %G%
+ */
+
+public class TtlCache<K, V> implements StatsProvider {
+
+    private final String name;
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TtlCache(String name, Duration ttl, int maxSize) {
+        this.name = name;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() <= maxSize)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * returns the cached value for key, or loads, caches and returns it
+     */
+    public CompletableFuture<V> getOrLoad(K key, Function<K, CompletableFuture<V>> loader) {
+
+        long loadGeneration;
+
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (Objects.nonNull(entry)) {
+                if (entry.expiresAt - System.nanoTime() > 0) {
+                    hits++;
+                    return CompletableFuture.completedFuture(entry.value);
+                }
+                entries.remove(key);
+                evictions++;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        return loader.apply(key).thenApply(value -> {
+            if (Objects.nonNull(value))
+                putIfNotInvalidated(key, value, loadGeneration);
+            return value;
+        });
+    }
+
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    @Override
+    public String getStatsName() {
+        return name;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) entries.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    private synchronized void putIfNotInvalidated(K key, V value, long loadGeneration) {
+        if (generation == loadGeneration)
+            entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
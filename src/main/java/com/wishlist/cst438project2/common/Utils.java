@@ -1,9 +1,18 @@
 package com.wishlist.cst438project2.common;
 
+import com.wishlist.cst438project2.exception.BadRequestException;
+import lombok.SneakyThrows;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.stereotype.Component;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * class utils
@@ -30,4 +39,83 @@ public class Utils {
     public static Long generateId() {
         return new Date().getTime();
     }
+
+    /**
+     * returns the document id an item is stored under: the owner's userId and the trimmed, lower-cased item name.
+     * the name is url-encoded since firestore document ids can't contain '/'
+     */
+    public static String itemKey(long userId, String name) {
+        return userId + "_" + URLEncoder.encode(name.trim().toLowerCase(Locale.ROOT), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * true if id can name a firestore document: not empty, no '/', not . or .., not reserved (__name__)
+     * and at most 1500 bytes. DocumentReference lookups throw IllegalArgumentException for anything else
+     */
+    public static boolean isValidDocumentId(String id) {
+        if (id == null || id.isEmpty() || id.contains("/") || id.equals(".") || id.equals(".."))
+            return false;
+        if (id.length() > 4 && id.startsWith("__") && id.endsWith("__"))
+            return false;
+        return id.getBytes(StandardCharsets.UTF_8).length <= 1500;
+    }
+
+    /**
+     * returns the opaque page cursor handed out for the document id a page ended at
+     */
+    public static String encodeCursor(String docId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(docId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * returns the document id a page cursor stands for, null for no cursor (the first page)
+     * throws BadRequestException if the cursor wasn't made by encodeCursor
+     */
+    public static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty())
+            return null;
+
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException(Constants.ERROR_INVALID_CURSOR);
+        }
+    }
+
+    /**
+     * returns a 200 response for body carrying the document version as its ETag, without one if version is null
+     */
+    public static <T> ResponseEntity<T> withETag(T body, String version) {
+        if (version == null)
+            return ResponseEntity.ok(body);
+        return ResponseEntity.ok().eTag(version).body(body);
+    }
+
+    /**
+     * returns the version an If-Match header asks for, or null when there is no header or it is *
+     * (any version). Weak validators are compared like strong ones, versions are exact update times anyway
+     */
+    public static String versionFromIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*"))
+            return null;
+
+        String version = ifMatch.trim();
+        if (version.startsWith("W/"))
+            version = version.substring(2);
+        if (version.length() >= 2 && version.startsWith("\"") && version.endsWith("\""))
+            version = version.substring(1, version.length() - 1);
+        return version;
+    }
+
+    /**
+     * waits for the future and rethrows the original exception it failed with
+     */
+    @SneakyThrows
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() == null ? ex : ex.getCause();
+        }
+    }
 }
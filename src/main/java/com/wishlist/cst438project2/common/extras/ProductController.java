@@ -1,8 +1,10 @@
 package com.wishlist.cst438project2.common.extras;
 
+import com.wishlist.cst438project2.common.Constants;
 import com.wishlist.cst438project2.exception.BadRequestException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -21,6 +23,7 @@ import java.util.Objects;
 
 @RestController
 @RequestMapping("/v1/product")
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
 @Slf4j
 public class ProductController {
 
@@ -7,9 +7,11 @@ import com.google.firebase.cloud.FirestoreClient;
 import com.wishlist.cst438project2.common.Constants;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
 @Service
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
 @Slf4j
 public class ProductServiceImpl implements ProductService {
 
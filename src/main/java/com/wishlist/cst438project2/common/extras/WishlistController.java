@@ -34,8 +34,12 @@ public class WishlistController {
     @Autowired
     private TokenManager tokenManager;
 
+    /**
+     * This API adds items to the user's wishlist, items that are already on it are not added twice
+     * @return timestamp of the update
+     */
     @PostMapping("/add")
-    public Wishlist addItemsToWishlist(@RequestHeader String accessToken, @RequestBody AddItemsWishlistDTO addItemsWishlistDTO) {
+    public String addItemsToWishlist(@RequestHeader String accessToken, @RequestBody AddItemsWishlistDTO addItemsWishlistDTO) {
 
         log.info("WishlistController: Starting addItemsToWishlist");
 
@@ -47,13 +51,75 @@ public class WishlistController {
 
             addItemsWishlistDTO.setUserId(userTokenDTO.getUserId());
 
-            Wishlist wishlist = wishlistService.addItemsWishlist(addItemsWishlistDTO);
+            String responseTimestamp = wishlistService.addItemsWishlist(addItemsWishlistDTO);
 
-            if(Objects.isNull(wishlist))
+            if(Objects.isNull(responseTimestamp) || responseTimestamp.isEmpty())
                 throw new ExternalServerException(Constants.ERROR_UNABLE_TO_ADD_ITEM_TO_WISHLIST);
 
             log.info("WishlistController: Exiting addItemsToWishlist");
 
+            return responseTimestamp;
+
+        } catch(Exception ex) {
+            log.error(ex.getMessage(), ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * This API removes items from the user's wishlist
+     * @return timestamp of the update
+     */
+    @PostMapping("/remove")
+    public String removeItemsFromWishlist(@RequestHeader String accessToken, @RequestBody AddItemsWishlistDTO removeItemsWishlistDTO) {
+
+        log.info("WishlistController: Starting removeItemsFromWishlist");
+
+        try {
+            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
+
+            if(Objects.isNull(userTokenDTO))
+                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+
+            removeItemsWishlistDTO.setUserId(userTokenDTO.getUserId());
+
+            String responseTimestamp = wishlistService.removeItemsWishlist(removeItemsWishlistDTO);
+
+            if(Objects.isNull(responseTimestamp) || responseTimestamp.isEmpty())
+                throw new ExternalServerException(Constants.ERROR_UNABLE_TO_REMOVE_ITEM_FROM_WISHLIST);
+
+            log.info("WishlistController: Exiting removeItemsFromWishlist");
+
+            return responseTimestamp;
+
+        } catch(Exception ex) {
+            log.error(ex.getMessage(), ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * This API changes the order of the user's wishlist
+     * @param reorderWishlistDTO itemIds in the new order, must be exactly the items on the wishlist
+     * @return the reordered wishlist
+     */
+    @PutMapping("/reorder")
+    public Wishlist reorderWishlist(@RequestHeader String accessToken, @RequestBody AddItemsWishlistDTO reorderWishlistDTO) {
+
+        log.info("WishlistController: Starting reorderWishlist");
+
+        try {
+            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
+
+            if(Objects.isNull(userTokenDTO))
+                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+
+            reorderWishlistDTO.setUserId(userTokenDTO.getUserId());
+
+            Wishlist wishlist = wishlistService.reorderWishlist(reorderWishlistDTO);
+
+            log.info("WishlistController: Exiting reorderWishlist");
+
             return wishlist;
 
         } catch(Exception ex) {
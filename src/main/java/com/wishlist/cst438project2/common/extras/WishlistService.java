@@ -12,7 +12,11 @@ import com.wishlist.cst438project2.dto.WishlistResponseDTO;
 
 public interface WishlistService {
 
-    Wishlist addItemsWishlist(AddItemsWishlistDTO addItemsWishlistDTO);
+    String addItemsWishlist(AddItemsWishlistDTO addItemsWishlistDTO);
+
+    String removeItemsWishlist(AddItemsWishlistDTO removeItemsWishlistDTO);
+
+    Wishlist reorderWishlist(AddItemsWishlistDTO reorderWishlistDTO);
 
     WishlistResponseDTO getWishlistByUser(Long userId);
 }
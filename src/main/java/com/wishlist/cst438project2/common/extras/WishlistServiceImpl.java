@@ -1,20 +1,16 @@
 package com.wishlist.cst438project2.common.extras;
 
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.WriteResult;
 import com.wishlist.cst438project2.common.Constants;
 import com.wishlist.cst438project2.dto.AddItemsWishlistDTO;
 import com.wishlist.cst438project2.dto.ItemDTO;
 import com.wishlist.cst438project2.dto.WishlistResponseDTO;
+import com.wishlist.cst438project2.exception.BadRequestException;
 import com.wishlist.cst438project2.integration.FirebaseIntegration;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 @Service
 @Slf4j
@@ -23,40 +19,63 @@ public class WishlistServiceImpl implements WishlistService {
     @Autowired
     private FirebaseIntegration firebaseIntegration;
 
-    @SneakyThrows
+    /**
+     * adds the items in a single write, without reading the wishlist first
+     * returns timestamp of successful write
+     */
     @Override
-    public Wishlist addItemsWishlist(AddItemsWishlistDTO addItemsWishlistDTO) {
+    public String addItemsWishlist(AddItemsWishlistDTO addItemsWishlistDTO) {
 
         log.info("WishlistServiceImpl: Starting addItemsWishlist");
 
-        Wishlist dbWishlist = fetchWishlistByUser(addItemsWishlistDTO.getUserId());
+        validateItemIds(addItemsWishlistDTO);
 
-        if(Objects.isNull(dbWishlist))
-            dbWishlist = new Wishlist(addItemsWishlistDTO.getUserId(), addItemsWishlistDTO.getItemIds());
-        else {
+        String responseTimestamp = firebaseIntegration.addWishlistItems(addItemsWishlistDTO.getUserId(), addItemsWishlistDTO.getItemIds());
 
-            List<Long> itemIds = dbWishlist.getItemIds();
-            itemIds.addAll(addItemsWishlistDTO.getItemIds());
-            dbWishlist.setItemIds(itemIds);
-        }
+        log.info("WishlistServiceImpl: Exiting addItemsWishlist");
 
-        ApiFuture<WriteResult> collectionApiFuture = firebaseIntegration.dbFirestore.collection(Constants.DOCUMENT_USER_WISHLIST).document(String.valueOf(addItemsWishlistDTO.getUserId())).set(dbWishlist);
+        return responseTimestamp;
+    }
 
-        String responseTimestamp = collectionApiFuture.get().getUpdateTime().toString();
+    /**
+     * returns timestamp of successful write
+     */
+    @Override
+    public String removeItemsWishlist(AddItemsWishlistDTO removeItemsWishlistDTO) {
 
-        log.info("WishlistServiceImpl: Exiting addItemsWishlist");
+        log.info("WishlistServiceImpl: Starting removeItemsWishlist");
 
-        if(!responseTimestamp.isEmpty()) {
-             return dbWishlist;
-        }
+        validateItemIds(removeItemsWishlistDTO);
+
+        String responseTimestamp = firebaseIntegration.removeWishlistItems(removeItemsWishlistDTO.getUserId(), removeItemsWishlistDTO.getItemIds());
 
-        return null;
+        log.info("WishlistServiceImpl: Exiting removeItemsWishlist");
+
+        return responseTimestamp;
+    }
+
+    @Override
+    public Wishlist reorderWishlist(AddItemsWishlistDTO reorderWishlistDTO) {
+
+        log.info("WishlistServiceImpl: Starting reorderWishlist");
+
+        if (Objects.isNull(reorderWishlistDTO.getItemIds()))
+            throw new BadRequestException();
+
+        Wishlist wishlist = firebaseIntegration.reorderWishlist(reorderWishlistDTO.getUserId(), reorderWishlistDTO.getItemIds());
+
+        if (Objects.isNull(wishlist))
+            throw new BadRequestException(Constants.ERROR_WISHLIST_REORDER_MISMATCH);
+
+        log.info("WishlistServiceImpl: Exiting reorderWishlist");
+
+        return wishlist;
     }
 
     @Override
     public WishlistResponseDTO getWishlistByUser(Long userId) {
 
-        log.info("WishlistServiceImpl: Starting addItemsWishlist");
+        log.info("WishlistServiceImpl: Starting getWishlistByUser");
 
         Wishlist dbWishlist = fetchWishlistByUser(userId);
 
@@ -64,25 +83,37 @@ public class WishlistServiceImpl implements WishlistService {
             return null;
         else {
 
+            // all items in one go, then put back in wishlist order
+            Map<Long, ItemDTO> itemDTOMap = firebaseIntegration.fetchItemsByItemIds(dbWishlist.getItemIds());
+
             List<ItemDTO> itemDTOList = new LinkedList<>();
+            Set<Long> missingItemIds = new LinkedHashSet<>();
 
             for(Long itemId : dbWishlist.getItemIds()) {
 
-                try {
-                    ItemDTO itemDTO = firebaseIntegration.fetchItemByItemId(itemId);
+                ItemDTO itemDTO = itemDTOMap.get(itemId);
 
-                    if(Objects.nonNull(itemDTO))
-                        itemDTOList.add(itemDTO);
-
-                } catch (Exception ex) {
-                    log.error(ex.getMessage(), ex);
-                }
+                if(Objects.nonNull(itemDTO))
+                    itemDTOList.add(itemDTO);
+                else
+                    missingItemIds.add(itemId);
             }
 
-            return new WishlistResponseDTO(userId, itemDTOList);
+            if(!missingItemIds.isEmpty())
+                log.warn("WishlistServiceImpl: wishlist of user {} refers to missing items {}", userId, missingItemIds);
+
+            log.info("WishlistServiceImpl: Exiting getWishlistByUser");
+
+            return new WishlistResponseDTO(userId, itemDTOList, new ArrayList<>(missingItemIds));
         }
     }
 
+    private void validateItemIds(AddItemsWishlistDTO wishlistDTO) {
+
+        if (Objects.isNull(wishlistDTO.getItemIds()) || wishlistDTO.getItemIds().isEmpty())
+            throw new BadRequestException();
+    }
+
     private Wishlist fetchWishlistByUser(Long userId) {
 
         return firebaseIntegration.getUserWishlist(userId);
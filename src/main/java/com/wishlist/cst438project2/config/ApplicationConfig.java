@@ -1,6 +1,17 @@
 package com.wishlist.cst438project2.config;
 
+import com.wishlist.cst438project2.common.BatchLoader;
+import com.wishlist.cst438project2.common.SingleFlight;
+import com.wishlist.cst438project2.common.TtlCache;
+import com.wishlist.cst438project2.common.Utils;
+import com.wishlist.cst438project2.common.extras.Wishlist;
+import com.wishlist.cst438project2.document.Item;
+import com.wishlist.cst438project2.document.User;
+import com.wishlist.cst438project2.dto.UserTokenDTO;
+import com.wishlist.cst438project2.repository.ItemRepository;
+import com.wishlist.cst438project2.repository.UserRepository;
 import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -10,6 +21,11 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 /**
  * Application configurations
  * @author Chaitanya Parwatkar
@@ -45,4 +61,74 @@ public class ApplicationConfig extends WebSecurityConfigurerAdapter {
     public ModelMapper modelMapper() {
         return new ModelMapper();
     }
-}
\ No newline at end of file
+
+    /**
+     * users by username, read on nearly every request, see FirebaseIntegration.getUser
+     * NOTE: invalidation is local, other nodes keep serving a changed user for up to ttl-seconds
+     */
+    @Bean
+    public TtlCache<String, User> userCache(@Value("${wishlist.cache.user.ttl-seconds:30}") long ttlSeconds,
+                                            @Value("${wishlist.cache.user.max-size:10000}") int maxSize) {
+        return new TtlCache<>("userCache", Duration.ofSeconds(ttlSeconds), maxSize);
+    }
+
+    /**
+     * access tokens that passed validation, see TokenManager.getUser
+     * NOTE: a token revoked on another node keeps passing here for at most ttl-seconds
+     */
+    @Bean
+    public TtlCache<String, UserTokenDTO> accessTokenCache(@Value("${wishlist.cache.access-token.ttl-seconds:10}") long ttlSeconds,
+                                                           @Value("${wishlist.cache.access-token.max-size:10000}") int maxSize) {
+        return new TtlCache<>("accessTokenCache", Duration.ofSeconds(ttlSeconds), maxSize);
+    }
+
+    /**
+     * user reads that miss userCache at the same time, see FirebaseIntegration.getUser
+     */
+    @Bean
+    public SingleFlight<String, User> userFlight() {
+        return new SingleFlight<>("userFlight");
+    }
+
+    /**
+     * a user's items, read whenever their list is opened, see FirebaseIntegration.getItemsByUserId
+     */
+    @Bean
+    public SingleFlight<Long, List<Item>> userItemsFlight() {
+        return new SingleFlight<>("userItemsFlight");
+    }
+
+    /**
+     * shared wishlists, see FirebaseIntegration.getUserWishlist
+     */
+    @Bean
+    public SingleFlight<Long, Wishlist> wishlistFlight() {
+        return new SingleFlight<>("wishlistFlight");
+    }
+
+    /**
+     * user reads, see FirebaseIntegration.getUser. Sits behind userCache and userFlight, so it only sees
+     * misses of different users. Usernames that can't be a document id are answered with null (no such user)
+     * before they get into a batch
+     */
+    @Bean
+    public BatchLoader<String, User> userLoader(UserRepository userRepository,
+                                                @Value("${wishlist.loader.window-ms:2}") long windowMs,
+                                                @Value("${wishlist.loader.max-batch-size:100}") int maxBatchSize) {
+        return new BatchLoader<>("userLoader", usernames -> userRepository.findByUsernames(usernames)
+                .thenApply(users -> users.stream().collect(Collectors.toMap(User::getUsername, Function.identity()))),
+                Utils::isValidDocumentId, Duration.ofMillis(windowMs), maxBatchSize);
+    }
+
+    /**
+     * item reads by itemId, see FirebaseIntegration.fetchItemByItemId
+     */
+    @Bean
+    public BatchLoader<Long, Item> itemLoader(ItemRepository itemRepository,
+                                              @Value("${wishlist.loader.window-ms:2}") long windowMs,
+                                              @Value("${wishlist.loader.max-batch-size:100}") int maxBatchSize) {
+        return new BatchLoader<>("itemLoader", itemIds -> itemRepository.findByItemIds(itemIds)
+                .thenApply(items -> items.stream().collect(Collectors.toMap(Item::getItemId, Function.identity(), (first, second) -> first))),
+                Duration.ofMillis(windowMs), maxBatchSize);
+    }
+}
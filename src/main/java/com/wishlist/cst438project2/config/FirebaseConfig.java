@@ -1,23 +1,30 @@
 package com.wishlist.cst438project2.config;
 
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.firestore.Firestore;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
+import com.google.firebase.cloud.FirestoreClient;
+import com.wishlist.cst438project2.common.Constants;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 import javax.annotation.PostConstruct;
 import java.io.FileInputStream;
 
 /**
  * Firebase configuration with Springboot
+ * not loaded when the application runs on the in-memory storage profile, no service account is needed then
  * @author Chaitanya Parwatkar
  * @version %I% %G%
  */
 
 @Configuration
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
 @Slf4j
 public class FirebaseConfig {
 
@@ -46,4 +53,12 @@ public class FirebaseConfig {
             throw ex;
         }
     }
+
+    /**
+     * Firestore client shared by the firestore repositories
+     */
+    @Bean
+    public Firestore firestore() {
+        return FirestoreClient.getFirestore();
+    }
 }
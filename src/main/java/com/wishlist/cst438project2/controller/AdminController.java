@@ -2,6 +2,7 @@ package com.wishlist.cst438project2.controller;
 
 import com.wishlist.cst438project2.common.Constants;
 import com.wishlist.cst438project2.common.TokenManager;
+import com.wishlist.cst438project2.common.Utils;
 import com.wishlist.cst438project2.dto.*;
 import com.wishlist.cst438project2.enums.RoleType;
 import com.wishlist.cst438project2.exception.BadRequestException;
@@ -10,11 +11,23 @@ import com.wishlist.cst438project2.service.AdminService;
 import com.wishlist.cst438project2.service.ItemService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletResponse;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 /**
  * API endpoints for handling the Admin functionalities
  *
@@ -40,28 +53,62 @@ public class AdminController {
     @Autowired
     private ItemService itemService;
 
+    @Value("${wishlist.export.threads:2}")
+    private int exportThreads;
+
+    @Value("${wishlist.export.queue-capacity:8}")
+    private int exportQueueCapacity;
+
+    @Value("${wishlist.export.timeout-ms:600000}")
+    private long exportTimeoutMs;
+
+    private ThreadPoolTaskExecutor exportExecutor;
+
+    @PostConstruct
+    public void init() {
+        exportExecutor = new ThreadPoolTaskExecutor();
+        exportExecutor.setCorePoolSize(exportThreads);
+        exportExecutor.setMaxPoolSize(exportThreads);
+        exportExecutor.setQueueCapacity(exportQueueCapacity);
+        exportExecutor.setThreadNamePrefix("export-");
+        exportExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        exportExecutor.shutdown();
+    }
+
     @GetMapping("/users")
-    public List<UserDTO> getAllUsers(@RequestHeader String accessToken) {
+    public CompletableFuture<List<UserDTO>> getAllUsers(@RequestHeader String accessToken) {
 
         log.info("AdminController: Starting getAllUsers");
 
-        try {
+        return authorizeAdmin(accessToken)
+                .thenCompose(userTokenDTO -> adminService.getAllUsers())
+                .thenApply(userDTOList -> {
 
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
+                    log.info("AdminController: Exiting getAllUsers");
 
-            if(Objects.isNull(userTokenDTO) || !userTokenDTO.getRole().equals(RoleType.ADMIN.getValue()))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+                    return userDTOList;
 
-            List<UserDTO> userDTOList = adminService.getAllUsers();
+                }).whenComplete(this::logError);
+    }
 
-            log.info("UserController: Exiting saveUser");
+    /**
+     * This API returns one page of users ordered by username
+     * @param pageSize users per page
+     * @param startAfter nextCursor of the previous page, not given for the first page
+     */
+    @GetMapping(value = "/users", params = "pageSize")
+    public CompletableFuture<PageDTO<UserDTO>> getAllUsersPage(@RequestHeader String accessToken, @RequestParam int pageSize,
+                                                               @RequestParam(required = false) String startAfter) {
 
-            return userDTOList;
+        log.info("AdminController: Starting getAllUsersPage");
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        return authorizeAdmin(accessToken)
+                .thenCompose(userTokenDTO -> adminService.getAllUsers(pageSize, startAfter))
+                .whenComplete(this::logError);
     }
 
     /**
@@ -69,29 +116,24 @@ public class AdminController {
      * @param username, of the user whose account is to be deleted.
      */
     @DeleteMapping("/deleteUser")
-    public String deleteUser(@RequestHeader String accessToken, @RequestParam String username) {
+    public CompletableFuture<String> deleteUser(@RequestHeader String accessToken, @RequestParam String username) {
 
         log.info("AdminController: Starting deleteUser");
 
-        try{
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-
-            if(Objects.isNull(userTokenDTO) || !userTokenDTO.getRole().equals(RoleType.ADMIN.getValue()))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+        return authorizeAdmin(accessToken).thenCompose(userTokenDTO -> {
 
             if(Objects.isNull(username) || username.isEmpty())
                 throw new BadRequestException();
 
-            adminService.deleteUser(username);
+            return adminService.deleteUser(username);
+
+        }).thenApply(deleted -> {
 
             log.info("AdminController: Exiting deleteUser");
 
             return Constants.USER_DELETED + " " + username;
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        }).whenComplete(this::logError);
     }
 
     /**
@@ -100,63 +142,47 @@ public class AdminController {
      * @return user creation timestamp
      */
     @PostMapping("/createUser")
-    public String createUser(@RequestHeader String accessToken, @RequestBody SignUpDTO signUpDTO) {
+    public CompletableFuture<String> createUser(@RequestHeader String accessToken, @RequestBody SignUpDTO signUpDTO) {
 
         log.info("AdminController: Starting createUser");
 
-        try {
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-
-            if(Objects.isNull(userTokenDTO) || !userTokenDTO.getRole().equals(RoleType.ADMIN.getValue()))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+        return authorizeAdmin(accessToken).thenCompose(userTokenDTO -> {
 
             if (Objects.isNull(signUpDTO))
                 throw new BadRequestException();
 
-            String responseTimestamp = adminService.createUser(signUpDTO);
+            return adminService.createUser(signUpDTO);
+
+        }).thenApply(responseTimestamp -> {
 
             log.info("AdminController: Exiting createUser");
 
             return Objects.nonNull(responseTimestamp) && !responseTimestamp.isEmpty()
                     ? Constants.USER_CREATED : Constants.ERROR_UNABLE_TO_CREATE_USER;
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        }).whenComplete(this::logError);
     }
 
     @PostMapping("/login")
-    public ResponseDTO<UserLoginDTO> login(@RequestBody SignInDTO signInDTO) {
+    public CompletableFuture<ResponseDTO<UserLoginDTO>> login(@RequestBody SignInDTO signInDTO) {
 
         log.info("AdminController: Starting login");
 
-        ResponseDTO<UserLoginDTO> responseDTO = new ResponseDTO<>();
-        UserLoginDTO userLoginDTO = null;
-        String message = HttpStatus.UNAUTHORIZED.toString();
-        int httpStatusCode;
-        try {
+        if (Objects.isNull(signInDTO))
+            return CompletableFuture.completedFuture(buildLoginResponse(HttpStatus.UNAUTHORIZED.value(), null, HttpStatus.UNAUTHORIZED.toString()));
 
-            if (Objects.isNull(signInDTO))
-                throw new BadRequestException();
+        return adminService.login(signInDTO).handle((userLoginDTO, ex) -> {
 
-            userLoginDTO = adminService.login(signInDTO);
-            if(Objects.isNull(userLoginDTO))
-                throw new UnauthorizedException();
+            if (Objects.nonNull(ex) || Objects.isNull(userLoginDTO)) {
+                if (Objects.nonNull(ex))
+                    log.error(ex.getMessage(), ex);
+                return buildLoginResponse(HttpStatus.UNAUTHORIZED.value(), null, HttpStatus.UNAUTHORIZED.toString());
+            }
 
-            httpStatusCode = HttpStatus.OK.value();
-            message = Constants.USER_LOGIN_SUCCESSFUL;
             log.info("AdminController: Exiting login");
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            httpStatusCode = HttpStatus.UNAUTHORIZED.value();
-        }
-
-        responseDTO.setStatus(httpStatusCode);
-        responseDTO.setData(userLoginDTO);
-        responseDTO.setMessage(message);
-        return responseDTO;
+            return buildLoginResponse(HttpStatus.OK.value(), userLoginDTO, Constants.USER_LOGIN_SUCCESSFUL);
+        });
     }
 
     /**
@@ -164,25 +190,18 @@ public class AdminController {
      * returns item creation timestamp
      */
     @PostMapping("/createItem")
-    public String createItem(@RequestHeader String accessToken, @RequestBody ItemDTO itemDTO, @RequestParam String username) {
+    public CompletableFuture<String> createItem(@RequestHeader String accessToken, @RequestBody ItemDTO itemDTO, @RequestParam String username) {
         log.info("ItemController: Starting createItem");
-        try {
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-
-            if(Objects.isNull(userTokenDTO) || !userTokenDTO.getRole().equals(RoleType.ADMIN.getValue()))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
-
+        return authorizeAdmin(accessToken).thenCompose(userTokenDTO -> {
             if (Objects.isNull(itemDTO) || (itemDTO.getName().isBlank() || Objects.isNull(itemDTO.getUserId()))) {
                 throw new BadRequestException();
             } else {
-                String timestamp = itemService.createItem(itemDTO, username);
-                log.info("ItemController: exiting successful createItem");
-                return timestamp;
+                return itemService.createItem(itemDTO, username);
             }
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        }).thenApply(timestamp -> {
+            log.info("ItemController: exiting successful createItem");
+            return timestamp;
+        }).whenComplete(this::logError);
     }
 
     /**
@@ -190,67 +209,60 @@ public class AdminController {
      * returns timestamp of successful deletion
      */
     @DeleteMapping("/removeItems")
-    public String removeItem(@RequestHeader String accessToken, @RequestParam String itemName, @RequestParam Long userId) {
-
-        UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-
-        if(Objects.isNull(userTokenDTO) || !userTokenDTO.getRole().equals(RoleType.ADMIN.getValue()))
-            throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+    public CompletableFuture<String> removeItem(@RequestHeader String accessToken, @RequestParam String itemName, @RequestParam Long userId) {
 
-        log.info("ItemController: Starting removeItem");
-        log.info("ItemController: removeItem:\n    name: {}\n    userId: {}", itemName, userId);
-        return adminService.removeItem(itemName, userId);
+        return authorizeAdmin(accessToken).thenCompose(userTokenDTO -> {
+            log.info("ItemController: Starting removeItem");
+            log.info("ItemController: removeItem:\n    name: {}\n    userId: {}", itemName, userId);
+            return adminService.removeItem(itemName, userId);
+        });
     }
 
     /**
      * This API is used for updating user information in database
-     * @param userDTO, whose details is to be updated
-     * @return user creation timestamp
+     * @param userDTO, whose details is to be updated, fields left null are kept
+     * @param ifMatch optional ETag of the user as it was read, the update fails with 412 if the user changed since
+     * @return updated user, with its new version as the ETag header
      */
     @PutMapping("/updateUser")
-    public UserDTO updateUser(@RequestHeader String accessToken, @RequestBody UserDTO userDTO) {
+    public CompletableFuture<ResponseEntity<UserDTO>> updateUser(@RequestHeader String accessToken, @RequestBody UserDTO userDTO,
+                                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
         log.info("UserController: Starting updateUser");
 
-        try {
-
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-
-            if(Objects.isNull(userTokenDTO) || !userTokenDTO.getRole().equals(RoleType.ADMIN.getValue()))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+        return authorizeAdmin(accessToken).thenCompose(userTokenDTO -> {
 
             if(Objects.isNull(userDTO))
                 throw new BadRequestException();
 
-            userDTO = adminService.updateUser(userDTO);
+            return adminService.updateUser(userDTO, Utils.versionFromIfMatch(ifMatch));
+
+        }).thenApply(updatedUserDTO -> {
 
             log.info("UserController: Exiting updateUser");
 
-            return userDTO;
+            return Utils.withETag(updatedUserDTO, updatedUserDTO.getVersion());
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        }).whenComplete(this::logError);
     }
 
     /**
      * This API is used for updating an existing Item information in the database.
      * @param accessToken Admin's access token.
      * @param oldItemName Name of the item to be updated.
-     * @param updatedItemDTO Details of the item to be updated.
-     * @return timestamp, when the item was updated.
+     * @param updatedItemDTO Details of the item to be updated, fields left null are kept.
+     * @param ifMatch Optional ETag of the item as it was read, the update fails with 412 if the item changed since.
+     * @return timestamp, when the item was updated, also sent as the new ETag.
      */
     @PatchMapping("/updateItem")
-    public String updateItem(@RequestHeader String accessToken, @RequestParam(name = "itemName") String oldItemName, @RequestBody ItemDTO updatedItemDTO) {
+    public CompletableFuture<ResponseEntity<String>> updateItem(@RequestHeader String accessToken, @RequestParam(name = "itemName") String oldItemName, @RequestBody ItemDTO updatedItemDTO,
+                                                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         log.info("AdminController: Starting updateItem");
         log.info(String.format("AdminController: updateItem:\n    old name: %s\n    userId: %s", oldItemName, updatedItemDTO.getUserId()));
 
-        UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-        if(Objects.isNull(userTokenDTO) || !userTokenDTO.getRole().equals(RoleType.ADMIN.getValue()))
-            throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
-
-        return itemService.updateItem(oldItemName, updatedItemDTO);
+        return authorizeAdmin(accessToken)
+                .thenCompose(userTokenDTO -> itemService.updateItem(oldItemName, updatedItemDTO, Utils.versionFromIfMatch(ifMatch)))
+                .thenApply(version -> Utils.withETag(version, version));
     }
 
     /**
@@ -259,38 +271,175 @@ public class AdminController {
      * @return List of ItemDTOs
      */
     @GetMapping("/getAllItems")
-    public List<ItemDTO> getAllItems(@RequestHeader String accessToken) {
+    public CompletableFuture<List<ItemDTO>> getAllItems(@RequestHeader String accessToken) {
         log.info("AdminController: Starting getAllItems");
-        try {
+        return authorizeAdmin(accessToken)
+                .thenCompose(userTokenDTO -> itemService.getAllItems())
+                .thenApply(collection -> {
+                    log.info("AdminController: Exiting successful getAllItems");
+                    return collection;
+                }).whenComplete(this::logError);
+    }
 
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-            if(Objects.isNull(userTokenDTO) || !userTokenDTO.getRole().equals(RoleType.ADMIN.getValue()))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+    /**
+     * This API returns one page of items ordered by document id
+     * @param pageSize items per page
+     * @param startAfter nextCursor of the previous page, not given for the first page
+     */
+    @GetMapping(value = "/getAllItems", params = "pageSize")
+    public CompletableFuture<PageDTO<ItemDTO>> getAllItemsPage(@RequestHeader String accessToken, @RequestParam int pageSize,
+                                                               @RequestParam(required = false) String startAfter) {
+        log.info("AdminController: Starting getAllItemsPage");
+        return authorizeAdmin(accessToken)
+                .thenCompose(userTokenDTO -> itemService.getAllItems(pageSize, startAfter))
+                .whenComplete(this::logError);
+    }
 
-            List<ItemDTO> collection = itemService.getAllItems();
-            log.info("AdminController: Exiting successful getAllItems");
-            return collection;
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+    /**
+     * This API streams every user as newline-delimited JSON, one UserDTO per line
+     * @param accessToken Admin's access token
+     */
+    @GetMapping(value = "/export/users", produces = Constants.MEDIA_TYPE_NDJSON)
+    public WebAsyncTask<Void> exportUsers(@RequestHeader String accessToken, HttpServletResponse response) {
+
+        log.info("AdminController: Starting exportUsers");
+
+        return export(accessToken, response, adminService::exportUsers);
+    }
+
+    /**
+     * This API streams every item as newline-delimited JSON, one ItemDTO per line
+     * @param accessToken Admin's access token
+     */
+    @GetMapping(value = "/export/items", produces = Constants.MEDIA_TYPE_NDJSON)
+    public WebAsyncTask<Void> exportItems(@RequestHeader String accessToken, HttpServletResponse response) {
+
+        log.info("AdminController: Starting exportItems");
+
+        return export(accessToken, response, adminService::exportItems);
     }
 
     /**
      * This API is used to search a specific item list from given keyword
      * @param accessToken Admin's access token
      * @param keywords used to search related items from the database/user's wishlist
+     * @param limit optional, returns only the limit best matches ranked by relevance
      * @return List of itemDTOs (item details)
      */
     @GetMapping("/searchItem")
-    public List<ItemDTO> searchAllItems(@RequestHeader String accessToken, @RequestParam("search") List<String> keywords) {
+    public CompletableFuture<List<ItemDTO>> searchAllItems(@RequestHeader String accessToken, @RequestParam("search") List<String> keywords,
+                                                           @RequestParam(value = "limit", required = false) Integer limit) {
         log.info("AdminController: Starting searchAllItems");
         log.info(String.format("AdminController: searchAllItems:\n     keywords: %s", keywords));
 
-        UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-        if(Objects.isNull(userTokenDTO))
-            throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+        return tokenManager.getUserAsync(accessToken).thenCompose(userTokenDTO -> {
+            if(Objects.isNull(userTokenDTO))
+                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+
+            return itemService.getSearchAllItems(keywords, limit);
+        });
+    }
+
+    /**
+     * This API returns one page of the keyword search with facet counts, selected by facets=true, any other value gets the plain search
+     * @param accessToken Admin's access token
+     * @param keywords used to search related items from the database/user's wishlist
+     * @param page 0 based page number
+     * @param pageSize items per page
+     * @return the page of itemDTOs with priority and owner counts over all matches
+     */
+    @GetMapping(value = "/searchItem", params = "facets=true")
+    public CompletableFuture<ItemSearchResultDTO> searchAllItemsFaceted(@RequestHeader String accessToken, @RequestParam("search") List<String> keywords,
+                                                                        @RequestParam(value = "page", defaultValue = "0") int page,
+                                                                        @RequestParam(value = "pageSize", defaultValue = "" + Constants.DEFAULT_PAGE_SIZE) int pageSize) {
+        log.info("AdminController: Starting searchAllItemsFaceted");
+
+        return tokenManager.getUserAsync(accessToken).thenCompose(userTokenDTO -> {
+            if(Objects.isNull(userTokenDTO))
+                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+
+            return itemService.getFacetedSearchItems(keywords, page, pageSize);
+        });
+    }
+
+    /**
+     * This API moves items stored under random document ids to keys derived from userId and item name.
+     * Safe to run more than once, once it reports 0 the legacy fallback (wishlist.storage.item-key-fallback) can be turned off.
+     * @param accessToken Admin's access token
+     * @return number of moved items
+     */
+    @PostMapping("/migrateItemKeys")
+    public CompletableFuture<String> migrateItemKeys(@RequestHeader String accessToken) {
+
+        log.info("AdminController: Starting migrateItemKeys");
+
+        return authorizeAdmin(accessToken)
+                .thenCompose(userTokenDTO -> adminService.migrateItemKeys())
+                .thenApply(migrated -> {
+
+                    log.info("AdminController: Exiting migrateItemKeys");
+
+                    return Constants.ITEM_KEYS_MIGRATED + migrated;
 
-        return itemService.getSearchAllItems(keywords);
+                }).whenComplete(this::logError);
+    }
+
+    /**
+     * This API lists the runtime counters (e.g. cache hits, misses and evictions)
+     * @param accessToken Admin's access token
+     * @return counters, grouped by the component they belong to
+     */
+    @GetMapping("/stats")
+    public CompletableFuture<Map<String, Map<String, Long>>> getStats(@RequestHeader String accessToken) {
+
+        log.info("AdminController: Starting getStats");
+
+        return authorizeAdmin(accessToken)
+                .thenCompose(userTokenDTO -> adminService.getStats())
+                .whenComplete(this::logError);
+    }
+
+    //Private Methods
+    private CompletableFuture<UserTokenDTO> authorizeAdmin(String accessToken) {
+
+        return tokenManager.getUserAsync(accessToken).thenApply(userTokenDTO -> {
+
+            if(Objects.isNull(userTokenDTO) || !userTokenDTO.getRole().equals(RoleType.ADMIN.getValue()))
+                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+
+            return userTokenDTO;
+        });
+    }
+
+    /**
+     * runs an export on the export executor with its own timeout. Its page reads and its writes to a slow client
+     * block, so it must not hold a thread of the application task executor that firestore callbacks complete on,
+     * and the long timeout is only for exports
+     */
+    private WebAsyncTask<Void> export(String accessToken, HttpServletResponse response, StreamingResponseBody body) {
+        return new WebAsyncTask<>(exportTimeoutMs, exportExecutor, () -> {
+            try {
+                Utils.await(authorizeAdmin(accessToken));
+                response.setContentType(Constants.MEDIA_TYPE_NDJSON);
+                body.writeTo(response.getOutputStream());
+                return null;
+            } catch (Exception ex) {
+                logError(null, ex);
+                throw ex;
+            }
+        });
+    }
+
+    private ResponseDTO<UserLoginDTO> buildLoginResponse(int status, UserLoginDTO userLoginDTO, String message) {
+        ResponseDTO<UserLoginDTO> responseDTO = new ResponseDTO<>();
+        responseDTO.setStatus(status);
+        responseDTO.setData(userLoginDTO);
+        responseDTO.setMessage(message);
+        return responseDTO;
+    }
+
+    private void logError(Object result, Throwable ex) {
+        if (Objects.nonNull(ex))
+            log.error(ex.getMessage(), ex);
     }
 }
@@ -2,16 +2,27 @@ package com.wishlist.cst438project2.controller;
 
 import com.wishlist.cst438project2.common.Constants;
 import com.wishlist.cst438project2.common.TokenManager;
+import com.wishlist.cst438project2.common.Utils;
 import com.wishlist.cst438project2.dto.CreateItemDTO;
+import com.wishlist.cst438project2.dto.ImportResultDTO;
 import com.wishlist.cst438project2.dto.ItemDTO;
+import com.wishlist.cst438project2.dto.ItemQueryDTO;
+import com.wishlist.cst438project2.dto.ItemSearchResultDTO;
+import com.wishlist.cst438project2.dto.JobDTO;
+import com.wishlist.cst438project2.dto.PageDTO;
 import com.wishlist.cst438project2.dto.UserTokenDTO;
+import com.wishlist.cst438project2.enums.ImportFormat;
 import com.wishlist.cst438project2.exception.BadRequestException;
 import com.wishlist.cst438project2.exception.UnauthorizedException;
 import com.wishlist.cst438project2.service.ItemService;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 /**
@@ -41,64 +52,60 @@ public class ItemController {
      * returns item creation timestamp
      */
     @PostMapping
-    public String createItem(@RequestHeader String accessToken, @RequestBody CreateItemDTO createItemDTO) {
+    public CompletableFuture<String> createItem(@RequestHeader String accessToken, @RequestBody CreateItemDTO createItemDTO) {
 //        log.info("ItemController: Starting createItem");
-        try {
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-            if(Objects.isNull(userTokenDTO))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
-
+        return authorize(accessToken).thenCompose(userTokenDTO -> {
             if (Objects.isNull(createItemDTO.getItemDTO()) || (createItemDTO.getItemDTO().getName().isBlank())) {
                 throw new BadRequestException();
             } else {
                 createItemDTO.logCreateItemDTO();
-                String timestamp = itemService.createItem(createItemDTO.getItemDTO(), createItemDTO.getUsername());
 //                log.info("ItemController: exiting successful createItem");
-                return timestamp;
+                return itemService.createItem(createItemDTO.getItemDTO(), createItemDTO.getUsername());
             }
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        }).whenComplete(this::logError);
     }
+    /**
+     * POST request to create many items of a user at once, the body holds one JSON ItemDTO per line
+     * returns the outcome of every row, rows that can't be created don't stop the others
+     */
+    @PostMapping(value = "/import", params = "username", consumes = Constants.MEDIA_TYPE_NDJSON, headers = "accessToken")
+    public CompletableFuture<ImportResultDTO> importItemsNdjson(@RequestHeader String accessToken, @RequestParam String username, InputStream body) {
+        return importItems(accessToken, username, ImportFormat.NDJSON, body);
+    }
+
+    /**
+     * POST request like importItemsNdjson for a CSV body, the first row names the columns
+     * (name, link, description, imgUrl, priority)
+     */
+    @PostMapping(value = "/import", params = "username", consumes = Constants.MEDIA_TYPE_CSV, headers = "accessToken")
+    public CompletableFuture<ImportResultDTO> importItemsCsv(@RequestHeader String accessToken, @RequestParam String username, InputStream body) {
+        return importItems(accessToken, username, ImportFormat.CSV, body);
+    }
+
     /**
      * GET request to retrieve ItemDTO for a specific item
      * this is used when accessing an item from all items
-     * returns ItemDTO
+     * returns ItemDTO, with its version as the ETag header
      */
     @RequestMapping(method= RequestMethod.GET, params = {"item_name", "userId"}, headers = "accessToken")
-    public ItemDTO getSpecificItem(@RequestParam String item_name, @RequestParam long userId, @RequestHeader String accessToken) {
-        try {
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-            if(Objects.isNull(userTokenDTO))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
-
-            ItemDTO itemDTO = itemService.getSpecificItem(item_name, userId);
-            return itemDTO;
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+    public CompletableFuture<ResponseEntity<ItemDTO>> getSpecificItem(@RequestParam String item_name, @RequestParam long userId, @RequestHeader String accessToken) {
+        return authorize(accessToken)
+                .thenCompose(userTokenDTO -> itemService.getSpecificItem(item_name, userId))
+                .thenApply(itemDTO -> Utils.withETag(itemDTO, Objects.isNull(itemDTO) ? null : itemDTO.getVersion()))
+                .whenComplete(this::logError);
     }
 
     /**
      * GET request to retrieve ItemDTO for a specific item
      * this is used when accessing an item within a user's list
-     * returns ItemDTO
+     * returns ItemDTO, with its version as the ETag header
      */
     @RequestMapping(method= RequestMethod.GET, params = {"item_name", "username"}, headers = "accessToken")
-    public ItemDTO getSpecificItem2(@RequestParam String item_name, @RequestParam String username, @RequestHeader String accessToken) {
-        try {
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-            if(Objects.isNull(userTokenDTO))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
-
-            ItemDTO itemDTO = itemService.getSpecificItem2(item_name, username);
-            return itemDTO;
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+    public CompletableFuture<ResponseEntity<ItemDTO>> getSpecificItem2(@RequestParam String item_name, @RequestParam String username, @RequestHeader String accessToken) {
+        return authorize(accessToken)
+                .thenCompose(userTokenDTO -> itemService.getSpecificItem2(item_name, username))
+                .thenApply(itemDTO -> Utils.withETag(itemDTO, Objects.isNull(itemDTO) ? null : itemDTO.getVersion()))
+                .whenComplete(this::logError);
     }
 
     /**
@@ -108,21 +115,14 @@ public class ItemController {
      * returns List<ItemDTO> collection
      */
     @GetMapping
-    public List<ItemDTO> getAllItems(@RequestHeader String accessToken) {
+    public CompletableFuture<List<ItemDTO>> getAllItems(@RequestHeader String accessToken) {
 //        log.info("ItemController: Starting getAllItems");
-        try {
-
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-            if(Objects.isNull(userTokenDTO))
-                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
-
-            List<ItemDTO> collection = itemService.getAllItems();
-            log.info("ItemController: Exiting successful getAllItems");
-            return collection;
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        return authorize(accessToken)
+                .thenCompose(userTokenDTO -> itemService.getAllItems())
+                .thenApply(collection -> {
+                    log.info("ItemController: Exiting successful getAllItems");
+                    return collection;
+                }).whenComplete(this::logError);
     }
 
     /**
@@ -130,35 +130,29 @@ public class ItemController {
      * returns timestamp of successful deletion
      */
     @RequestMapping(method = RequestMethod.DELETE, params = {"item_name", "username"}, headers = "accessToken")
-    public String removeItem(@RequestHeader String accessToken, @RequestParam String item_name, @RequestParam String username) {
+    public CompletableFuture<String> removeItem(@RequestHeader String accessToken, @RequestParam String item_name, @RequestParam String username) {
 //        log.info("ItemController: Starting removeItem");
 //        log.info(String.format("ItemController: removeItem:\n    name: %s\n    username: %s", item_name, username));
 
-        UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-        if(Objects.isNull(userTokenDTO))
-            throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
-
-        String timestamp = itemService.removeItem(item_name, username);
-        return timestamp;
+        return authorize(accessToken).thenCompose(userTokenDTO -> itemService.removeItem(item_name, username));
     }
 
     /**
      * PATCH request to update information of given item's old name and updatedItemDTO
      * <p>
-     * NOTE: itemDTO fields that weren't changed should also be included in updatedItemDTO
-     * returns timestamp of successful update
+     * NOTE: only the fields set in updatedItemDTO are written, the others keep their stored values.
+     * With an If-Match header holding the item's ETag the update fails with 412 if the item changed since
+     * returns timestamp of successful update, also the new ETag
      */
     @PatchMapping
-    public String updateItem(@RequestHeader String accessToken, @RequestParam(name = "item_name") String old_item_name, @RequestBody ItemDTO updatedItemDTO) {
+    public CompletableFuture<ResponseEntity<String>> updateItem(@RequestHeader String accessToken, @RequestParam(name = "item_name") String old_item_name, @RequestBody ItemDTO updatedItemDTO,
+                                                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 //        log.info("ItemController: Starting updateItem");
 //        log.info(String.format("ItemController: updateItem:\n    old name: %s\n    userId: %s", old_item_name, updatedItemDTO.getUserId()));
 
-        UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-        if(Objects.isNull(userTokenDTO))
-            throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
-
-        String timestamp = itemService.updateItem(old_item_name, updatedItemDTO);
-        return timestamp;
+        return authorize(accessToken)
+                .thenCompose(userTokenDTO -> itemService.updateItem(old_item_name, updatedItemDTO, Utils.versionFromIfMatch(ifMatch)))
+                .thenApply(version -> Utils.withETag(version, version));
     }
 
     /**
@@ -167,52 +161,151 @@ public class ItemController {
      */
     @RequestMapping(method = RequestMethod.GET, params = "list", headers = "accessToken")
     // https://stackoverflow.com/a/43546809
-    public List<ItemDTO> getUserItems(@RequestHeader String accessToken, @RequestParam("list") String username) {
+    public CompletableFuture<List<ItemDTO>> getUserItems(@RequestHeader String accessToken, @RequestParam("list") String username) {
 //        log.info("ItemController: Starting getUserItems");
 //        log.info(String.format("ItemController: getUserItems:\n     username: %s", username));
 
-        UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-        if(Objects.isNull(userTokenDTO))
-            throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+        return authorize(accessToken).thenCompose(userTokenDTO -> itemService.getUserItems(username));
+    }
 
-        List<ItemDTO> userItems = itemService.getUserItems(username);
-        return userItems;
+    /**
+     * GET request for one page of all items, ordered by document id
+     * returns the page and the cursor to pass as startAfter for the next one
+     */
+    @RequestMapping(method = RequestMethod.GET, params = {"pageSize", "!list", "!search"}, headers = "accessToken")
+    public CompletableFuture<PageDTO<ItemDTO>> getAllItemsPage(@RequestHeader String accessToken, @RequestParam int pageSize,
+                                                               @RequestParam(required = false) String startAfter) {
+        return authorize(accessToken)
+                .thenCompose(userTokenDTO -> itemService.getAllItems(pageSize, startAfter))
+                .whenComplete(this::logError);
     }
 
     /**
-     * GET request to retrieve list of items matching given keywords
+     * GET request for one page of a user's items, paged like getAllItemsPage
+     */
+    @RequestMapping(method = RequestMethod.GET, params = {"list", "pageSize"}, headers = "accessToken")
+    public CompletableFuture<PageDTO<ItemDTO>> getUserItemsPage(@RequestHeader String accessToken, @RequestParam("list") String username,
+                                                                @RequestParam int pageSize, @RequestParam(required = false) String startAfter) {
+        return authorize(accessToken)
+                .thenCompose(userTokenDTO -> itemService.getUserItems(username, pageSize, startAfter))
+                .whenComplete(this::logError);
+    }
+
+    /**
+     * GET request to retrieve list of items matching given keywords,
+     * with limit the best limit matches are returned ranked by relevance,
+     * with fuzzy=true words may be misspelled by a character or two and the closest matches come first
      * returns list of keyword relevant items
      */
     @RequestMapping(method = RequestMethod.GET, params = "search", headers = "accessToken")
-    public List<ItemDTO> getSearchAllItems(@RequestHeader String accessToken, @RequestParam("search") List<String> keywords) {
+    public CompletableFuture<List<ItemDTO>> getSearchAllItems(@RequestHeader String accessToken, @RequestParam("search") List<String> keywords,
+                                                              @RequestParam(value = "limit", required = false) Integer limit,
+                                                              @RequestParam(value = "fuzzy", defaultValue = "false") boolean fuzzy) {
 //        log.info("ItemController: Starting getSearchItems");
 //        log.info(String.format("ItemController: getSearchItems:\n     keywords: %s", keywords));
 
-        UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-        if(Objects.isNull(userTokenDTO))
-            throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+        return authorize(accessToken).thenCompose(userTokenDTO -> fuzzy
+                ? itemService.getFuzzySearchItems(keywords, limit)
+                : itemService.getSearchAllItems(keywords, limit));
+    }
 
-        List<ItemDTO> userItems = itemService.getSearchAllItems(keywords);
-        return userItems;
+    /**
+     * GET request for a page of the keyword search with facets=true (any other value gets the plain search), the page comes with
+     * priority and owner counts over all matches
+     * returns ItemSearchResultDTO
+     */
+    @RequestMapping(method = RequestMethod.GET, params = {"search", "facets=true"}, headers = "accessToken")
+    public CompletableFuture<ItemSearchResultDTO> getFacetedSearchItems(@RequestHeader String accessToken, @RequestParam("search") List<String> keywords,
+                                                                       @RequestParam(value = "page", defaultValue = "0") int page,
+                                                                       @RequestParam(value = "pageSize", defaultValue = "" + Constants.DEFAULT_PAGE_SIZE) int pageSize) {
+        return authorize(accessToken).thenCompose(userTokenDTO -> itemService.getFacetedSearchItems(keywords, page, pageSize));
+    }
+
+    /**
+     * POST request to filter items by userIds, priorities, hasLink and keywords in one query,
+     * see ItemQueryDTO for how the predicates combine
+     * returns list of matching items
+     */
+    @PostMapping(value = "/query", headers = "accessToken")
+    public CompletableFuture<List<ItemDTO>> queryItems(@RequestHeader String accessToken, @RequestBody ItemQueryDTO itemQueryDTO) {
+        return authorize(accessToken)
+                .thenCompose(userTokenDTO -> itemService.queryItems(itemQueryDTO))
+                .whenComplete(this::logError);
+    }
+
+    /**
+     * GET request for autocomplete, item names starting with prefix (case-insensitive)
+     * returns up to limit names, names shared by more items first
+     */
+    @GetMapping(value = "/suggest", headers = "accessToken")
+    public CompletableFuture<List<String>> getItemSuggestions(@RequestHeader String accessToken, @RequestParam String prefix,
+                                                              @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return authorize(accessToken).thenCompose(userTokenDTO -> itemService.getItemSuggestions(prefix, limit));
     }
 
     /**
      * DELETE request to remove all items associated with given userId upon account deletion
-     * returns timestamp of successful deletion
+     * returns number of removed items
      */
     // TODO: remove mapping! I think this is ONLY supposed to be a helper for the delete user account request mapping.
     // TODO: removeItemsByUser mapping is for testing purposed only!
     @RequestMapping(method = RequestMethod.DELETE, params = "username", headers = "accessToken")
-    public String removeItemsByUser(@RequestHeader String accessToken, @RequestParam String username) {
+    public CompletableFuture<Integer> removeItemsByUser(@RequestHeader String accessToken, @RequestParam String username) {
 //        log.info("ItemController: Starting removeItemsByUser");
 //        log.info(String.format("ItemController: removeItemsByUser:\n    username: %s", username));
 
-        UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
-        if(Objects.isNull(userTokenDTO))
-            throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
-
-        String timestamp = itemService.removeItemsByUser(username);
 //        log.info("ItemController: Exiting removeItemsByUser");
-        return timestamp;
+        return authorize(accessToken).thenCompose(userTokenDTO -> itemService.removeItemsByUser(username));
+    }
+
+    /**
+     * DELETE request with async=true, removes all items of the given user in the background
+     * returns the job to poll with getJob, its count is the number of removed items
+     */
+    @RequestMapping(method = RequestMethod.DELETE, params = {"username", "async=true"}, headers = "accessToken")
+    public CompletableFuture<JobDTO> startRemoveItemsByUser(@RequestHeader String accessToken, @RequestParam String username) {
+        return authorize(accessToken)
+                .thenCompose(userTokenDTO -> itemService.startRemoveItemsByUser(username))
+                .whenComplete(this::logError);
+    }
+
+    /**
+     * GET request for the state of a background job
+     * returns JobDTO
+     */
+    @GetMapping(value = "/jobs/{jobId}", headers = "accessToken")
+    public CompletableFuture<JobDTO> getJob(@RequestHeader String accessToken, @PathVariable String jobId) {
+        return authorize(accessToken).thenCompose(userTokenDTO -> itemService.getJob(jobId));
+    }
+
+    /**
+     * resolves the caller of the request, failing with UnauthorizedException for unknown tokens
+     */
+    private CompletableFuture<UserTokenDTO> authorize(String accessToken) {
+        return tokenManager.getUserAsync(accessToken).thenApply(userTokenDTO -> {
+            if(Objects.isNull(userTokenDTO))
+                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+            return userTokenDTO;
+        });
+    }
+
+    /**
+     * authorizes on the request thread (usually a token cache hit) so that the upload is read here too, by
+     * importItems, rather than on a thread of the pool backend calls complete on
+     */
+    private CompletableFuture<ImportResultDTO> importItems(String accessToken, String username, ImportFormat format, InputStream body) {
+        CompletableFuture<ImportResultDTO> imported;
+        try {
+            Utils.await(authorize(accessToken));
+            imported = itemService.importItems(username, format, body);
+        } catch (Exception ex) {
+            imported = CompletableFuture.failedFuture(ex);
+        }
+        return imported.whenComplete(this::logError);
+    }
+
+    private void logError(Object result, Throwable ex) {
+        if (Objects.nonNull(ex))
+            log.error(ex.getMessage(), ex);
     }
 }
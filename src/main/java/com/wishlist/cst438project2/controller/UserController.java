@@ -9,10 +9,13 @@ import com.wishlist.cst438project2.exception.UnauthorizedException;
 import com.wishlist.cst438project2.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * API endpoints for handling the user functions
@@ -42,41 +45,36 @@ public class UserController {
      * @return user creation timestamp
      */
     @PostMapping("/save")
-    public String saveUser(@RequestBody SignUpDTO signUpDTO) {
+    public CompletableFuture<String> saveUser(@RequestBody SignUpDTO signUpDTO) {
 
         log.info("UserController: Starting saveUser");
 
-        try {
+        if (Objects.isNull(signUpDTO))
+            return CompletableFuture.failedFuture(new BadRequestException());
 
-            if (Objects.isNull(signUpDTO))
-                throw new BadRequestException();
-
-            String responseTimestamp = userService.saveUser(signUpDTO);
+        return userService.saveUser(signUpDTO).thenApply(responseTimestamp -> {
 
             log.info("UserController: Exiting saveUser");
 
             return Objects.nonNull(responseTimestamp) && !responseTimestamp.isEmpty()
                     ? Constants.USER_CREATED : Constants.ERROR_UNABLE_TO_CREATE_USER;
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        }).whenComplete(this::logError);
     }
 
     /**
      * This API is used for updating user information in database
-     * @param userDTO, whose details is to be updated
-     * @return user creation timestamp
+     * @param userDTO, whose details is to be updated, fields left null are kept
+     * @param ifMatch optional ETag of the user as it was read, the update fails with 412 if the user changed since
+     * @return updated user, with its new version as the ETag header
      */
     @PutMapping("/updateUser")
-    public UserDTO updateUser(@RequestHeader String accessToken, @RequestBody UserDTO userDTO) {
+    public CompletableFuture<ResponseEntity<UserDTO>> updateUser(@RequestHeader String accessToken, @RequestBody UserDTO userDTO,
+                                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
         log.info("UserController: Starting updateUser");
 
-        try {
-
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
+        return tokenManager.getUserAsync(accessToken).thenCompose(userTokenDTO -> {
 
             if(Objects.isNull(userTokenDTO))
                 throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
@@ -84,16 +82,15 @@ public class UserController {
             if(Objects.isNull(userDTO))
                 throw new BadRequestException();
 
-            userDTO = userService.updateUser(userDTO);
+            return userService.updateUser(userDTO, Utils.versionFromIfMatch(ifMatch));
+
+        }).thenApply(updatedUserDTO -> {
 
             log.info("UserController: Exiting updateUser");
 
-            return userDTO;
+            return Utils.withETag(updatedUserDTO, updatedUserDTO.getVersion());
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        }).whenComplete(this::logError);
     }
 
     /**
@@ -102,17 +99,11 @@ public class UserController {
      * @return message if the password was changed successfully or returns error message
      */
     @PutMapping("/changePassword")
-    public ResponseDTO<Long> changePassword(@RequestHeader String accessToken, @RequestBody ChangePasswordDTO changePasswordDTO) {
+    public CompletableFuture<ResponseDTO<Long>> changePassword(@RequestHeader String accessToken, @RequestBody ChangePasswordDTO changePasswordDTO) {
 
         log.info("UserController: Starting changePassword");
 
-        ResponseDTO<Long> responseDTO = new ResponseDTO<>();
-        String msg;
-        UserTokenDTO userTokenDTO;
-        int httpStatusCode = HttpStatus.INTERNAL_SERVER_ERROR.value();
-        try {
-
-            userTokenDTO = tokenManager.getUser(accessToken);
+        return tokenManager.getUserAsync(accessToken).thenCompose(userTokenDTO -> {
 
             if(Objects.isNull(userTokenDTO))
                 throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
@@ -122,111 +113,105 @@ public class UserController {
 
             boolean isValid = Utils.validatePassword(changePasswordDTO.getNewPassword(), changePasswordDTO.getConfirmPassword());
 
+            CompletableFuture<ResponseDTO<Long>> response;
             if(isValid) {
-                msg = userService.changePassword(userTokenDTO.getUsername(), changePasswordDTO);
-                httpStatusCode = HttpStatus.OK.value();
+                response = userService.changePassword(userTokenDTO.getUsername(), changePasswordDTO)
+                        .thenApply(msg -> buildResponse(HttpStatus.OK.value(), userTokenDTO.getUserId(), msg));
             } else {
-                msg = Constants.ERROR_USER_PASSWORD_MISMATCH;
+                response = CompletableFuture.completedFuture(
+                        buildResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), userTokenDTO.getUserId(), Constants.ERROR_USER_PASSWORD_MISMATCH));
             }
 
-            responseDTO.setStatus(httpStatusCode);
+            return response;
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-
-            if(ex instanceof UnauthorizedException)
-                httpStatusCode = HttpStatus.UNAUTHORIZED.value();
-            else if (ex instanceof BadRequestException)
-                httpStatusCode = HttpStatus.BAD_REQUEST.value();
+        }).thenApply(responseDTO -> {
 
-            responseDTO.setStatus(httpStatusCode);
-            throw ex;
-        }
+            log.info("UserController: Exiting changePassword");
 
-        log.info("UserController: Exiting changePassword");
+            return responseDTO;
 
-        responseDTO.setData(userTokenDTO.getUserId());
-        responseDTO.setMessage(msg);
-        return responseDTO;
+        }).whenComplete(this::logError);
     }
 
     @PostMapping("/login")
-    public ResponseDTO<UserLoginDTO> login(@RequestBody SignInDTO signInDTO) {
+    public CompletableFuture<ResponseDTO<UserLoginDTO>> login(@RequestBody SignInDTO signInDTO) {
 
         log.info("UserController: Starting login");
 
-        ResponseDTO<UserLoginDTO> responseDTO = new ResponseDTO<>();
-        UserLoginDTO userLoginDTO = null;
-        String message = HttpStatus.UNAUTHORIZED.toString();
-        int httpStatusCode;
-        try {
+        if (Objects.isNull(signInDTO))
+            return CompletableFuture.completedFuture(buildResponse(HttpStatus.UNAUTHORIZED.value(), null, HttpStatus.UNAUTHORIZED.toString()));
 
-            if (Objects.isNull(signInDTO))
-                throw new BadRequestException();
+        return userService.login(signInDTO).handle((userLoginDTO, ex) -> {
 
-            userLoginDTO = userService.login(signInDTO);
-            if(Objects.isNull(userLoginDTO))
-                throw new UnauthorizedException();
+            if (Objects.nonNull(ex) || Objects.isNull(userLoginDTO)) {
+                if (Objects.nonNull(ex))
+                    log.error(ex.getMessage(), ex);
+                return buildResponse(HttpStatus.UNAUTHORIZED.value(), null, HttpStatus.UNAUTHORIZED.toString());
+            }
 
-            httpStatusCode = HttpStatus.OK.value();
-            message = Constants.USER_LOGIN_SUCCESSFUL;
             log.info("UserController: Exiting login");
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            httpStatusCode = HttpStatus.UNAUTHORIZED.value();
-        }
-
-        responseDTO.setStatus(httpStatusCode);
-        responseDTO.setData(userLoginDTO);
-        responseDTO.setMessage(message);
-        return responseDTO;
+            return buildResponse(HttpStatus.OK.value(), userLoginDTO, Constants.USER_LOGIN_SUCCESSFUL);
+        });
     }
 
     @DeleteMapping("/deleteUser")
-    public String deleteUser(@RequestHeader String accessToken, @RequestBody DeleteUserDTO deleteUserDTO) {
+    public CompletableFuture<String> deleteUser(@RequestHeader String accessToken, @RequestBody DeleteUserDTO deleteUserDTO) {
 
         log.info("UserController: Starting deleteUser");
 
-        try{
-
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
+        return tokenManager.getUserAsync(accessToken).thenCompose(userTokenDTO -> {
 
             if(Objects.isNull(userTokenDTO))
                 throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
 
-            userService.deleteUser(deleteUserDTO);
+            return userService.deleteUser(deleteUserDTO);
+
+        }).thenApply(deleted -> {
 
             log.info("UserController: Exiting deleteUser");
 
             return Constants.USER_DELETED + " " + deleteUserDTO.getUsername();
 
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        }).whenComplete(this::logError);
     }
 
     @PostMapping("/logout")
-    public String logout(@RequestHeader String accessToken) {
+    public CompletableFuture<String> logout(@RequestHeader String accessToken) {
 
         log.info("UserController: Starting logout");
 
-        try {
-            UserTokenDTO userTokenDTO = tokenManager.getUser(accessToken);
+        return tokenManager.getUserAsync(accessToken).thenCompose(userTokenDTO -> {
 
             if(Objects.isNull(userTokenDTO))
                 throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
 
-            userService.logout(accessToken);
+            return userService.logout(accessToken);
+
+        }).handle((loggedOut, ex) -> {
+
+            if (Objects.nonNull(ex)) {
+                log.error(ex.getMessage(), ex);
+                throw new UnauthorizedException();
+            }
 
             log.info("UserController: Exiting logout");
 
             return Constants.USER_LOGOUT_SUCCESSFUL;
+        });
+    }
+
+    //Private Methods
+    private <T> ResponseDTO<T> buildResponse(int status, T data, String message) {
+        ResponseDTO<T> responseDTO = new ResponseDTO<>();
+        responseDTO.setStatus(status);
+        responseDTO.setData(data);
+        responseDTO.setMessage(message);
+        return responseDTO;
+    }
 
-        } catch (Exception ex) {
+    private void logError(Object result, Throwable ex) {
+        if (Objects.nonNull(ex))
             log.error(ex.getMessage(), ex);
-            throw new UnauthorizedException();
-        }
     }
 }
@@ -1,7 +1,10 @@
 package com.wishlist.cst438project2.document;
 
+import com.google.cloud.firestore.annotation.DocumentId;
+import com.google.cloud.firestore.annotation.Exclude;
 import com.wishlist.cst438project2.dto.ItemDTO;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -14,6 +17,8 @@ import lombok.extern.slf4j.Slf4j;
 @Data
 @NoArgsConstructor
 public class Item {
+    @DocumentId
+    private String docId;// document key, not stored as a field
     private Long itemId;// for admin functionalities
     private String name;
     private String link;
@@ -21,12 +26,28 @@ public class Item {
     private String imgUrl;
     private long userId;
     private String priority;
+    @Exclude
+    @Getter(onMethod_ = @Exclude)
+    private String version;// update time of the stored document, not stored as a field
 
     /**
      * returns an Item Data Transfer Object with parameters matching the current Item obj
      */
     public ItemDTO fetchItemDTO() {
-        return new ItemDTO(itemId, name, link, description, imgUrl, userId, priority);
+        ItemDTO itemDTO = new ItemDTO(itemId, name, link, description, imgUrl, userId, priority);
+        itemDTO.setVersion(version);
+        return itemDTO;
+    }
+
+    /**
+     * overwrites the fields given in changes, fields left null in changes are kept
+     */
+    public void applyChanges(ItemDTO changes) {
+        if (changes.getName() != null) name = changes.getName();
+        if (changes.getLink() != null) link = changes.getLink();
+        if (changes.getDescription() != null) description = changes.getDescription();
+        if (changes.getImgUrl() != null) imgUrl = changes.getImgUrl();
+        if (changes.getPriority() != null) priority = changes.getPriority();
     }
 
     public void logItem() {
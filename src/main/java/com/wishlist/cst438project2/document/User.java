@@ -1,10 +1,12 @@
 package com.wishlist.cst438project2.document;
 
 import com.google.cloud.firestore.annotation.DocumentId;
+import com.google.cloud.firestore.annotation.Exclude;
 import com.wishlist.cst438project2.common.Utils;
 import com.wishlist.cst438project2.dto.UserDTO;
 import com.wishlist.cst438project2.enums.RoleType;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
 
 /**
@@ -28,8 +30,26 @@ public class User {
     private String password;
     private RoleType role = RoleType.USER;
 
+    // update time of the stored document, not stored as a field
+    @Exclude
+    @Getter(onMethod_ = @Exclude)
+    private String version;
+
     public UserDTO fetchUserDTO() {
 
-        return new UserDTO(userId, firstName, lastName, emailId, username, role.getValue());
+        UserDTO userDTO = new UserDTO(userId, firstName, lastName, emailId, username, role.getValue());
+        userDTO.setVersion(version);
+        return userDTO;
+    }
+
+    /**
+     * overwrites the fields that are set in changes, the password is expected to be encoded already
+     */
+    public void applyChanges(UserDTO changes) {
+        if (changes.getFirstName() != null) firstName = changes.getFirstName();
+        if (changes.getLastName() != null) lastName = changes.getLastName();
+        if (changes.getEmailId() != null) emailId = changes.getEmailId();
+        if (changes.getPassword() != null) password = changes.getPassword();
+        if (changes.getRole() != null) role = RoleType.valueOf(changes.getRole());
     }
 }
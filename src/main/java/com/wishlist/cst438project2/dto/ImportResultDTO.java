@@ -0,0 +1,23 @@
+package com.wishlist.cst438project2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * summary of an item import with the outcome of every row, in body order
+ * @version %I% %G%
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportResultDTO {
+
+    private int imported;
+    private int failed;
+
+    private List<ImportRowDTO> rows;
+}
@@ -0,0 +1,27 @@
+package com.wishlist.cst438project2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * outcome of one row of an item import
+ * @version %I% %G%
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportRowDTO {
+
+    // line of the body the row starts at
+    private long line;
+
+    private String name;
+
+    // set when the row was imported
+    private Long itemId;
+
+    // set when the row was rejected or its write failed
+    private String error;
+}
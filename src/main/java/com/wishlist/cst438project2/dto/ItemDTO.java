@@ -34,6 +34,9 @@ public class ItemDTO {
     @Pattern(regexp = "(low|med|high)", message = "valid priority levels: low, med, high")
     private String priority;
 
+    // version of the stored item, also sent as the ETag header
+    private String version;
+
     /**
      * Constructor for an Item Data Transfer Object
      * @param name is the given name of an item, cannot be null
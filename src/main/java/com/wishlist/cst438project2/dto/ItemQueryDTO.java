@@ -0,0 +1,31 @@
+package com.wishlist.cst438project2.dto;
+
+import com.wishlist.cst438project2.enums.QueryOperator;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * structured item query, every field left null is not a predicate
+ * <p>
+ * a predicate with several values matches any of them (userIds 1 or 2), the predicates themselves are
+ * combined with operator, AND when not given
+ * @version %I% %G%
+ */
+
+@Data
+public class ItemQueryDTO {
+
+    private List<Long> userIds;
+
+    private List<String> priorities;
+
+    private Boolean hasLink;
+
+    // same matching as the search param, name or description contains the keyword
+    private List<String> keywords;
+
+    private QueryOperator operator;
+
+    private Integer limit;
+}
@@ -0,0 +1,33 @@
+package com.wishlist.cst438project2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * one page of search results with facet counts over all of the matches, not just the page
+ * @version %I% %G%
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemSearchResultDTO {
+
+    private List<ItemDTO> items;
+
+    private int page;
+    private int pageSize;
+
+    // number of matches across all pages
+    private long total;
+
+    // matches per priority (low, med, high, none)
+    private Map<String, Long> priorityCounts;
+
+    // matches per owner userId
+    private Map<Long, Long> ownerCounts;
+}
@@ -0,0 +1,27 @@
+package com.wishlist.cst438project2.dto;
+
+import com.wishlist.cst438project2.enums.JobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * state of a background job, poll it by jobId until status is no longer RUNNING
+ * @version %I% %G%
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobDTO {
+
+    private String jobId;
+
+    private JobStatus status;
+
+    // number of documents the job processed, set once it is DONE
+    private Integer count;
+
+    // set once it FAILED
+    private String error;
+}
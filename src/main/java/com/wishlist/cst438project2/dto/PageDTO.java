@@ -0,0 +1,23 @@
+package com.wishlist.cst438project2.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * one page of a listing, pass nextCursor as startAfter to get the following page
+ * @version %I% %G%
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageDTO<T> {
+
+    private List<T> items;
+
+    // null on the last page
+    private String nextCursor;
+}
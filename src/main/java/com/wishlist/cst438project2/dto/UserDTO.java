@@ -22,6 +22,9 @@ public class UserDTO {
     private String password;
     private String role;
 
+    // version of the stored user, also sent as the ETag header
+    private String version;
+
     //This constructor is used for Admin and for user related API response
     public UserDTO(Long userId, String firstName, String lastName, String emailId, String username, String role) {
         this.userId = userId;
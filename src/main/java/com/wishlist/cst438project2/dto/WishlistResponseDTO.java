@@ -19,4 +19,7 @@ public class WishlistResponseDTO {
 
     private Long userId;
     private List<ItemDTO> itemDTOList;
+
+    // ids on the wishlist whose item no longer exists
+    private List<Long> missingItemIds;
 }
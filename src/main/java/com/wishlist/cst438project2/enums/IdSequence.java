@@ -0,0 +1,28 @@
+package com.wishlist.cst438project2.enums;
+
+import com.wishlist.cst438project2.common.Constants;
+
+/**
+ * enum for the numeric id sequences handed out by IdAllocator.java
+ * <p>
+ * each sequence knows the collection and field it numbers, so a fresh counter can be seeded from existing data
+ * @version %I% %G%
+ */
+
+public enum IdSequence {
+
+    ITEM(Constants.DOCUMENT_ITEM, Constants.FIELD_ITEM_ID),
+    USER(Constants.DOCUMENT_USER, Constants.FIELD_USER_ID);
+
+    private String collection;
+    private String idField;
+
+    IdSequence(String collection, String idField) {
+        this.collection = collection;
+        this.idField = idField;
+    }
+
+    public String getCollection() { return collection; }
+
+    public String getIdField() { return idField; }
+}
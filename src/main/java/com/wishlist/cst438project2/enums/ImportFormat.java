@@ -0,0 +1,17 @@
+package com.wishlist.cst438project2.enums;
+/**
+ * body formats accepted by the item import
+ * @version %I% %G%
+ */
+
+public enum ImportFormat {
+
+    NDJSON("NDJSON"),
+    CSV("CSV");
+
+    private String value;
+
+    ImportFormat(String format) { this.value = format; }
+
+    public String getValue() { return value; }
+}
@@ -0,0 +1,18 @@
+package com.wishlist.cst438project2.enums;
+/**
+ * lifecycle of a background job, see JobRegistry
+ * @version %I% %G%
+ */
+
+public enum JobStatus {
+
+    RUNNING("RUNNING"),
+    DONE("DONE"),
+    FAILED("FAILED");
+
+    private String value;
+
+    JobStatus(String status) { this.value = status; }
+
+    public String getValue() { return value; }
+}
@@ -0,0 +1,17 @@
+package com.wishlist.cst438project2.enums;
+/**
+ * how the predicates of an ItemQueryDTO are combined
+ * @version %I% %G%
+ */
+
+public enum QueryOperator {
+
+    AND("AND"),
+    OR("OR");
+
+    private String value;
+
+    QueryOperator(String operator) { this.value = operator; }
+
+    public String getValue() { return value; }
+}
@@ -0,0 +1,15 @@
+package com.wishlist.cst438project2.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Conflict exception
+ * @version %I% %G%
+ */
+
+public class ConflictException extends HttpStatusException {
+
+    public ConflictException(String message) {
+        super(HttpStatus.CONFLICT, message);
+    }
+}
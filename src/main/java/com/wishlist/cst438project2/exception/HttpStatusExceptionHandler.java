@@ -0,0 +1,31 @@
+package com.wishlist.cst438project2.exception;
+
+import com.wishlist.cst438project2.dto.ResponseDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Answers requests that failed with an HttpStatusException with the exception's status code
+ * <p>
+ * the body is a ResponseDTO carrying the status and reason, the same shape the user endpoints reply with
+ * @version %I% %G%
+ */
+
+@RestControllerAdvice
+@Slf4j
+public class HttpStatusExceptionHandler {
+
+    @ExceptionHandler(HttpStatusException.class)
+    public ResponseEntity<ResponseDTO<Void>> handleHttpStatusException(HttpStatusException ex) {
+
+        log.info("HttpStatusExceptionHandler: {}", ex.getMessage());
+
+        ResponseDTO<Void> responseDTO = new ResponseDTO<>();
+        responseDTO.setStatus(ex.getCode().value());
+        responseDTO.setMessage(ex.getReason());
+
+        return ResponseEntity.status(ex.getCode()).body(responseDTO);
+    }
+}
@@ -0,0 +1,15 @@
+package com.wishlist.cst438project2.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Precondition failed exception
+ * @version %I% %G%
+ */
+
+public class PreconditionFailedException extends HttpStatusException {
+
+    public PreconditionFailedException(String message) {
+        super(HttpStatus.PRECONDITION_FAILED, message);
+    }
+}
@@ -1,19 +1,35 @@
 package com.wishlist.cst438project2.integration;
 
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.*;
-import com.google.firebase.cloud.FirestoreClient;
+import com.wishlist.cst438project2.common.BatchLoader;
 import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.ItemSearchIndex;
+import com.wishlist.cst438project2.common.SingleFlight;
+import com.wishlist.cst438project2.common.TopK;
+import com.wishlist.cst438project2.common.TtlCache;
+import com.wishlist.cst438project2.common.Utils;
 import com.wishlist.cst438project2.document.AccessToken;
 import com.wishlist.cst438project2.document.Item;
 import com.wishlist.cst438project2.document.User;
 import com.wishlist.cst438project2.common.extras.Wishlist;
 import com.wishlist.cst438project2.dto.ItemDTO;
+import com.wishlist.cst438project2.dto.ItemQueryDTO;
+import com.wishlist.cst438project2.dto.ItemSearchResultDTO;
+import com.wishlist.cst438project2.dto.PageDTO;
 import com.wishlist.cst438project2.dto.UserDTO;
+import com.wishlist.cst438project2.dto.UserTokenDTO;
 import com.wishlist.cst438project2.exception.BadRequestException;
+import com.wishlist.cst438project2.repository.AccessTokenRepository;
+import com.wishlist.cst438project2.repository.ItemRepository;
+import com.wishlist.cst438project2.repository.UserRepository;
+import com.wishlist.cst438project2.repository.WishlistRepository;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import lombok.SneakyThrows;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,6 +37,20 @@ import org.springframework.stereotype.Component;
 
 /**
  * Firebase Integration with Springboot and setup
+ * <p>
+ * every read and write goes through the storage repositories, the active implementation
+ * (Cloud Firestore or in-memory) is selected by spring profile
+ * <p>
+ * users are served from a short lived read-through cache that is invalidated by every user write going through here
+ * <p>
+ * concurrent identical reads of a user, a user's items or a wishlist share one repository call (see SingleFlight),
+ * writes going through here make later reads start a new one. Point reads of users and items by itemId that
+ * arrive within a few milliseconds of each other go out as one multi-document get (see BatchLoader)
+ * <p>
+ * item writes are mirrored into the ItemSearchIndex, which answers keyword searches once it is loaded
+ * <p>
+ * each call has a non-blocking *Async variant returning a CompletableFuture, the plain variant
+ * waits for it and rethrows the exception it failed with
  * @author Chaitanya Parwatkar
  * @version %I% %G%
  */
@@ -29,99 +59,197 @@ import org.springframework.stereotype.Component;
 @Slf4j
 public class FirebaseIntegration {
 
-    public final Firestore dbFirestore = FirestoreClient.getFirestore();
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private WishlistRepository wishlistRepository;
+
+    @Autowired
+    private AccessTokenRepository accessTokenRepository;
 
     @Autowired
     private ModelMapper modelMapper;
 
-    @SneakyThrows
-    public UserDTO getUser(String username) {
+    @Autowired
+    private TtlCache<String, User> userCache;
 
-        log.info("FirebaseIntegration: Starting getUser");
+    @Autowired
+    private SingleFlight<String, User> userFlight;
 
-        DocumentReference documentReference = dbFirestore.collection(Constants.DOCUMENT_USER).document(username);
+    @Autowired
+    private BatchLoader<String, User> userLoader;
 
-        ApiFuture<DocumentSnapshot> snapshotApiFuture = documentReference.get();
+    @Autowired
+    private BatchLoader<Long, Item> itemLoader;
 
-        try {
+    @Autowired
+    private SingleFlight<Long, List<Item>> userItemsFlight;
 
-            DocumentSnapshot documentSnapshot = snapshotApiFuture.get();
+    @Autowired
+    private SingleFlight<Long, Wishlist> wishlistFlight;
 
-            User user = null;
-            if (documentSnapshot.exists()) {
-                user = documentSnapshot.toObject(User.class);
-            }
+    @Autowired
+    private ItemSearchIndex itemSearchIndex;
+
+    @Autowired
+    private TtlCache<String, UserTokenDTO> accessTokenCache;
+
+    public UserDTO getUser(String username) {
+        return Utils.await(getUserAsync(username));
+    }
+
+    public CompletableFuture<UserDTO> getUserAsync(String username) {
+
+        log.info("FirebaseIntegration: Starting getUser");
+
+        return userCache.getOrLoad(username, key -> userFlight.execute(key, userLoader::load)).thenApply(user -> {
 
             log.info("FirebaseIntegration: Exiting getUser");
 
             return user == null ? null : modelMapper.map(user, UserDTO.class);
-
-        } catch(Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        });
     }
 
-    @SneakyThrows
     public List<UserDTO> getAllUsers() {
+        return Utils.await(getAllUsersAsync());
+    }
 
-        log.info("FirebaseIntegration: Starting getAllUsers");
+    /**
+     * returns one page of users ordered by username, after the user the cursor points at
+     * @param cursor nextCursor of the previous page, null for the first page
+     */
+    public PageDTO<UserDTO> getUsersPage(int pageSize, String cursor) {
+        return Utils.await(getUsersPageAsync(pageSize, cursor));
+    }
 
-        List<UserDTO> userDTOList = new ArrayList<>();
+    public CompletableFuture<PageDTO<UserDTO>> getUsersPageAsync(int pageSize, String cursor) {
+        return decodeCursor(cursor)
+                .thenCompose(startAfter -> userRepository.findPage(startAfter, pageSize + 1))
+                .thenApply(users -> toPage(users, pageSize, User::getId, user -> modelMapper.map(user, UserDTO.class)));
+    }
 
-        try {
+    public CompletableFuture<List<UserDTO>> getAllUsersAsync() {
 
-            ApiFuture<QuerySnapshot> future = dbFirestore.collection(Constants.DOCUMENT_USER).get();
-            List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+        log.info("FirebaseIntegration: Starting getAllUsers");
 
-            if(!documents.isEmpty()) {
+        return userRepository.findAll().thenApply(users -> {
 
-                log.info("User count: " + documents.size());
+            List<UserDTO> userDTOList = new ArrayList<>();
 
-                for(QueryDocumentSnapshot document: documents) {
-                    userDTOList.add(document.toObject(UserDTO.class));
-                }
+            for(User user : users) {
+                userDTOList.add(modelMapper.map(user, UserDTO.class));
             }
 
             log.info("FirebaseIntegration: Exiting getAllUsers");
 
             return userDTOList;
+        });
+    }
 
-        } catch(Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+    /**
+     * creates the given user, fails with BadRequestException if the username is already taken
+     * returns timestamp of successful write
+     */
+    public String createUser(User user) {
+        return Utils.await(createUserAsync(user));
     }
 
-    @SneakyThrows
-    public void deleteUser(String username) {
+    public CompletableFuture<String> createUserAsync(User user) {
 
-        log.info("FirebaseIntegration: Starting deleteUser");
+        log.info("FirebaseIntegration: Starting createUser");
 
-        try {
+        return userRepository.create(user)
+                .whenComplete((responseTimestamp, ex) -> evictUser(user.getUsername()))
+                .thenApply(responseTimestamp -> {
+
+                    log.info("FirebaseIntegration: Exiting createUser");
+
+                    return responseTimestamp;
+                });
+    }
 
-            ApiFuture<WriteResult> collectionApiFuture = dbFirestore.collection(Constants.DOCUMENT_USER).document(username).delete();
+    /**
+     * creates or overwrites the given user
+     * returns timestamp of successful write
+     */
+    public String saveUser(User user) {
+        return Utils.await(saveUserAsync(user));
+    }
 
-            String responseTimestamp = collectionApiFuture.get().getUpdateTime().toString();
+    public CompletableFuture<String> saveUserAsync(User user) {
 
-            log.info(Constants.USER_DELETED + " {}" , responseTimestamp);
+        log.info("FirebaseIntegration: Starting saveUser");
 
-            log.info("FirebaseIntegration: Exiting deleteUser");
+        return userRepository.save(user)
+                .whenComplete((responseTimestamp, ex) -> evictUser(user.getUsername()))
+                .thenApply(responseTimestamp -> {
 
-        } catch(Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+                    log.info("FirebaseIntegration: Exiting saveUser");
+
+                    return responseTimestamp;
+                });
+    }
+
+    /**
+     * writes the non-null fields of changes to the user,
+     * if expectedVersion is given only while the user is still at that version
+     * returns the new version of the user, the timestamp of the update
+     */
+    public String updateUser(String username, UserDTO changes, String expectedVersion) {
+        return Utils.await(updateUserAsync(username, changes, expectedVersion));
+    }
+
+    public CompletableFuture<String> updateUserAsync(String username, UserDTO changes, String expectedVersion) {
+
+        log.info("FirebaseIntegration: Starting updateUser");
+
+        return userRepository.update(username, changes, expectedVersion)
+                .whenComplete((version, ex) -> evictUser(username))
+                .thenApply(version -> {
+
+                    log.info("FirebaseIntegration: Exiting updateUser");
+
+                    return version;
+                });
+    }
+
+    public void deleteUser(String username) {
+        Utils.await(deleteUserAsync(username));
+    }
+
+    public CompletableFuture<Void> deleteUserAsync(String username) {
+
+        log.info("FirebaseIntegration: Starting deleteUser");
+
+        return userRepository.delete(username)
+                .whenComplete((responseTimestamp, ex) -> evictUser(username))
+                .thenAccept(responseTimestamp -> {
+
+                    log.info(Constants.USER_DELETED + " {}" , responseTimestamp);
+
+                    log.info("FirebaseIntegration: Exiting deleteUser");
+                });
     }
 
     /**
      * helper method for item endpoints
      * returns int userId for a given String username
      */
-    @SneakyThrows
     public long getUserId(String username) {
-        UserDTO user = getUser(username);
-        return user.getUserId();
+        return Utils.await(getUserIdAsync(username));
+    }
+
+    public CompletableFuture<Long> getUserIdAsync(String username) {
+        return getUserAsync(username).thenApply(user -> {
+            if (Objects.isNull(user)) {
+                throw new BadRequestException(Constants.ERROR_USER_DOES_NOT_EXISTS.replace(Constants.KEY_USERNAME, username));
+            }
+            return user.getUserId();
+        });
     }
 
     /**
@@ -130,29 +258,13 @@ public class FirebaseIntegration {
      * NOTE: some items may have the same name but be connected to different users
      * @param name item name to be matched against Item db
      */
-    @SneakyThrows
     public ItemDTO getItem(String name, long userId) {
-//        log.info("FirebaseIntegration: Starting getItem");
-        CollectionReference collectionReference = dbFirestore.collection(Constants.DOCUMENT_ITEM);
-        Query query = collectionReference.whereEqualTo(Constants.FIELD_ITEM_NAME, name).whereEqualTo(Constants.FIELD_USER_ID, userId);
-        ApiFuture<QuerySnapshot> snapshotApiFuture = query.get();
-
-        try {
-            QuerySnapshot querySnapshot = snapshotApiFuture.get();
-            Item item = null;
-
-            // if item exists, return the item?
-            if (querySnapshot.size() > 0) {
-//                log.info("\nFirebaseIntegration: createItem: querySnapshot: " + querySnapshot);
-                item = querySnapshot.toObjects(Item.class).get(0);
-            }
+        return Utils.await(getItemAsync(name, userId));
+    }
 
-//            log.info("FirebaseIntegration: Exiting getItem");
-            return item == null ? null : item.fetchItemDTO();
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+    public CompletableFuture<ItemDTO> getItemAsync(String name, long userId) {
+        return itemRepository.findByNameAndUserId(name, userId)
+                .thenApply(item -> item == null ? null : item.fetchItemDTO());
     }
 
     /**
@@ -160,313 +272,535 @@ public class FirebaseIntegration {
      * @param name item name
      * @param userId
      */
-    @SneakyThrows
     public String getItemDocId(String name, long userId) {
-//        log.info("FirebaseIntegration: Starting getItemDocId");
-        CollectionReference collectionReference = dbFirestore.collection(Constants.DOCUMENT_ITEM);
-        Query query = collectionReference.whereEqualTo(Constants.FIELD_ITEM_NAME, name).whereEqualTo(Constants.FIELD_USER_ID, userId);
-        ApiFuture<QuerySnapshot> snapshotApiFuture = query.get();
-
-        try {
-            QuerySnapshot querySnapshot = snapshotApiFuture.get();
-//            log.info(String.format("FirebaseIntegration: getItemDocId:\n    querySnapshot.size(): %d", querySnapshot.size()));
-
-            if ((querySnapshot.size() < 1) || (querySnapshot.size() > 1)) {
-                throw new BadRequestException(Constants.ERROR_ITEM_NOT_FOUND);
-            }
+        return Utils.await(getItemDocIdAsync(name, userId));
+    }
 
-//            log.info(String.format("FirebaseIntegration: getItemDocId: %s", querySnapshot.getDocuments().get(0).getId()));
-//            log.info("FirebaseIntegration: Exiting getItemDocId");
-            return querySnapshot.getDocuments().get(0).getId();
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+    public CompletableFuture<String> getItemDocIdAsync(String name, long userId) {
+        return itemRepository.findDocIdByNameAndUserId(name, userId);
     }
 
     /**
      * returns list of all documents within item collection
      */
-    @SneakyThrows
     public List<ItemDTO> getAllItems() {
-//        log.info("FirebaseIntegration: Starting getAllItems");
-        List<ItemDTO> collection = new ArrayList<>();
+        return Utils.await(getAllItemsAsync());
+    }
 
-        try {
-            ApiFuture<QuerySnapshot> dbNudge = dbFirestore.collection(Constants.DOCUMENT_ITEM).get();
-            List<QueryDocumentSnapshot> documents = dbNudge.get().getDocuments();
+    public CompletableFuture<List<ItemDTO>> getAllItemsAsync() {
+        return itemRepository.findAll().thenApply(this::toItemDTOs);
+    }
+
+    /**
+     * returns one page of items ordered by document id, after the item the cursor points at
+     * @param cursor nextCursor of the previous page, null for the first page
+     */
+    public PageDTO<ItemDTO> getItemsPage(int pageSize, String cursor) {
+        return Utils.await(getItemsPageAsync(pageSize, cursor));
+    }
+
+    public CompletableFuture<PageDTO<ItemDTO>> getItemsPageAsync(int pageSize, String cursor) {
+        return decodeCursor(cursor)
+                .thenCompose(startAfter -> itemRepository.findPage(startAfter, pageSize + 1))
+                .thenApply(items -> toPage(items, pageSize, Item::getDocId, Item::fetchItemDTO));
+    }
+
+    /**
+     * stores a new item document, fails with ConflictException if the user already has an item with that name
+     * returns timestamp of successful creation
+     */
+    public String createItem(Item item) {
+        return Utils.await(createItemAsync(item));
+    }
+
+    public CompletableFuture<String> createItemAsync(Item item) {
+        return itemRepository.create(item).thenApply(responseTimestamp -> {
+            userItemsFlight.forget(item.getUserId());
+            itemSearchIndex.put(Utils.itemKey(item.getUserId(), item.getName()), item.fetchItemDTO());
+            return responseTimestamp;
+        });
+    }
 
-            for(QueryDocumentSnapshot snap : documents) {
-                collection.add(snap.toObject(ItemDTO.class));
+    /**
+     * stores new item documents in one batch, see ItemRepository.saveAll
+     * returns timestamp of successful creation
+     */
+    public CompletableFuture<String> saveItemsAsync(List<Item> items) {
+        return itemRepository.saveAll(items).thenApply(responseTimestamp -> {
+            for (Item item : items) {
+                userItemsFlight.forget(item.getUserId());
+                itemSearchIndex.put(Utils.itemKey(item.getUserId(), item.getName()), item.fetchItemDTO());
             }
+            return responseTimestamp;
+        });
+    }
 
-//            log.info("FirebaseIntegration: Exiting getAllItems");
-            return collection;
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+    /**
+     * returns the items of a given userId
+     */
+    public CompletableFuture<List<ItemDTO>> getItemsByUserIdAsync(long userId) {
+        return userItemsFlight.execute(userId, itemRepository::findByUserId).thenApply(this::toItemDTOs);
     }
 
     /**
      * remove the item associated with a given document ID
      * returns timestamp of deletion
      */
-    @SneakyThrows
     public String removeItem(String docId) {
-//        log.info("FirebaseIntegration: Starting removeItem");
-        try {
-            ApiFuture<WriteResult> writeResult = dbFirestore.collection(Constants.DOCUMENT_ITEM).document(docId).delete();
-            String responseTimestamp = writeResult.get().getUpdateTime().toString();
-            log.info(Constants.ITEM_REMOVED + " {}" , responseTimestamp);
+        return Utils.await(removeItemAsync(docId));
+    }
 
-//            log.info("FirebaseIntegration: Exiting removeItem");
+    public CompletableFuture<String> removeItemAsync(String docId) {
+        return itemRepository.delete(docId).thenApply(responseTimestamp -> {
+            // legacy document ids don't tell the owner
+            userItemsFlight.forgetAll();
+            itemSearchIndex.remove(docId);
+            log.info(Constants.ITEM_REMOVED + " {}" , responseTimestamp);
             return responseTimestamp;
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        });
     }
 
     /**
-     * update the item associated with a given document ID
-     * returns timestamp of successful update
+     * writes the non-null fields of changes to the item of the given user and name,
+     * if expectedVersion is given only while the item is still at that version
+     * returns the new version of the item, the timestamp of the update
      */
-    @SneakyThrows
-    public String updateItem(String docId, ItemDTO updatedItemDTO) {
-//        log.info("FirebaseIntegration: Starting updateItem");
-        try {
-            ApiFuture<WriteResult> writeResult = dbFirestore.collection(Constants.DOCUMENT_ITEM)
-                                                            .document(docId).set(updatedItemDTO);
-            String responseTimestamp = writeResult.get().getUpdateTime().toString();
-            log.info(Constants.ITEM_UPDATED + " {}" , responseTimestamp);
+    public String updateItem(long userId, String name, ItemDTO changes, String expectedVersion) {
+        return Utils.await(updateItemAsync(userId, name, changes, expectedVersion));
+    }
 
-//            log.info("FirebaseIntegration: Exiting updateItem");
-            return responseTimestamp;
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+    public CompletableFuture<String> updateItemAsync(long userId, String name, ItemDTO changes, String expectedVersion) {
+        return itemRepository.update(userId, name, changes, expectedVersion).thenApply(itemUpdate -> {
+            userItemsFlight.forget(userId);
+            // an item that wasn't migrated yet is indexed under its legacy id, the update has moved it to its key
+            String newName = Objects.isNull(changes.getName()) ? name : changes.getName();
+            itemSearchIndex.patch(itemUpdate.getDocId(), Utils.itemKey(userId, newName), changes, itemUpdate.getVersion());
+            log.info(Constants.ITEM_UPDATED + " {}" , itemUpdate.getVersion());
+            return itemUpdate.getVersion();
+        });
+    }
+
+    /**
+     * moves item documents that still have a random document id to their key
+     * returns number of moved items
+     */
+    public int migrateItemKeys() {
+        return Utils.await(migrateItemKeysAsync());
+    }
+
+    public CompletableFuture<Integer> migrateItemKeysAsync() {
+
+        log.info("FirebaseIntegration: Starting migrateItemKeys");
+
+        // the index still has the moved items under their legacy ids
+        return itemRepository.migrateLegacyKeys().thenCompose(migrated -> {
+
+            CompletableFuture<Void> reload = migrated > 0 ? itemSearchIndex.reload() : CompletableFuture.completedFuture(null);
+            return reload.thenApply(reloaded -> {
+
+                log.info("FirebaseIntegration: Exiting migrateItemKeys, {} items moved", migrated);
+                return migrated;
+            });
+        });
     }
 
     /**
      * retrieve a list of items given a user's id
      * returns list of items
      */
-    @SneakyThrows
     public List<ItemDTO> getUserItems(String username) {
-//        log.info("FirebaseIntegration: Starting getUserItems");
-        long userId = getUserId(username);
-        List<ItemDTO> userItems = new ArrayList<>();
-
-        CollectionReference collectionReference = dbFirestore.collection(Constants.DOCUMENT_ITEM);
-        Query query = collectionReference.whereEqualTo(Constants.FIELD_USER_ID, userId);
-        ApiFuture<QuerySnapshot> snapshotApiFuture = query.get();
+        return Utils.await(getUserItemsAsync(username));
+    }
 
-        try {
-            QuerySnapshot querySnapshot = snapshotApiFuture.get();
-            List<QueryDocumentSnapshot> documents = querySnapshot.getDocuments();
-            for(QueryDocumentSnapshot doc : documents) {
-                userItems.add(doc.toObject(ItemDTO.class));
-            }
+    public CompletableFuture<List<ItemDTO>> getUserItemsAsync(String username) {
+        return getUserIdAsync(username).thenCompose(this::getItemsByUserIdAsync);
+    }
 
-            return userItems;
-        } catch (Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+    /**
+     * retrieve one page of a user's items, paged like getItemsPage
+     */
+    public CompletableFuture<PageDTO<ItemDTO>> getUserItemsPageAsync(String username, int pageSize, String cursor) {
+        return decodeCursor(cursor).thenCompose(startAfter -> getUserIdAsync(username)
+                        .thenCompose(userId -> itemRepository.findPageByUserId(userId, startAfter, pageSize + 1)))
+                .thenApply(items -> toPage(items, pageSize, Item::getDocId, Item::fetchItemDTO));
     }
 
     /**
      * retrieve a list of items based on search keywords within name and description
+     * <p>
+     * an item matches when any of the keywords occurs in its name or description as a substring, ignoring case
+     * ("ass fin" matches "brass finish"), answered by the search index once it is loaded and by a scan of the
+     * item collection before that
      * returns list of items
      */
-    @SneakyThrows
     public List<ItemDTO> getSearchAllItems(List<String> keywords) {
-//        log.info("FirebaseIntegration: Starting getSearchItems");
-        List<ItemDTO> allItems = getAllItems();
-        List<ItemDTO> searchItems = new ArrayList<>();
+        return Utils.await(getSearchAllItemsAsync(keywords));
+    }
+
+    public CompletableFuture<List<ItemDTO>> getSearchAllItemsAsync(List<String> keywords) {
+        if (itemSearchIndex.isReady())
+            return CompletableFuture.completedFuture(itemSearchIndex.search(keywords));
 
-        for (ItemDTO item : allItems) {
-            if (keywordsPresent(item, keywords)) {
-                searchItems.add(item);
+        return getAllItemsAsync().thenApply(allItems -> {
+            List<ItemDTO> searchItems = new ArrayList<>();
+
+            for (ItemDTO item : allItems) {
+                if (keywordsScore(item, keywords) > 0) {
+                    searchItems.add(item);
+                }
             }
-        }
-        return searchItems;
+            return searchItems;
+        });
     }
     /**
-     * utility function to search for a list of keywords in a given item
-     * @param keywords refers to list of Strings to look for in an item's name or description
-     * returns true if one or more keywords are present, false in none are present
+     * retrieve one page of the keyword search along with priority and owner counts over all matches
+     * returns the page and its facets
      */
-    private boolean keywordsPresent(ItemDTO item, List<String> keywords) {
-//        log.info("FirebaseIntegration: Starting keywordsPresent");
-        boolean found = false;
+    public ItemSearchResultDTO getFacetedSearchItems(List<String> keywords, int page, int pageSize) {
+        return Utils.await(getFacetedSearchItemsAsync(keywords, page, pageSize));
+    }
 
-        for (String keyword : keywords) {
-//            log.info(String.format("\n    keyword: %s\n    item name: %s\n    item description: %s",
-//                    keyword, item.getName(), item.getDescription()));
-            if (item.getName().toLowerCase().contains(keyword)) {
-                found = true;
-                break;
-            }
-            if (item.getDescription() != null && item.getDescription().toLowerCase().contains(keyword)) {
-                found = true;
-                break;
-            }
-        }
-//        log.info("FirebaseIntegration: Exiting keywordsPresent");
-        return found;
+    public CompletableFuture<ItemSearchResultDTO> getFacetedSearchItemsAsync(List<String> keywords, int page, int pageSize) {
+        if (itemSearchIndex.isReady())
+            return CompletableFuture.completedFuture(itemSearchIndex.searchFaceted(keywords, page, pageSize));
+
+        return getSearchAllItemsAsync(keywords).thenApply(matches -> ItemSearchIndex.facetPage(matches, page, pageSize));
     }
 
-    @SneakyThrows
-    public String removeItemsByUser(String username) {
-//        log.info("FirebaseIntegration: Starting removeItemsByUser");
-        long userId = getUserId(username);
-        String timestamp = "";
+    /**
+     * retrieve the limit most relevant items for the search keywords, see ItemSearchIndex.searchTop for the scoring
+     * returns list of items, best match first
+     */
+    public CompletableFuture<List<ItemDTO>> getTopSearchItemsAsync(List<String> keywords, int limit) {
+        if (itemSearchIndex.isReady())
+            return CompletableFuture.completedFuture(itemSearchIndex.searchTop(keywords, limit));
 
-        try {
-            List<ItemDTO> userItems = getUserItems(username);
-            int removed = 0;
-            log.info("FirebaseIntegration: removeItemsByUser\n    userItems size: {}", userItems.size());
-            for (int i = 0; i < userItems.size(); i++) {
-                String docId = getItemDocId(userItems.get(i).getName(), userId);
-                if (i == userItems.size() - 1) {
-                    timestamp = removeItem(docId);
-                } else {
-                    removeItem(docId);
-                }
-                removed++;
+        return getAllItemsAsync().thenApply(allItems -> {
+            TopK<ItemDTO> top = new TopK<>(limit);
+
+            for (ItemDTO item : allItems) {
+                long score = keywordsScore(item, keywords);
+                if (score > 0)
+                    top.offer(item, score);
             }
-            log.info("FirebaseIntegration: removeItemsByUser\n    # items removed: {}", removed);
-        } catch (Exception ex) {
-            log.error(ex.getMessage(),ex);
-            throw ex;
-        }
+            return top.toList();
+        });
+    }
 
-//        log.info("FirebaseIntegration: Exiting removeItemsByUser");
-        return timestamp;
+    /**
+     * retrieve the items matching a structured query, answered by the search index once it is loaded
+     * and by a scan of the item collection before that
+     * returns at most limit items
+     */
+    public List<ItemDTO> queryItems(ItemQueryDTO itemQueryDTO, int limit) {
+        return Utils.await(queryItemsAsync(itemQueryDTO, limit));
+    }
+
+    public CompletableFuture<List<ItemDTO>> queryItemsAsync(ItemQueryDTO itemQueryDTO, int limit) {
+        if (itemSearchIndex.isReady())
+            return CompletableFuture.completedFuture(itemSearchIndex.query(itemQueryDTO, limit));
+
+        return getAllItemsAsync().thenApply(allItems -> allItems.stream()
+                .filter(item -> ItemSearchIndex.matches(itemQueryDTO, item))
+                .limit(limit)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * typo tolerant search, see ItemSearchIndex.searchFuzzy. Only the index can answer it, so this is empty
+     * until the index is loaded instead of scanning
+     * returns list of items, fewest edits first
+     */
+    public List<ItemDTO> getFuzzySearchItems(List<String> keywords, int limit) {
+        return Utils.await(getFuzzySearchItemsAsync(keywords, limit));
     }
 
+    public CompletableFuture<List<ItemDTO>> getFuzzySearchItemsAsync(List<String> keywords, int limit) {
+        if (!itemSearchIndex.isReady())
+            return CompletableFuture.completedFuture(new ArrayList<>());
+
+        return CompletableFuture.completedFuture(itemSearchIndex.searchFuzzy(keywords, limit));
+    }
+
+    /**
+     * autocomplete for item names, empty until the search index is loaded rather than scanning on every keystroke
+     * returns up to limit names starting with prefix, most common first
+     */
+    public List<String> getItemSuggestions(String prefix, int limit) {
+        return Utils.await(getItemSuggestionsAsync(prefix, limit));
+    }
+
+    public CompletableFuture<List<String>> getItemSuggestionsAsync(String prefix, int limit) {
+        if (!itemSearchIndex.isReady())
+            return CompletableFuture.completedFuture(new ArrayList<>());
+
+        return CompletableFuture.completedFuture(itemSearchIndex.suggest(prefix, limit));
+    }
+
+    private void evictUser(String username) {
+        userCache.invalidate(username);
+        userFlight.forget(username);
+    }
+
+    /**
+     * scan counterpart of the index scoring, every keyword contained in the name or description adds its weight
+     * returns 0 when none of the keywords is present
+     */
+    private long keywordsScore(ItemDTO item, List<String> keywords) {
+        String name = ItemSearchIndex.normalize(item.getName());
+        String description = ItemSearchIndex.normalize(item.getDescription());
+
+        long score = 0;
+        for (String keyword : keywords)
+            score += ItemSearchIndex.score(name, description, ItemSearchIndex.normalize(keyword));
+        return score;
+    }
+
+    /**
+     * remove every item associated with a given username
+     * returns number of removed items
+     */
+    public int removeItemsByUser(String username) {
+        return Utils.await(removeItemsByUserAsync(username));
+    }
+
+    public CompletableFuture<Integer> removeItemsByUserAsync(String username) {
+        return getUserIdAsync(username)
+                .thenCompose(this::removeItemsByUserIdAsync)
+                .whenComplete((removed, ex) -> {
+                    if (Objects.nonNull(ex))
+                        log.error(ex.getMessage(), ex);
+                });
+    }
+
+    /**
+     * remove every item associated with a given userId
+     * returns number of removed items
+     */
+    public CompletableFuture<Integer> removeItemsByUserIdAsync(long userId) {
+        return itemRepository.deleteByUserId(userId).thenApply(docIds -> {
+            userItemsFlight.forget(userId);
+            docIds.forEach(itemSearchIndex::remove);
+            log.info("FirebaseIntegration: removeItemsByUser\n    # items removed: {}", docIds.size());
+            return docIds.size();
+        });
+    }
 
-    @SneakyThrows
     public Wishlist getUserWishlist(Long userId) {
+        return Utils.await(getUserWishlistAsync(userId));
+    }
+
+    public CompletableFuture<Wishlist> getUserWishlistAsync(Long userId) {
 
         log.info("FirebaseIntegration: Starting getUserWishlist for User: {}", userId);
 
-        DocumentReference documentReference = dbFirestore.collection(Constants.DOCUMENT_USER_WISHLIST).document(String.valueOf(userId));
+        return wishlistFlight.execute(userId, wishlistRepository::findByUserId).thenApply(wishlist -> {
 
-        ApiFuture<DocumentSnapshot> snapshotApiFuture = documentReference.get();
+            log.info("FirebaseIntegration: Exiting getUserWishlist");
+            // the loaded wishlist is shared with concurrent callers, each one gets its own copy
+            return Objects.isNull(wishlist) ? null : new Wishlist(wishlist.getUserId(),
+                    Objects.isNull(wishlist.getItemIds()) ? null : new ArrayList<>(wishlist.getItemIds()));
+        });
+    }
 
-        try {
+    /**
+     * creates or overwrites the wishlist of the wishlist's user
+     * returns timestamp of successful write
+     */
+    public String saveWishlist(Wishlist wishlist) {
+        return Utils.await(saveWishlistAsync(wishlist));
+    }
 
-            DocumentSnapshot documentSnapshot = snapshotApiFuture.get();
+    public CompletableFuture<String> saveWishlistAsync(Wishlist wishlist) {
 
-            Wishlist wishlist = null;
-            if (documentSnapshot.exists()) {
-                wishlist = documentSnapshot.toObject(Wishlist.class);
-            }
+        log.info("FirebaseIntegration: Starting saveWishlist for User: {}", wishlist.getUserId());
 
-            log.info("FirebaseIntegration: Exiting getUserWishlist");
-            return wishlist;
+        return wishlistRepository.save(wishlist).thenApply(responseTimestamp -> {
+            wishlistFlight.forget(wishlist.getUserId());
 
-        } catch(Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+            log.info("FirebaseIntegration: Exiting saveWishlist");
+            return responseTimestamp;
+        });
+    }
+
+    /**
+     * adds the items to the user's wishlist, items already on it are skipped
+     * returns timestamp of successful write
+     */
+    public String addWishlistItems(Long userId, List<Long> itemIds) {
+        return Utils.await(addWishlistItemsAsync(userId, itemIds));
+    }
+
+    public CompletableFuture<String> addWishlistItemsAsync(Long userId, List<Long> itemIds) {
+
+        log.info("FirebaseIntegration: Starting addWishlistItems for User: {}", userId);
+
+        return wishlistRepository.addItems(userId, itemIds).thenApply(responseTimestamp -> {
+            wishlistFlight.forget(userId);
+
+            log.info("FirebaseIntegration: Exiting addWishlistItems");
+            return responseTimestamp;
+        });
+    }
+
+    /**
+     * removes the items from the user's wishlist
+     * returns timestamp of successful write
+     */
+    public String removeWishlistItems(Long userId, List<Long> itemIds) {
+        return Utils.await(removeWishlistItemsAsync(userId, itemIds));
+    }
+
+    public CompletableFuture<String> removeWishlistItemsAsync(Long userId, List<Long> itemIds) {
+
+        log.info("FirebaseIntegration: Starting removeWishlistItems for User: {}", userId);
+
+        return wishlistRepository.removeItems(userId, itemIds).thenApply(responseTimestamp -> {
+            wishlistFlight.forget(userId);
+
+            log.info("FirebaseIntegration: Exiting removeWishlistItems");
+            return responseTimestamp;
+        });
+    }
+
+    /**
+     * puts the user's wishlist in the given order
+     * returns the reordered wishlist or null if itemIds aren't exactly the items on the wishlist
+     */
+    public Wishlist reorderWishlist(Long userId, List<Long> itemIds) {
+        return Utils.await(reorderWishlistAsync(userId, itemIds));
+    }
+
+    public CompletableFuture<Wishlist> reorderWishlistAsync(Long userId, List<Long> itemIds) {
+
+        log.info("FirebaseIntegration: Starting reorderWishlist for User: {}", userId);
+
+        return wishlistRepository.reorder(userId, itemIds).thenApply(wishlist -> {
+            wishlistFlight.forget(userId);
+
+            log.info("FirebaseIntegration: Exiting reorderWishlist");
+            return wishlist;
+        });
     }
 
-    @SneakyThrows
     public void saveAccessToken(AccessToken accessToken) {
+        Utils.await(saveAccessTokenAsync(accessToken));
+    }
 
-        log.info("FirebaseIntegration: Starting saveAccessToken");
+    public CompletableFuture<Void> saveAccessTokenAsync(AccessToken accessToken) {
 
-        try {
-            ApiFuture<WriteResult> collectionApiFuture = dbFirestore.collection(Constants.DOCUMENT_ACCESS_TOKEN).document(accessToken.getToken()).set(accessToken);
+        log.info("FirebaseIntegration: Starting saveAccessToken");
 
-            String responseTimestamp = collectionApiFuture.get().getUpdateTime().toString();
+        return accessTokenRepository.save(accessToken).thenAccept(responseTimestamp -> {
 
             log.info("ResponseTimestamp: {}", responseTimestamp);
 
             log.info("FirebaseIntegration: Exiting saveAccessToken");
-
-        } catch(Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        });
     }
 
-    @SneakyThrows
     public AccessToken fetchAccessToken(String token) {
+        return Utils.await(fetchAccessTokenAsync(token));
+    }
 
-        log.info("FirebaseIntegration: Starting fetchAccessToken");
-
-        try {
-            DocumentReference documentReference = dbFirestore.collection(Constants.DOCUMENT_ACCESS_TOKEN).document(token);
-
-            ApiFuture<DocumentSnapshot> snapshotApiFuture = documentReference.get();
+    public CompletableFuture<AccessToken> fetchAccessTokenAsync(String token) {
 
-            DocumentSnapshot documentSnapshot = snapshotApiFuture.get();
+        log.info("FirebaseIntegration: Starting fetchAccessToken");
 
-            AccessToken accessToken = null;
-            if (documentSnapshot.exists()) {
-                accessToken = documentSnapshot.toObject(AccessToken.class);
-            }
+        return accessTokenRepository.findByToken(token).thenApply(accessToken -> {
 
             log.info("FirebaseIntegration: Exiting fetchAccessToken");
             return accessToken;
-
-        } catch(Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        });
     }
 
-    @SneakyThrows
     public void deleteAccessToken(String accessToken) {
+        Utils.await(deleteAccessTokenAsync(accessToken));
+    }
+
+    public CompletableFuture<Void> deleteAccessTokenAsync(String accessToken) {
 
         log.info("FirebaseIntegration: Starting deleteAccessToken");
 
-        try {
+        // dropped before the delete so this node stops accepting the token right away, and again
+        // after it, in case a validation that read the token before the delete cached it meanwhile
+        accessTokenCache.invalidate(accessToken);
+
+        return accessTokenRepository.delete(accessToken)
+                .whenComplete((responseTimestamp, ex) -> accessTokenCache.invalidate(accessToken))
+                .thenAccept(responseTimestamp -> {
 
-            ApiFuture<WriteResult> collectionApiFuture = dbFirestore.collection(Constants.DOCUMENT_ACCESS_TOKEN).document(accessToken).delete();
+                    log.info(Constants.USER_ACCESS_TOKEN_DELETED + " {}" , responseTimestamp);
+
+                    log.info("FirebaseIntegration: Exiting deleteAccessToken");
+                });
+    }
 
-            String responseTimestamp = collectionApiFuture.get().getUpdateTime().toString();
+    /**
+     * returns the items with the given itemIds keyed by itemId, ids without an item are not in the map
+     */
+    public Map<Long, ItemDTO> fetchItemsByItemIds(List<Long> itemIds) {
+        return Utils.await(fetchItemsByItemIdsAsync(itemIds));
+    }
 
-            log.info(Constants.USER_ACCESS_TOKEN_DELETED + " {}" , responseTimestamp);
+    public CompletableFuture<Map<Long, ItemDTO>> fetchItemsByItemIdsAsync(List<Long> itemIds) {
 
-            log.info("FirebaseIntegration: Exiting deleteAccessToken");
+        log.info("FirebaseIntegration: Starting fetchItemsByItemIds");
 
-        } catch(Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+        return itemRepository.findByItemIds(itemIds).thenApply(items -> {
+
+            Map<Long, ItemDTO> itemDTOMap = new HashMap<>();
+            for (Item item : items)
+                itemDTOMap.put(item.getItemId(), item.fetchItemDTO());
+
+            log.info("FirebaseIntegration: Exiting fetchItemsByItemIds");
+
+            return itemDTOMap;
+        });
     }
 
-    @SneakyThrows
     public ItemDTO fetchItemByItemId(Long itemId) {
+        return Utils.await(fetchItemByItemIdAsync(itemId));
+    }
+
+    public CompletableFuture<ItemDTO> fetchItemByItemIdAsync(Long itemId) {
 
         log.info("FirebaseIntegration: Starting fetchItemByItemId");
 
-        CollectionReference collectionReference = dbFirestore.collection(Constants.DOCUMENT_ITEM);
-        Query query = collectionReference.whereEqualTo(Constants.FIELD_ITEM_ID, itemId);
-        ApiFuture<QuerySnapshot> snapshotApiFuture = query.get();
+        return itemLoader.load(itemId).thenApply(item -> {
 
-        try {
+            log.info("FirebaseIntegration: Exiting fetchItemByItemId");
 
-            QuerySnapshot querySnapshot = snapshotApiFuture.get();
+            return item == null ? null : modelMapper.map(item, ItemDTO.class);
+        });
+    }
 
-            Item item = null;
-            if (!querySnapshot.isEmpty())
-                item = querySnapshot.getDocuments().get(0).toObject(Item.class);
+    //Private Methods
+    private CompletableFuture<String> decodeCursor(String cursor) {
+        try {
+            return CompletableFuture.completedFuture(Utils.decodeCursor(cursor));
+        } catch (BadRequestException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
 
-            log.info("FirebaseIntegration: Exiting fetchItemByItemId");
+    /**
+     * documents holds up to pageSize + 1 documents, the extra one only tells that there is a next page
+     */
+    private <D, T> PageDTO<T> toPage(List<D> documents, int pageSize, Function<D, String> docId, Function<D, T> toDTO) {
+        List<T> page = new ArrayList<>(Math.min(documents.size(), pageSize));
+        for (int i = 0; i < documents.size() && i < pageSize; i++)
+            page.add(toDTO.apply(documents.get(i)));
 
-            return item == null ? null : modelMapper.map(item, ItemDTO.class);
+        String nextCursor = documents.size() > pageSize ? Utils.encodeCursor(docId.apply(documents.get(pageSize - 1))) : null;
+        return new PageDTO<>(page, nextCursor);
+    }
 
-        } catch(Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
+    private List<ItemDTO> toItemDTOs(List<Item> items) {
+        List<ItemDTO> itemDTOList = new ArrayList<>();
+        for (Item item : items) {
+            itemDTOList.add(item.fetchItemDTO());
         }
+        return itemDTOList;
     }
 }
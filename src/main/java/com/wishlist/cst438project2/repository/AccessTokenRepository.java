@@ -0,0 +1,28 @@
+package com.wishlist.cst438project2.repository;
+
+import com.wishlist.cst438project2.document.AccessToken;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage interface for issued access tokens, keyed by the token itself
+ * @version %I% %G%
+ */
+
+public interface AccessTokenRepository {
+
+    /**
+     * returns the stored access token or null if it was never issued or has been deleted
+     */
+    CompletableFuture<AccessToken> findByToken(String token);
+
+    /**
+     * returns timestamp of successful write
+     */
+    CompletableFuture<String> save(AccessToken accessToken);
+
+    /**
+     * returns timestamp of deletion
+     */
+    CompletableFuture<String> delete(String token);
+}
@@ -0,0 +1,20 @@
+package com.wishlist.cst438project2.repository;
+
+import com.wishlist.cst438project2.enums.IdSequence;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage interface for the shared id counters
+ * <p>
+ * a block, once reserved, is never handed out again, no matter how many app nodes share the same storage
+ * @version %I% %G%
+ */
+public interface IdBlockRepository {
+
+    /**
+     * atomically reserves the ids [start, start + blockSize) of the given sequence
+     * returns start, the first id of the reserved block
+     */
+    CompletableFuture<Long> reserveBlock(IdSequence sequence, long blockSize);
+}
@@ -0,0 +1,104 @@
+package com.wishlist.cst438project2.repository;
+
+import com.wishlist.cst438project2.document.Item;
+import com.wishlist.cst438project2.dto.ItemDTO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage interface for item documents
+ * <p>
+ * like the other repositories every operation is non-blocking, failures are reported through the returned future
+ * <p>
+ * NOTE: item documents are addressed by a document id which is not the same as the item's itemId, it is derived
+ * from the item's userId and name (see Utils.itemKey), so lookups by name are single document reads.
+ * Documents written before that still have random ids until migrateLegacyKeys() moves them
+ * @version %I% %G%
+ */
+public interface ItemRepository {
+
+    /**
+     * most items saveAll() takes at once, a firestore batch holds at most 500 writes and every item takes 2
+     * (the item and its item_id key), deletes are chunked the same way
+     */
+    int MAX_BATCH_ITEMS = 250;
+
+    /**
+     * returns the item that matches given item name and userId or null if not found,
+     * with its version set
+     */
+    CompletableFuture<Item> findByNameAndUserId(String name, long userId);
+
+    /**
+     * returns the document id of the item that matches given item name and userId
+     * fails with BadRequestException if there isn't exactly one such item
+     */
+    CompletableFuture<String> findDocIdByNameAndUserId(String name, long userId);
+
+    /**
+     * returns the item with the given itemId or null if not found
+     */
+    CompletableFuture<Item> findByItemId(Long itemId);
+
+    /**
+     * returns the items with the given itemIds, ids that don't belong to any item are left out
+     */
+    CompletableFuture<List<Item>> findByItemIds(Collection<Long> itemIds);
+
+    CompletableFuture<List<Item>> findAll();
+
+    CompletableFuture<List<Item>> findByUserId(long userId);
+
+    /**
+     * returns up to limit items ordered by document id, starting after the given document id (from the start when null)
+     */
+    CompletableFuture<List<Item>> findPage(String startAfterDocId, int limit);
+
+    /**
+     * same as findPage, limited to the items of one user
+     */
+    CompletableFuture<List<Item>> findPageByUserId(long userId, String startAfterDocId, int limit);
+
+    /**
+     * stores the item under its key only if the key isn't taken yet, the check and the insert are one atomic write
+     * fails with ConflictException if the user already has an item with the same name
+     * returns timestamp of successful write
+     */
+    CompletableFuture<String> create(Item item);
+
+    /**
+     * creates every item under its key in one atomic write, callers keep a list within MAX_BATCH_ITEMS
+     * fails with ConflictException, and writes none of them, if any of the keys is already taken
+     * returns timestamp of successful write
+     */
+    CompletableFuture<String> saveAll(List<Item> items);
+
+    /**
+     * writes the non-null fields of changes (name, link, description, imgUrl, priority) to the item of the given
+     * user and name, moving it to a new key if it was renamed. Other fields keep their stored values
+     * fails with BadRequestException if there is no such item, with ConflictException if the new name is already
+     * taken by another item of the same user and with PreconditionFailedException if expectedVersion is given
+     * and the item's current version is a different one
+     * returns the document the item was read from and its new version, for firestore the timestamp of the update
+     */
+    CompletableFuture<ItemUpdate> update(long userId, String name, ItemDTO changes, String expectedVersion);
+
+    /**
+     * returns timestamp of deletion
+     */
+    CompletableFuture<String> delete(String docId);
+
+    /**
+     * deletes every item of the given user
+     * returns the document ids of the deleted items
+     */
+    CompletableFuture<List<String>> deleteByUserId(long userId);
+
+    /**
+     * moves every item still stored under a random document id to its key
+     * returns the number of moved items
+     */
+    CompletableFuture<Integer> migrateLegacyKeys();
+}
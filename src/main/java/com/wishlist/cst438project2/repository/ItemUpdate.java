@@ -0,0 +1,18 @@
+package com.wishlist.cst438project2.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * outcome of ItemRepository.update(), the document the item was read from and the version it was written with.
+ * For an item not migrated yet docId is its random legacy id, not its key
+ * @version %I% %G%
+ */
+
+@Data
+@AllArgsConstructor
+public class ItemUpdate {
+
+    private String docId;
+    private String version;
+}
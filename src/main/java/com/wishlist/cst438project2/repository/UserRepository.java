@@ -0,0 +1,60 @@
+package com.wishlist.cst438project2.repository;
+
+import com.wishlist.cst438project2.document.User;
+import com.wishlist.cst438project2.dto.UserDTO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage interface for user documents, keyed by username
+ * @version %I% %G%
+ */
+
+public interface UserRepository {
+
+    /**
+     * returns the user stored under the given username, with its version set, or null if not found
+     */
+    CompletableFuture<User> findByUsername(String username);
+
+    /**
+     * returns the users stored under the given usernames, usernames that don't belong to any user are left out
+     */
+    CompletableFuture<List<User>> findByUsernames(Collection<String> usernames);
+
+    CompletableFuture<List<User>> findAll();
+
+    /**
+     * returns up to limit users ordered by document id, starting after the given document id (from the start when null)
+     */
+    CompletableFuture<List<User>> findPage(String startAfterDocId, int limit);
+
+    /**
+     * stores the user only if its username isn't taken yet, in a single write
+     * fails with BadRequestException if a user with the same username already exists
+     * returns timestamp of successful write
+     */
+    CompletableFuture<String> create(User user);
+
+    /**
+     * creates or overwrites the user document
+     * returns timestamp of successful write
+     */
+    CompletableFuture<String> save(User user);
+
+    /**
+     * writes only the non-null fields of changes (firstName, lastName, emailId, password, role) to the user,
+     * the password has to be encoded already
+     * fails with BadRequestException if there is no such user and with PreconditionFailedException if
+     * expectedVersion is given and the user's current version is a different one
+     * returns the new version of the user, for firestore the timestamp of the update
+     */
+    CompletableFuture<String> update(String username, UserDTO changes, String expectedVersion);
+
+    /**
+     * returns timestamp of deletion
+     */
+    CompletableFuture<String> delete(String username);
+}
@@ -0,0 +1,44 @@
+package com.wishlist.cst438project2.repository;
+
+import com.wishlist.cst438project2.common.extras.Wishlist;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage interface for wishlist documents, keyed by userId
+ * @version %I% %G%
+ */
+
+public interface WishlistRepository {
+
+    /**
+     * returns the wishlist of the given user or null if not found
+     */
+    CompletableFuture<Wishlist> findByUserId(Long userId);
+
+    /**
+     * creates or overwrites the wishlist document
+     * returns timestamp of successful write
+     */
+    CompletableFuture<String> save(Wishlist wishlist);
+
+    /**
+     * adds the itemIds that aren't on the wishlist yet to its end, creating the wishlist if needed,
+     * without reading the wishlist
+     * returns timestamp of successful write
+     */
+    CompletableFuture<String> addItems(Long userId, List<Long> itemIds);
+
+    /**
+     * removes every occurrence of the itemIds from the wishlist, without reading it
+     * returns timestamp of successful write
+     */
+    CompletableFuture<String> removeItems(Long userId, List<Long> itemIds);
+
+    /**
+     * atomically replaces the order of the wishlist, itemIds must hold exactly the items already on it
+     * returns the reordered wishlist, or null if itemIds doesn't match the wishlist's items
+     */
+    CompletableFuture<Wishlist> reorder(Long userId, List<Long> itemIds);
+}
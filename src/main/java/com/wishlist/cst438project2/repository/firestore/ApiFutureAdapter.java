@@ -0,0 +1,52 @@
+package com.wishlist.cst438project2.repository.firestore;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.wishlist.cst438project2.common.Constants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Bridges Firestore's ApiFutures to CompletableFutures without blocking on them
+ * <p>
+ * futures complete on the application task executor rather than on the gRPC transport threads,
+ * so that whatever the caller chains onto them (e.g. password hashing) can't stall the Firestore client.
+ * Failures are passed on without logging, many are expected outcomes (a create of an existing document, a failed
+ * update-time precondition) that callers turn into 409/412 responses
+ * @version %I% %G%
+ */
+
+@Component
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
+public class ApiFutureAdapter {
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor callbackExecutor;
+
+    public <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> apiFuture) {
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        }, callbackExecutor);
+
+        return future;
+    }
+}
@@ -0,0 +1,53 @@
+package com.wishlist.cst438project2.repository.firestore;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.document.AccessToken;
+import com.wishlist.cst438project2.repository.AccessTokenRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cloud Firestore backed access token storage
+ * @version %I% %G%
+ */
+
+@Repository
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
+public class FirestoreAccessTokenRepository implements AccessTokenRepository {
+
+    @Autowired
+    private Firestore dbFirestore;
+
+    @Autowired
+    private ApiFutureAdapter apiFutureAdapter;
+
+    @Autowired
+    private GroupCommitWriter groupCommitWriter;
+
+    @Override
+    public CompletableFuture<AccessToken> findByToken(String token) {
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_ACCESS_TOKEN).document(token).get())
+                .thenApply(documentSnapshot -> documentSnapshot.exists() ? documentSnapshot.toObject(AccessToken.class) : null);
+    }
+
+    @Override
+    public CompletableFuture<String> save(AccessToken accessToken) {
+
+        DocumentReference documentReference = dbFirestore.collection(Constants.DOCUMENT_ACCESS_TOKEN).document(accessToken.getToken());
+
+        return groupCommitWriter.write(batch -> batch.set(documentReference, accessToken));
+    }
+
+    @Override
+    public CompletableFuture<String> delete(String token) {
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_ACCESS_TOKEN).document(token).delete())
+                .thenApply(writeResult -> writeResult.getUpdateTime().toString());
+    }
+}
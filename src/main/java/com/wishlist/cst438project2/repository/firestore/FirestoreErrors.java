@@ -0,0 +1,48 @@
+package com.wishlist.cst438project2.repository.firestore;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import io.grpc.Status;
+
+import java.util.Objects;
+
+/**
+ * helpers for telling apart the gRPC status a failed Firestore call ended with
+ * @version %I% %G%
+ */
+final class FirestoreErrors {
+
+    private FirestoreErrors() {
+    }
+
+    /**
+     * true if the failure, or any of its causes, is Firestore rejecting a create() of an existing document
+     */
+    static boolean isAlreadyExists(Throwable ex) {
+        return hasCode(ex, StatusCode.Code.ALREADY_EXISTS, Status.Code.ALREADY_EXISTS);
+    }
+
+    /**
+     * true if the failure is a write whose update-time precondition didn't hold
+     */
+    static boolean isFailedPrecondition(Throwable ex) {
+        return hasCode(ex, StatusCode.Code.FAILED_PRECONDITION, Status.Code.FAILED_PRECONDITION);
+    }
+
+    /**
+     * true if the failure is an update() of a document that doesn't exist
+     */
+    static boolean isNotFound(Throwable ex) {
+        return hasCode(ex, StatusCode.Code.NOT_FOUND, Status.Code.NOT_FOUND);
+    }
+
+    private static boolean hasCode(Throwable ex, StatusCode.Code apiCode, Status.Code grpcCode) {
+
+        for (Throwable cause = ex; Objects.nonNull(cause); cause = cause.getCause()) {
+
+            if (cause instanceof ApiException && ((ApiException) cause).getStatusCode().getCode() == apiCode)
+                return true;
+        }
+        return Status.fromThrowable(ex).getCode() == grpcCode;
+    }
+}
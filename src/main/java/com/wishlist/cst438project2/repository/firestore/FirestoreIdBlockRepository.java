@@ -0,0 +1,61 @@
+package com.wishlist.cst438project2.repository.firestore;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.enums.IdSequence;
+import com.wishlist.cst438project2.repository.IdBlockRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cloud Firestore backed id counters, one document per sequence in the id_sequence collection
+ * <p>
+ * each counter document holds the next unreserved id, blocks are reserved in a transaction so that
+ * concurrent reservations from any number of nodes are serialized by Firestore
+ * @version %I% %G%
+ */
+@Repository
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
+public class FirestoreIdBlockRepository implements IdBlockRepository {
+
+    @Autowired
+    private Firestore dbFirestore;
+
+    @Autowired
+    private ApiFutureAdapter apiFutureAdapter;
+
+    @Override
+    public CompletableFuture<Long> reserveBlock(IdSequence sequence, long blockSize) {
+
+        DocumentReference counter = dbFirestore.collection(Constants.DOCUMENT_ID_SEQUENCE).document(sequence.name());
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.runTransaction(transaction -> {
+
+            DocumentSnapshot snapshot = transaction.get(counter).get();
+            Long start = snapshot.exists() ? snapshot.getLong(Constants.FIELD_NEXT_ID) : null;
+
+            // the very first reservation continues after the highest id already in use,
+            // this is a one-off read of a single document, not a collection scan
+            if (Objects.isNull(start)) {
+                Query highest = dbFirestore.collection(sequence.getCollection())
+                        .orderBy(sequence.getIdField(), Query.Direction.DESCENDING)
+                        .limit(1);
+                QuerySnapshot querySnapshot = transaction.get(highest).get();
+                Long maxId = querySnapshot.isEmpty() ? null : querySnapshot.getDocuments().get(0).getLong(sequence.getIdField());
+                start = Objects.isNull(maxId) ? 1L : maxId + 1;
+            }
+
+            transaction.set(counter, Collections.singletonMap(Constants.FIELD_NEXT_ID, start + blockSize));
+            return start;
+        }));
+    }
+}
@@ -0,0 +1,546 @@
+package com.wishlist.cst438project2.repository.firestore;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.Utils;
+import com.wishlist.cst438project2.document.Item;
+import com.wishlist.cst438project2.dto.ItemDTO;
+import com.wishlist.cst438project2.exception.BadRequestException;
+import com.wishlist.cst438project2.exception.ConflictException;
+import com.wishlist.cst438project2.exception.PreconditionFailedException;
+import com.wishlist.cst438project2.repository.ItemRepository;
+import com.wishlist.cst438project2.repository.ItemUpdate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Cloud Firestore backed item storage
+ * <p>
+ * next to every item document an item_id/{itemId} document points at the item's key, so that items can also
+ * be read by itemId without a query. While wishlist.storage.item-key-fallback is on, lookups that miss
+ * the key fall back to the old name/userId and itemId queries to find documents that haven't been migrated yet.
+ * It is off by default, while it is on a create costs a query and a commit one after the other instead of just the commit.
+ * @version %I% %G%
+ */
+@Repository
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
+@Slf4j
+public class FirestoreItemRepository implements ItemRepository {
+
+    // a firestore batch holds at most 500 writes, a migrated item takes 3
+    private static final int MIGRATION_BATCH_SIZE = 150;
+
+    // most values a whereIn filter accepts
+    private static final int IN_QUERY_LIMIT = 10;
+
+    @Autowired
+    private Firestore dbFirestore;
+
+    @Autowired
+    private ApiFutureAdapter apiFutureAdapter;
+
+    @Autowired
+    private GroupCommitWriter groupCommitWriter;
+
+    @Value("${wishlist.storage.item-key-fallback:false}")
+    private boolean legacyKeyFallback;
+
+    /**
+     * NOTE: some items may have the same name but be connected to different users
+     */
+    @Override
+    public CompletableFuture<Item> findByNameAndUserId(String name, long userId) {
+        return apiFutureAdapter.toCompletableFuture(itemDocument(userId, name).get()).thenCompose(documentSnapshot -> {
+            if (documentSnapshot.exists() || !legacyKeyFallback)
+                return CompletableFuture.completedFuture(documentSnapshot.exists() ? toItem(documentSnapshot) : null);
+
+            return apiFutureAdapter.toCompletableFuture(queryByNameAndUserId(name, userId).get())
+                    .thenApply(querySnapshot -> querySnapshot.isEmpty() ? null : toItem(querySnapshot.getDocuments().get(0)));
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> findDocIdByNameAndUserId(String name, long userId) {
+        return apiFutureAdapter.toCompletableFuture(itemDocument(userId, name).get()).thenCompose(documentSnapshot -> {
+            if (documentSnapshot.exists())
+                return CompletableFuture.completedFuture(documentSnapshot.getId());
+
+            if (!legacyKeyFallback)
+                throw new BadRequestException(Constants.ERROR_ITEM_NOT_FOUND);
+
+            return apiFutureAdapter.toCompletableFuture(queryByNameAndUserId(name, userId).get())
+                    .thenApply(querySnapshot -> {
+                        if (querySnapshot.size() != 1) {
+                            throw new BadRequestException(Constants.ERROR_ITEM_NOT_FOUND);
+                        }
+                        return querySnapshot.getDocuments().get(0).getId();
+                    });
+        });
+    }
+
+    @Override
+    public CompletableFuture<Item> findByItemId(Long itemId) {
+        return apiFutureAdapter.toCompletableFuture(itemIdKeyDocument(itemId).get()).thenCompose(keySnapshot -> {
+            if (keySnapshot.exists()) {
+                return apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_ITEM).document(keySnapshot.getString(Constants.FIELD_DOC_ID)).get())
+                        .thenApply(documentSnapshot -> documentSnapshot.exists() ? toItem(documentSnapshot) : null);
+            }
+
+            if (!legacyKeyFallback)
+                return CompletableFuture.completedFuture(null);
+
+            Query query = dbFirestore.collection(Constants.DOCUMENT_ITEM).whereEqualTo(Constants.FIELD_ITEM_ID, itemId);
+
+            return apiFutureAdapter.toCompletableFuture(query.get())
+                    .thenApply(querySnapshot -> querySnapshot.isEmpty() ? null : toItem(querySnapshot.getDocuments().get(0)));
+        });
+    }
+
+    /**
+     * one multi-document get of the item_id keys and one of the items they point at. Ids without a key, items
+     * that aren't migrated yet, are looked up by one whereIn query per IN_QUERY_LIMIT ids, all of them in flight at once
+     */
+    @Override
+    public CompletableFuture<List<Item>> findByItemIds(Collection<Long> itemIds) {
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(itemIds));
+        if (distinctIds.isEmpty())
+            return CompletableFuture.completedFuture(new ArrayList<>());
+
+        DocumentReference[] keyDocuments = distinctIds.stream().map(this::itemIdKeyDocument).toArray(DocumentReference[]::new);
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.getAll(keyDocuments)).thenCompose(keySnapshots -> {
+            List<DocumentReference> itemDocuments = new ArrayList<>();
+            List<Long> unkeyedIds = new ArrayList<>();
+            for (DocumentSnapshot keySnapshot : keySnapshots) {
+                if (keySnapshot.exists())
+                    itemDocuments.add(dbFirestore.collection(Constants.DOCUMENT_ITEM).document(keySnapshot.getString(Constants.FIELD_DOC_ID)));
+                else
+                    unkeyedIds.add(Long.valueOf(keySnapshot.getId()));
+            }
+
+            CompletableFuture<List<Item>> keyed = itemDocuments.isEmpty()
+                    ? CompletableFuture.completedFuture(new ArrayList<>())
+                    : apiFutureAdapter.toCompletableFuture(dbFirestore.getAll(itemDocuments.toArray(new DocumentReference[0])))
+                            .thenApply(documentSnapshots -> {
+                                List<Item> items = new ArrayList<>();
+                                for (DocumentSnapshot documentSnapshot : documentSnapshots)
+                                    if (documentSnapshot.exists())
+                                        items.add(toItem(documentSnapshot));
+                                return items;
+                            });
+
+            if (!legacyKeyFallback || unkeyedIds.isEmpty())
+                return keyed;
+
+            return keyed.thenCombine(findByItemIdsQuery(unkeyedIds), (keyedItems, unkeyedItems) -> {
+                keyedItems.addAll(unkeyedItems);
+                return keyedItems;
+            });
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> findAll() {
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_ITEM).get())
+                .thenApply(querySnapshot -> querySnapshot.toObjects(Item.class));
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> findByUserId(long userId) {
+        Query query = dbFirestore.collection(Constants.DOCUMENT_ITEM).whereEqualTo(Constants.FIELD_USER_ID, userId);
+
+        return apiFutureAdapter.toCompletableFuture(query.get())
+                .thenApply(querySnapshot -> querySnapshot.toObjects(Item.class));
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> findPage(String startAfterDocId, int limit) {
+        return page(dbFirestore.collection(Constants.DOCUMENT_ITEM), startAfterDocId, limit);
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> findPageByUserId(long userId, String startAfterDocId, int limit) {
+        return page(dbFirestore.collection(Constants.DOCUMENT_ITEM).whereEqualTo(Constants.FIELD_USER_ID, userId), startAfterDocId, limit);
+    }
+
+    /**
+     * the key includes the userId, so multiple users can still have items with the same name.
+     * The batch's create() is rejected with ALREADY_EXISTS when the key is taken, which fails the whole batch,
+     * so a lost race between two creates leaves no stray item_id key behind.
+     * While the legacy fallback is on, an item not migrated yet doesn't sit on its key and is looked up
+     * by name first, which costs a query until the migration has run and the fallback is turned off
+     */
+    @Override
+    public CompletableFuture<String> create(Item item) {
+        CompletableFuture<Boolean> legacyTaken = legacyKeyFallback
+                ? apiFutureAdapter.toCompletableFuture(queryByNameAndUserId(item.getName(), item.getUserId()).limit(1).get())
+                        .thenApply(querySnapshot -> !querySnapshot.isEmpty())
+                : CompletableFuture.completedFuture(false);
+
+        return legacyTaken.thenCompose(taken -> {
+            if (taken)
+                throw new ConflictException(Constants.ERROR_ITEM_ALREADY_EXISTS.replace(Constants.KEY_ITEM_NAME, item.getName()));
+
+            DocumentReference documentReference = itemDocument(item.getUserId(), item.getName());
+
+            return groupCommitWriter.write(batch -> {
+                batch.create(documentReference, item);
+                setItemIdKey(batch, item.getItemId(), documentReference);
+            });
+        }).handle((responseTimestamp, ex) -> {
+            if (Objects.isNull(ex))
+                return responseTimestamp;
+
+            if (FirestoreErrors.isAlreadyExists(ex))
+                throw new ConflictException(Constants.ERROR_ITEM_ALREADY_EXISTS.replace(Constants.KEY_ITEM_NAME, item.getName()));
+
+            throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> saveAll(List<Item> items) {
+        WriteBatch batch = dbFirestore.batch();
+        for (Item item : items) {
+            DocumentReference documentReference = itemDocument(item.getUserId(), item.getName());
+            batch.create(documentReference, item);
+            setItemIdKey(batch, item.getItemId(), documentReference);
+        }
+
+        return commit(batch).handle((responseTimestamp, ex) -> {
+            if (Objects.isNull(ex))
+                return responseTimestamp;
+
+            if (FirestoreErrors.isAlreadyExists(ex))
+                throw new ConflictException(items.size() == 1
+                        ? Constants.ERROR_ITEM_ALREADY_EXISTS.replace(Constants.KEY_ITEM_NAME, items.get(0).getName())
+                        : Constants.ERROR_ITEMS_ALREADY_EXIST);
+
+            throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+        });
+    }
+
+    /**
+     * an update that keeps the key writes only the changed fields, guarded by the expected update time when one is
+     * given, in one round trip. A rename reads the item once, creates it under the new key and deletes the old
+     * document on condition that it hasn't changed since that read, so a concurrent write can't be lost either way
+     */
+    @Override
+    public CompletableFuture<ItemUpdate> update(long userId, String name, ItemDTO changes, String expectedVersion) {
+        DocumentReference documentReference = itemDocument(userId, name);
+        DocumentReference target = Objects.isNull(changes.getName()) ? documentReference : itemDocument(userId, changes.getName());
+
+        CompletableFuture<ItemUpdate> update;
+        if (target.getId().equals(documentReference.getId())) {
+            update = updateFields(documentReference, changes, expectedVersion).handle((responseTimestamp, ex) -> {
+                if (Objects.isNull(ex) || !legacyKeyFallback || !FirestoreErrors.isNotFound(ex))
+                    return CompletableFuture.completedFuture(new ItemUpdate(documentReference.getId(), responseTimestamp));
+
+                // not migrated yet, moving it to its key
+                return moveLegacy(userId, name, target, changes, expectedVersion);
+            }).thenCompose(future -> future);
+        } else {
+            update = apiFutureAdapter.toCompletableFuture(documentReference.get()).thenCompose(documentSnapshot -> {
+                if (documentSnapshot.exists() || !legacyKeyFallback)
+                    return move(documentSnapshot, target, changes, expectedVersion)
+                            .thenApply(responseTimestamp -> new ItemUpdate(documentReference.getId(), responseTimestamp));
+
+                return moveLegacy(userId, name, target, changes, expectedVersion);
+            });
+        }
+
+        return update.handle((itemUpdate, ex) -> {
+            if (Objects.isNull(ex))
+                return itemUpdate;
+
+            if (FirestoreErrors.isAlreadyExists(ex))
+                throw new ConflictException(Constants.ERROR_ITEM_ALREADY_EXISTS.replace(Constants.KEY_ITEM_NAME, changes.getName()));
+            if (FirestoreErrors.isFailedPrecondition(ex))
+                throw new PreconditionFailedException(Constants.ERROR_VERSION_MISMATCH);
+            if (FirestoreErrors.isNotFound(ex))
+                throw new BadRequestException(Constants.ERROR_ITEM_NOT_FOUND);
+
+            throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> delete(String docId) {
+        DocumentReference documentReference = dbFirestore.collection(Constants.DOCUMENT_ITEM).document(docId);
+
+        return apiFutureAdapter.toCompletableFuture(documentReference.get()).thenCompose(documentSnapshot -> {
+            WriteBatch batch = dbFirestore.batch();
+            batch.delete(documentReference);
+
+            Long itemId = documentSnapshot.exists() ? documentSnapshot.getLong(Constants.FIELD_ITEM_ID) : null;
+            if (Objects.nonNull(itemId))
+                batch.delete(itemIdKeyDocument(itemId));
+
+            return commit(batch);
+        });
+    }
+
+    /**
+     * one query for the user's document references (only the itemId field is read), then MAX_BATCH_ITEMS
+     * deletes per batch with all batches committed at once
+     */
+    @Override
+    public CompletableFuture<List<String>> deleteByUserId(long userId) {
+        Query query = dbFirestore.collection(Constants.DOCUMENT_ITEM)
+                .whereEqualTo(Constants.FIELD_USER_ID, userId)
+                .select(Constants.FIELD_ITEM_ID);
+
+        return apiFutureAdapter.toCompletableFuture(query.get()).thenCompose(querySnapshot -> {
+
+            List<String> docIds = new ArrayList<>();
+            List<ApiFuture<List<WriteResult>>> commits = new ArrayList<>();
+            WriteBatch batch = dbFirestore.batch();
+            int batched = 0;
+
+            for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+                batch.delete(document.getReference());
+                Long itemId = document.getLong(Constants.FIELD_ITEM_ID);
+                if (Objects.nonNull(itemId))
+                    batch.delete(itemIdKeyDocument(itemId));
+                docIds.add(document.getId());
+
+                if (++batched == MAX_BATCH_ITEMS) {
+                    commits.add(batch.commit());
+                    batch = dbFirestore.batch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0)
+                commits.add(batch.commit());
+
+            return apiFutureAdapter.toCompletableFuture(ApiFutures.allAsList(commits)).thenApply(results -> docIds);
+        });
+    }
+
+    /**
+     * items whose key is already taken (names that only differ in case or surrounding spaces) are left
+     * where they are and logged, they can still be reached while the fallback is on. Each move creates the keyed
+     * copy and deletes the original on condition that it hasn't changed since it was read, a move that loses to a
+     * concurrent write is left for the next run. itemId keys are only written where they don't already point to
+     * the item's key
+     */
+    @Override
+    public CompletableFuture<Integer> migrateLegacyKeys() {
+        CompletableFuture<QuerySnapshot> keys = apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_ITEM_ID_KEY).get());
+        CompletableFuture<QuerySnapshot> items = apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_ITEM).get());
+
+        return keys.thenCombine(items, (keySnapshot, querySnapshot) -> {
+
+            Map<String, String> itemIdKeys = new HashMap<>();
+            for (QueryDocumentSnapshot key : keySnapshot.getDocuments())
+                itemIdKeys.put(key.getId(), key.getString(Constants.FIELD_DOC_ID));
+
+            Set<String> takenKeys = new HashSet<>();
+            for (QueryDocumentSnapshot document : querySnapshot.getDocuments())
+                takenKeys.add(document.getId());
+
+            List<Consumer<WriteBatch>> moves = new ArrayList<>();
+            List<ApiFuture<List<WriteResult>>> keyCommits = new ArrayList<>();
+            WriteBatch keyBatch = dbFirestore.batch();
+            int keyBatched = 0;
+
+            for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
+
+                Item item = document.toObject(Item.class);
+                if (Objects.isNull(item.getName()))
+                    continue;
+
+                DocumentReference keyed = itemDocument(item.getUserId(), item.getName());
+                if (keyed.getId().equals(document.getId())) {
+                    if (Objects.isNull(item.getItemId()) || keyed.getId().equals(itemIdKeys.get(String.valueOf(item.getItemId()))))
+                        continue;
+                    setItemIdKey(keyBatch, item.getItemId(), keyed);
+                    if (++keyBatched == MIGRATION_BATCH_SIZE) {
+                        keyCommits.add(keyBatch.commit());
+                        keyBatch = dbFirestore.batch();
+                        keyBatched = 0;
+                    }
+                } else if (takenKeys.add(keyed.getId())) {
+                    moves.add(batch -> {
+                        batch.create(keyed, document.getData());
+                        batch.delete(document.getReference(), Precondition.updatedAt(document.getUpdateTime()));
+                        setItemIdKey(batch, item.getItemId(), keyed);
+                    });
+                } else {
+                    log.warn("FirestoreItemRepository: item {} not migrated, key {} is already taken", document.getId(), keyed.getId());
+                }
+            }
+            if (keyBatched > 0)
+                keyCommits.add(keyBatch.commit());
+
+            List<CompletableFuture<Integer>> migrations = new ArrayList<>();
+            for (int i = 0; i < moves.size(); i += MIGRATION_BATCH_SIZE)
+                migrations.add(commitMoves(moves.subList(i, Math.min(i + MIGRATION_BATCH_SIZE, moves.size())), true));
+
+            return apiFutureAdapter.toCompletableFuture(ApiFutures.allAsList(keyCommits))
+                    .thenCompose(results -> CompletableFuture.allOf(migrations.toArray(new CompletableFuture<?>[0])))
+                    .thenApply(done -> migrations.stream().mapToInt(CompletableFuture::join).sum());
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * commits the moves in one batch and returns how many of them went through. A batch fails as a whole, so
+     * when it does each move is committed again on its own, one that lost to a concurrent write doesn't hold
+     * back the others
+     */
+    private CompletableFuture<Integer> commitMoves(List<Consumer<WriteBatch>> moves, boolean split) {
+        WriteBatch batch = dbFirestore.batch();
+        moves.forEach(move -> move.accept(batch));
+
+        return apiFutureAdapter.toCompletableFuture(batch.commit()).handle((writeResults, ex) -> {
+            if (Objects.isNull(ex))
+                return CompletableFuture.completedFuture(moves.size());
+
+            if (split && moves.size() > 1) {
+                List<CompletableFuture<Integer>> retries = new ArrayList<>();
+                for (Consumer<WriteBatch> move : moves)
+                    retries.add(commitMoves(Collections.singletonList(move), false));
+                return CompletableFuture.allOf(retries.toArray(new CompletableFuture<?>[0]))
+                        .thenApply(done -> retries.stream().mapToInt(CompletableFuture::join).sum());
+            }
+
+            if (FirestoreErrors.isAlreadyExists(ex) || FirestoreErrors.isFailedPrecondition(ex)) {
+                log.warn("FirestoreItemRepository: item not migrated, it changed or its key was taken while migrating", ex);
+                return CompletableFuture.completedFuture(0);
+            }
+
+            throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+        }).thenCompose(future -> future);
+    }
+
+    private CompletableFuture<String> updateFields(DocumentReference documentReference, ItemDTO changes, String expectedVersion) {
+        Map<String, Object> fields = new HashMap<>();
+        putIfNonNull(fields, Constants.FIELD_ITEM_LINK, changes.getLink());
+        putIfNonNull(fields, Constants.FIELD_ITEM_DESCRIPTION, changes.getDescription());
+        putIfNonNull(fields, Constants.FIELD_ITEM_IMG_URL, changes.getImgUrl());
+        putIfNonNull(fields, Constants.FIELD_ITEM_PRIORITY, changes.getPriority());
+        putIfNonNull(fields, Constants.FIELD_ITEM_NAME, changes.getName());
+
+        if (fields.isEmpty()) {
+            // nothing to write, still answer with the current version (or its mismatch)
+            return apiFutureAdapter.toCompletableFuture(documentReference.get()).thenApply(documentSnapshot -> {
+                if (!documentSnapshot.exists())
+                    throw new BadRequestException(Constants.ERROR_ITEM_NOT_FOUND);
+                Preconditions.check(expectedVersion, documentSnapshot.getUpdateTime());
+                return documentSnapshot.getUpdateTime().toString();
+            });
+        }
+
+        if (Objects.isNull(expectedVersion))
+            return groupCommitWriter.write(batch -> batch.update(documentReference, fields));
+
+        Precondition precondition = Preconditions.updatedAt(expectedVersion);
+        return groupCommitWriter.write(batch -> batch.update(documentReference, fields, precondition));
+    }
+
+    /**
+     * reads the item stored at source and moves it to target, see move(DocumentSnapshot, ...)
+     */
+    /**
+     * moves the item the user has under name but that still has a random document id to target
+     */
+    private CompletableFuture<ItemUpdate> moveLegacy(long userId, String name, DocumentReference target, ItemDTO changes, String expectedVersion) {
+        return findDocIdByNameAndUserId(name, userId).thenCompose(docId ->
+                move(dbFirestore.collection(Constants.DOCUMENT_ITEM).document(docId), target, changes, expectedVersion)
+                        .thenApply(responseTimestamp -> new ItemUpdate(docId, responseTimestamp)));
+    }
+
+    private CompletableFuture<String> move(DocumentReference source, DocumentReference target, ItemDTO changes, String expectedVersion) {
+        return apiFutureAdapter.toCompletableFuture(source.get())
+                .thenCompose(documentSnapshot -> move(documentSnapshot, target, changes, expectedVersion));
+    }
+
+    /**
+     * moves the item read into source to target with changes applied, in one batch that fails if the item
+     * changed since source was read or, with expectedVersion, since the caller read it
+     */
+    private CompletableFuture<String> move(DocumentSnapshot source, DocumentReference target, ItemDTO changes, String expectedVersion) {
+        if (!source.exists())
+            throw new BadRequestException(Constants.ERROR_ITEM_NOT_FOUND);
+        Preconditions.check(expectedVersion, source.getUpdateTime());
+
+        Item item = source.toObject(Item.class);
+        item.applyChanges(changes);
+
+        return groupCommitWriter.write(batch -> {
+            batch.create(target, item);
+            batch.delete(source.getReference(), Precondition.updatedAt(source.getUpdateTime()));
+            setItemIdKey(batch, item.getItemId(), target);
+        });
+    }
+
+    private static void putIfNonNull(Map<String, Object> fields, String field, Object value) {
+        if (Objects.nonNull(value))
+            fields.put(field, value);
+    }
+
+    private static Item toItem(DocumentSnapshot documentSnapshot) {
+        Item item = documentSnapshot.toObject(Item.class);
+        item.setVersion(documentSnapshot.getUpdateTime().toString());
+        return item;
+    }
+
+    private CompletableFuture<List<Item>> findByItemIdsQuery(List<Long> distinctIds) {
+        List<ApiFuture<QuerySnapshot>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinctIds.size(); from += IN_QUERY_LIMIT) {
+            List<Long> chunk = distinctIds.subList(from, Math.min(from + IN_QUERY_LIMIT, distinctIds.size()));
+            chunks.add(dbFirestore.collection(Constants.DOCUMENT_ITEM).whereIn(Constants.FIELD_ITEM_ID, new ArrayList<>(chunk)).get());
+        }
+
+        return apiFutureAdapter.toCompletableFuture(ApiFutures.allAsList(chunks)).thenApply(querySnapshots -> {
+            List<Item> items = new ArrayList<>();
+            for (QuerySnapshot querySnapshot : querySnapshots)
+                for (DocumentSnapshot documentSnapshot : querySnapshot.getDocuments())
+                    items.add(toItem(documentSnapshot));
+            return items;
+        });
+    }
+
+    private CompletableFuture<List<Item>> page(Query query, String startAfterDocId, int limit) {
+        Query ordered = query.orderBy(FieldPath.documentId());
+        if (Objects.nonNull(startAfterDocId))
+            ordered = ordered.startAfter(startAfterDocId);
+
+        return apiFutureAdapter.toCompletableFuture(ordered.limit(limit).get())
+                .thenApply(querySnapshot -> querySnapshot.toObjects(Item.class));
+    }
+
+    private DocumentReference itemDocument(long userId, String name) {
+        return dbFirestore.collection(Constants.DOCUMENT_ITEM).document(Utils.itemKey(userId, name));
+    }
+
+    private DocumentReference itemIdKeyDocument(Long itemId) {
+        return dbFirestore.collection(Constants.DOCUMENT_ITEM_ID_KEY).document(String.valueOf(itemId));
+    }
+
+    private void setItemIdKey(WriteBatch batch, Long itemId, DocumentReference documentReference) {
+        if (Objects.nonNull(itemId))
+            batch.set(itemIdKeyDocument(itemId), Collections.singletonMap(Constants.FIELD_DOC_ID, documentReference.getId()));
+    }
+
+    private CompletableFuture<String> commit(WriteBatch batch) {
+        return apiFutureAdapter.toCompletableFuture(batch.commit())
+                .thenApply(writeResults -> writeResults.get(0).getUpdateTime().toString());
+    }
+
+    private Query queryByNameAndUserId(String name, long userId) {
+        return dbFirestore.collection(Constants.DOCUMENT_ITEM)
+                .whereEqualTo(Constants.FIELD_ITEM_NAME, name)
+                .whereEqualTo(Constants.FIELD_USER_ID, userId);
+    }
+}
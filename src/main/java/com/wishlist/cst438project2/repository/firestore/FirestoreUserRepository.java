@@ -0,0 +1,183 @@
+package com.wishlist.cst438project2.repository.firestore;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.*;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.Utils;
+import com.wishlist.cst438project2.document.User;
+import com.wishlist.cst438project2.dto.UserDTO;
+import com.wishlist.cst438project2.enums.RoleType;
+import com.wishlist.cst438project2.exception.BadRequestException;
+import com.wishlist.cst438project2.exception.PreconditionFailedException;
+import com.wishlist.cst438project2.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Cloud Firestore backed user storage
+ * @version %I% %G%
+ */
+
+@Repository
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
+@Slf4j
+public class FirestoreUserRepository implements UserRepository {
+
+    @Autowired
+    private Firestore dbFirestore;
+
+    @Autowired
+    private ApiFutureAdapter apiFutureAdapter;
+
+    @Override
+    public CompletableFuture<User> findByUsername(String username) {
+
+        if (!Utils.isValidDocumentId(username))
+            return CompletableFuture.completedFuture(null);
+        DocumentReference documentReference = dbFirestore.collection(Constants.DOCUMENT_USER).document(username);
+
+        return apiFutureAdapter.toCompletableFuture(documentReference.get())
+                .thenApply(documentSnapshot -> documentSnapshot.exists() ? toUser(documentSnapshot) : null);
+    }
+
+    /**
+     * one multi-document get for all of the usernames, usernames that can't be a document id are left out
+     * instead of failing the whole get
+     */
+    @Override
+    public CompletableFuture<List<User>> findByUsernames(Collection<String> usernames) {
+
+        DocumentReference[] documentReferences = usernames.stream().distinct()
+                .filter(Utils::isValidDocumentId)
+                .map(username -> dbFirestore.collection(Constants.DOCUMENT_USER).document(username))
+                .toArray(DocumentReference[]::new);
+        if (documentReferences.length == 0)
+            return CompletableFuture.completedFuture(new ArrayList<>());
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.getAll(documentReferences)).thenApply(documentSnapshots -> {
+            List<User> users = new ArrayList<>();
+            for (DocumentSnapshot documentSnapshot : documentSnapshots)
+                if (documentSnapshot.exists())
+                    users.add(toUser(documentSnapshot));
+            return users;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<User>> findAll() {
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_USER).get())
+                .thenApply(querySnapshot -> {
+                    log.info("User count: " + querySnapshot.size());
+                    return querySnapshot.toObjects(User.class);
+                });
+    }
+
+    @Override
+    public CompletableFuture<List<User>> findPage(String startAfterDocId, int limit) {
+
+        Query query = dbFirestore.collection(Constants.DOCUMENT_USER).orderBy(FieldPath.documentId());
+        if (Objects.nonNull(startAfterDocId))
+            query = query.startAfter(startAfterDocId);
+
+        return apiFutureAdapter.toCompletableFuture(query.limit(limit).get())
+                .thenApply(querySnapshot -> querySnapshot.toObjects(User.class));
+    }
+
+    /**
+     * DocumentReference.create() is rejected by Firestore with ALREADY_EXISTS when the username is taken,
+     * so the existence check and the insert are one atomic round trip
+     */
+    @Override
+    public CompletableFuture<String> create(User user) {
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_USER).document(user.getUsername()).create(user))
+                .handle((writeResult, ex) -> {
+                    if (Objects.isNull(ex))
+                        return writeResult.getUpdateTime().toString();
+
+                    if (FirestoreErrors.isAlreadyExists(ex))
+                        throw new BadRequestException(Constants.ERROR_USER_ALREADY_EXISTS.replace(Constants.KEY_USERNAME, user.getUsername()));
+
+                    throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+                });
+    }
+
+    @Override
+    public CompletableFuture<String> save(User user) {
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_USER).document(user.getUsername()).set(user))
+                .thenApply(writeResult -> writeResult.getUpdateTime().toString());
+    }
+
+    /**
+     * DocumentReference.update() writes just the given fields and fails with NOT_FOUND instead of creating the
+     * user, with expectedVersion it also fails with FAILED_PRECONDITION if the user was written since
+     */
+    @Override
+    public CompletableFuture<String> update(String username, UserDTO changes, String expectedVersion) {
+
+        DocumentReference documentReference = dbFirestore.collection(Constants.DOCUMENT_USER).document(username);
+
+        Map<String, Object> fields = new HashMap<>();
+        if (Objects.nonNull(changes.getFirstName()))
+            fields.put(Constants.FIELD_FIRST_NAME, changes.getFirstName());
+        if (Objects.nonNull(changes.getLastName()))
+            fields.put(Constants.FIELD_LAST_NAME, changes.getLastName());
+        if (Objects.nonNull(changes.getEmailId()))
+            fields.put(Constants.FIELD_EMAIL_ID, changes.getEmailId());
+        if (Objects.nonNull(changes.getPassword()))
+            fields.put(Constants.FIELD_PASSWORD, changes.getPassword());
+        if (Objects.nonNull(changes.getRole()))
+            fields.put(Constants.FIELD_ROLE, RoleType.valueOf(changes.getRole()).name());
+
+        if (fields.isEmpty()) {
+            return apiFutureAdapter.toCompletableFuture(documentReference.get()).thenApply(documentSnapshot -> {
+                if (!documentSnapshot.exists())
+                    throw new BadRequestException(Constants.ERROR_USER_DOES_NOT_EXISTS.replace(Constants.KEY_USERNAME, username));
+                Preconditions.check(expectedVersion, documentSnapshot.getUpdateTime());
+                return documentSnapshot.getUpdateTime().toString();
+            });
+        }
+
+        ApiFuture<WriteResult> write = Objects.isNull(expectedVersion)
+                ? documentReference.update(fields)
+                : documentReference.update(fields, Preconditions.updatedAt(expectedVersion));
+
+        return apiFutureAdapter.toCompletableFuture(write).handle((writeResult, ex) -> {
+            if (Objects.isNull(ex))
+                return writeResult.getUpdateTime().toString();
+
+            if (FirestoreErrors.isFailedPrecondition(ex))
+                throw new PreconditionFailedException(Constants.ERROR_VERSION_MISMATCH);
+            if (FirestoreErrors.isNotFound(ex))
+                throw new BadRequestException(Constants.ERROR_USER_DOES_NOT_EXISTS.replace(Constants.KEY_USERNAME, username));
+
+            throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> delete(String username) {
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.collection(Constants.DOCUMENT_USER).document(username).delete())
+                .thenApply(writeResult -> writeResult.getUpdateTime().toString());
+    }
+
+    private static User toUser(DocumentSnapshot documentSnapshot) {
+        User user = documentSnapshot.toObject(User.class);
+        user.setVersion(documentSnapshot.getUpdateTime().toString());
+        return user;
+    }
+}
@@ -0,0 +1,103 @@
+package com.wishlist.cst438project2.repository.firestore;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.extras.Wishlist;
+import com.wishlist.cst438project2.repository.WishlistRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cloud Firestore backed wishlist storage
+ * <p>
+ * adding and removing items are arrayUnion/arrayRemove transforms applied by Firestore, so they need no read,
+ * concurrent changes don't overwrite each other and an item is never on a wishlist twice
+ * @version %I% %G%
+ */
+
+@Repository
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
+public class FirestoreWishlistRepository implements WishlistRepository {
+
+    @Autowired
+    private Firestore dbFirestore;
+
+    @Autowired
+    private ApiFutureAdapter apiFutureAdapter;
+
+    @Autowired
+    private GroupCommitWriter groupCommitWriter;
+
+    @Override
+    public CompletableFuture<Wishlist> findByUserId(Long userId) {
+
+        return apiFutureAdapter.toCompletableFuture(wishlistDocument(userId).get())
+                .thenApply(documentSnapshot -> documentSnapshot.exists() ? documentSnapshot.toObject(Wishlist.class) : null);
+    }
+
+    @Override
+    public CompletableFuture<String> save(Wishlist wishlist) {
+
+        return apiFutureAdapter.toCompletableFuture(wishlistDocument(wishlist.getUserId()).set(wishlist))
+                .thenApply(writeResult -> writeResult.getUpdateTime().toString());
+    }
+
+    @Override
+    public CompletableFuture<String> addItems(Long userId, List<Long> itemIds) {
+
+        return transform(userId, FieldValue.arrayUnion(itemIds.toArray()));
+    }
+
+    @Override
+    public CompletableFuture<String> removeItems(Long userId, List<Long> itemIds) {
+
+        return transform(userId, FieldValue.arrayRemove(itemIds.toArray()));
+    }
+
+    /**
+     * read and write happen in one transaction, so a concurrent add or remove makes it retry instead of being lost
+     */
+    @Override
+    public CompletableFuture<Wishlist> reorder(Long userId, List<Long> itemIds) {
+
+        DocumentReference documentReference = wishlistDocument(userId);
+        List<Long> order = new ArrayList<>(new LinkedHashSet<>(itemIds));
+
+        return apiFutureAdapter.toCompletableFuture(dbFirestore.runTransaction(transaction -> {
+
+            DocumentSnapshot documentSnapshot = transaction.get(documentReference).get();
+            Wishlist wishlist = documentSnapshot.exists() ? documentSnapshot.toObject(Wishlist.class) : null;
+            List<Long> stored = Objects.isNull(wishlist) || Objects.isNull(wishlist.getItemIds()) ? Collections.emptyList() : wishlist.getItemIds();
+
+            if (order.size() != itemIds.size() || !new HashSet<>(stored).equals(new HashSet<>(order)))
+                return null;
+
+            Wishlist reordered = new Wishlist(userId, order);
+            transaction.set(documentReference, reordered);
+            return reordered;
+        }));
+    }
+
+    private CompletableFuture<String> transform(Long userId, FieldValue itemIdsTransform) {
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(Constants.FIELD_USER_ID, userId);
+        fields.put(Constants.FIELD_ITEM_IDS, itemIdsTransform);
+
+        DocumentReference documentReference = wishlistDocument(userId);
+
+        return groupCommitWriter.write(batch -> batch.set(documentReference, fields, SetOptions.merge()));
+    }
+
+    private DocumentReference wishlistDocument(Long userId) {
+        return dbFirestore.collection(Constants.DOCUMENT_USER_WISHLIST).document(String.valueOf(userId));
+    }
+}
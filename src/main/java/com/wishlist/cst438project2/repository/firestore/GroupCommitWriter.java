@@ -0,0 +1,251 @@
+package com.wishlist.cst438project2.repository.firestore;
+
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.StatsProvider;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Commits the writes of concurrent requests together
+ * <p>
+ * when enabled, writes handed to write() within window-ms of each other, at most max-batch-size of them, are
+ * committed as one WriteBatch and each caller is answered once that commit is done. A batch is atomic, so if
+ * firestore rejects it (a create of an existing document, a failed precondition, an update of a missing document)
+ * nothing in it was applied and every write is committed again on its own, each caller gets the outcome of its own
+ * write and one conflicting write can't fail its neighbours. Any other failure (a deadline, an unavailable backend)
+ * leaves it unknown whether the batch was applied, retrying could answer a caller 409 for its own create, so every
+ * write in it fails with that error. Disabled, every write is committed alone right away, same as the repositories
+ * did before.
+ * <p>
+ * an operation adds up to MAX_WRITES_PER_OPERATION writes (a rename deletes, creates and re-keys), so
+ * max-batch-size is capped to keep a full batch within the MAX_WRITES_PER_COMMIT firestore accepts, and a batch
+ * that still ends up bigger is committed in halves. averageBatchSize counts operations per batch, the one by one
+ * retries after a failed batch are counted under retries and don't make batches look smaller.
+ * @version %I% %G%
+ */
+
+@Component
+@Profile("!" + Constants.PROFILE_IN_MEMORY)
+@Slf4j
+public class GroupCommitWriter implements StatsProvider {
+
+    static final int MAX_WRITES_PER_COMMIT = 500;
+    static final int MAX_WRITES_PER_OPERATION = 3;
+
+    @Autowired
+    private Firestore dbFirestore;
+
+    @Autowired
+    private ApiFutureAdapter apiFutureAdapter;
+
+    @Value("${wishlist.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${wishlist.group-commit.window-ms:5}")
+    private long windowMs;
+
+    @Value("${wishlist.group-commit.max-batch-size:100}")
+    private int maxBatchSize;
+
+    private Executor delayedExecutor;
+
+    private List<PendingWrite> pending = new ArrayList<>();
+    private long generation;
+
+    private long writes;
+    private long batches;
+    private long largestBatch;
+    private long failedBatches;
+    private long retries;
+    private long commits;
+    private long commitMicros;
+    private long maxCommitMicros;
+
+    @PostConstruct
+    public void init() {
+        int limit = MAX_WRITES_PER_COMMIT / MAX_WRITES_PER_OPERATION;
+        if (maxBatchSize > limit) {
+            log.warn("GroupCommitWriter: max-batch-size {} could exceed {} writes per commit, using {}",
+                    maxBatchSize, MAX_WRITES_PER_COMMIT, limit);
+            maxBatchSize = limit;
+        }
+        delayedExecutor = CompletableFuture.delayedExecutor(windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * adds the writes of operation to the next batch
+     * returns the update time of the first write operation added, once its batch is committed
+     */
+    public CompletableFuture<String> write(Consumer<WriteBatch> operation) {
+
+        PendingWrite pendingWrite = new PendingWrite(operation);
+        List<PendingWrite> full = null;
+
+        synchronized (this) {
+            writes++;
+            if (!enabled) {
+                full = List.of(pendingWrite);
+                recordBatch(1);
+            } else {
+                pending.add(pendingWrite);
+                if (pending.size() >= maxBatchSize) {
+                    full = takePending();
+                } else if (pending.size() == 1) {
+                    long windowGeneration = generation;
+                    delayedExecutor.execute(() -> flush(windowGeneration));
+                }
+            }
+        }
+
+        if (Objects.nonNull(full))
+            commit(full, true);
+        return pendingWrite.future;
+    }
+
+    @Override
+    public String getStatsName() {
+        return "groupCommitWriter";
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled ? 1L : 0L);
+        stats.put("writes", writes);
+        stats.put("batches", batches);
+        stats.put("averageBatchSize", batches == 0 ? 0 : writes / batches);
+        stats.put("largestBatch", largestBatch);
+        stats.put("failedBatches", failedBatches);
+        stats.put("retries", retries);
+        stats.put("commits", commits);
+        stats.put("averageCommitMicros", commits == 0 ? 0 : commitMicros / commits);
+        stats.put("maxCommitMicros", maxCommitMicros);
+        stats.put("pending", (long) pending.size());
+        return stats;
+    }
+
+    private void flush(long windowGeneration) {
+        List<PendingWrite> batch;
+        synchronized (this) {
+            if (generation != windowGeneration || pending.isEmpty())
+                return;
+            batch = takePending();
+        }
+        commit(batch, true);
+    }
+
+    private synchronized List<PendingWrite> takePending() {
+        List<PendingWrite> batch = pending;
+        pending = new ArrayList<>();
+        generation++;
+        recordBatch(batch.size());
+        return batch;
+    }
+
+    private synchronized void recordBatch(int size) {
+        batches++;
+        largestBatch = Math.max(largestBatch, size);
+    }
+
+    private synchronized void recordRetries(int count) {
+        retries += count;
+    }
+
+    private synchronized void recordCommit(long micros, boolean failed) {
+        commits++;
+        commitMicros += micros;
+        maxCommitMicros = Math.max(maxCommitMicros, micros);
+        if (failed)
+            failedBatches++;
+    }
+
+    /**
+     * @param split whether a failed commit of more than one write is retried write by write
+     */
+    private void commit(List<PendingWrite> pendingWrites, boolean split) {
+
+        WriteBatch batch = dbFirestore.batch();
+        List<PendingWrite> added = new ArrayList<>();
+        List<Integer> firstWrites = new ArrayList<>();
+
+        for (PendingWrite pendingWrite : pendingWrites) {
+            int firstWrite = batch.getMutationsSize();
+            try {
+                pendingWrite.operation.accept(batch);
+            } catch (RuntimeException ex) {
+                // its writes may be half added, the others go out without it
+                pendingWrite.future.completeExceptionally(ex);
+                List<PendingWrite> others = new ArrayList<>(pendingWrites);
+                others.remove(pendingWrite);
+                if (!others.isEmpty())
+                    commit(others, split);
+                return;
+            }
+            added.add(pendingWrite);
+            firstWrites.add(firstWrite);
+        }
+
+        if (batch.getMutationsSize() > MAX_WRITES_PER_COMMIT && added.size() > 1) {
+            int half = added.size() / 2;
+            commit(new ArrayList<>(added.subList(0, half)), split);
+            commit(new ArrayList<>(added.subList(half, added.size())), split);
+            return;
+        }
+
+        long start = System.nanoTime();
+        apiFutureAdapter.toCompletableFuture(batch.commit()).whenComplete((writeResults, ex) -> {
+            recordCommit(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), Objects.nonNull(ex));
+
+            if (Objects.isNull(ex)) {
+                for (int i = 0; i < added.size(); i++) {
+                    // an operation that added no writes has no update time of its own
+                    int firstWrite = firstWrites.get(i);
+                    WriteResult writeResult = firstWrite < writeResults.size() ? writeResults.get(firstWrite) : null;
+                    added.get(i).future.complete(Objects.isNull(writeResult) ? null : writeResult.getUpdateTime().toString());
+                }
+            } else if (split && added.size() > 1 && isRejected(ex)) {
+                log.warn("GroupCommitWriter: batch of {} writes failed, committing them one by one", added.size(), ex);
+                recordRetries(added.size());
+                for (PendingWrite pendingWrite : added) {
+                    commit(List.of(pendingWrite), false);
+                }
+            } else {
+                added.forEach(pendingWrite -> pendingWrite.future.completeExceptionally(ex));
+            }
+        });
+    }
+
+    /**
+     * true if firestore refused the batch for one of its writes, so none of it was applied
+     */
+    private static boolean isRejected(Throwable ex) {
+        return FirestoreErrors.isAlreadyExists(ex) || FirestoreErrors.isFailedPrecondition(ex)
+                || FirestoreErrors.isNotFound(ex);
+    }
+
+    private static class PendingWrite {
+        private final Consumer<WriteBatch> operation;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private PendingWrite(Consumer<WriteBatch> operation) {
+            this.operation = operation;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.wishlist.cst438project2.repository.firestore;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.Precondition;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.exception.PreconditionFailedException;
+
+/**
+ * turns the versions handed out to clients, document update times, back into write preconditions
+ * @version %I% %G%
+ */
+final class Preconditions {
+
+    private Preconditions() {
+    }
+
+    /**
+     * a precondition that only holds while the document was last updated at the given version.
+     * A version that isn't an update time can't match any document, so it fails right away
+     */
+    static Precondition updatedAt(String version) {
+        try {
+            return Precondition.updatedAt(Timestamp.parseTimestamp(version));
+        } catch (RuntimeException ex) {
+            throw new PreconditionFailedException(Constants.ERROR_VERSION_MISMATCH);
+        }
+    }
+
+    /**
+     * fails with PreconditionFailedException unless expectedVersion is null or the given update time
+     */
+    static void check(String expectedVersion, Timestamp updateTime) {
+        if (expectedVersion != null && !expectedVersion.equals(updateTime.toString()))
+            throw new PreconditionFailedException(Constants.ERROR_VERSION_MISMATCH);
+    }
+}
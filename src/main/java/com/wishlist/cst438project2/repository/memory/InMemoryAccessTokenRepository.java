@@ -0,0 +1,42 @@
+package com.wishlist.cst438project2.repository.memory;
+
+import com.google.cloud.Timestamp;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.document.AccessToken;
+import com.wishlist.cst438project2.repository.AccessTokenRepository;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory access token storage used for local runs and benchmarks without a Firestore backend
+ * @version %I% %G%
+ */
+
+@Repository
+@Profile(Constants.PROFILE_IN_MEMORY)
+public class InMemoryAccessTokenRepository implements AccessTokenRepository {
+
+    private final Map<String, AccessToken> accessTokens = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<AccessToken> findByToken(String token) {
+        AccessToken accessToken = accessTokens.get(token);
+        return CompletableFuture.completedFuture(accessToken == null ? null : new AccessToken(accessToken.getUserId(), accessToken.getToken()));
+    }
+
+    @Override
+    public CompletableFuture<String> save(AccessToken accessToken) {
+        accessTokens.put(accessToken.getToken(), new AccessToken(accessToken.getUserId(), accessToken.getToken()));
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    @Override
+    public CompletableFuture<String> delete(String token) {
+        accessTokens.remove(token);
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+}
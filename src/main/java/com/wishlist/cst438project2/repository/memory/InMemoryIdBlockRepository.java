@@ -0,0 +1,34 @@
+package com.wishlist.cst438project2.repository.memory;
+
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.enums.IdSequence;
+import com.wishlist.cst438project2.repository.IdBlockRepository;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory id counters, the in-memory stores start out empty so every sequence starts at 1
+ * @version %I% %G%
+ */
+
+@Repository
+@Profile(Constants.PROFILE_IN_MEMORY)
+public class InMemoryIdBlockRepository implements IdBlockRepository {
+
+    private final Map<IdSequence, AtomicLong> counters = new EnumMap<>(IdSequence.class);
+
+    public InMemoryIdBlockRepository() {
+        for (IdSequence sequence : IdSequence.values())
+            counters.put(sequence, new AtomicLong(1));
+    }
+
+    @Override
+    public CompletableFuture<Long> reserveBlock(IdSequence sequence, long blockSize) {
+        return CompletableFuture.completedFuture(counters.get(sequence).getAndAdd(blockSize));
+    }
+}
@@ -0,0 +1,233 @@
+package com.wishlist.cst438project2.repository.memory;
+
+import com.google.cloud.Timestamp;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.Utils;
+import com.wishlist.cst438project2.document.Item;
+import com.wishlist.cst438project2.dto.ItemDTO;
+import com.wishlist.cst438project2.exception.BadRequestException;
+import com.wishlist.cst438project2.exception.ConflictException;
+import com.wishlist.cst438project2.exception.PreconditionFailedException;
+import com.wishlist.cst438project2.repository.ItemRepository;
+import com.wishlist.cst438project2.repository.ItemUpdate;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory item storage used for local runs and benchmarks without a Firestore backend
+ * <p>
+ * items are stored under their key, same as the firestore implementation, sorted for paging, with an
+ * itemId to key index like the item_id collection. Versions come from a counter instead of update times
+ * @version %I% %G%
+ */
+@Repository
+@Profile(Constants.PROFILE_IN_MEMORY)
+public class InMemoryItemRepository implements ItemRepository {
+
+    private final NavigableMap<String, Item> items = new ConcurrentSkipListMap<>();
+    private final Map<Long, String> docIdsByItemId = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    @Autowired
+    private ModelMapper modelMapper;
+
+    @Override
+    public CompletableFuture<Item> findByNameAndUserId(String name, long userId) {
+        Item item = items.get(Utils.itemKey(userId, name));
+        return CompletableFuture.completedFuture(item == null ? null : copy(item));
+    }
+
+    @Override
+    public CompletableFuture<String> findDocIdByNameAndUserId(String name, long userId) {
+        String docId = Utils.itemKey(userId, name);
+
+        if (!items.containsKey(docId)) {
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_ITEM_NOT_FOUND));
+        }
+
+        return CompletableFuture.completedFuture(docId);
+    }
+
+    @Override
+    public CompletableFuture<Item> findByItemId(Long itemId) {
+        Item item = itemById(itemId);
+        return CompletableFuture.completedFuture(item == null ? null : copy(item));
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> findByItemIds(Collection<Long> itemIds) {
+        return CompletableFuture.completedFuture(itemIds.stream().distinct()
+                .map(this::itemById)
+                .filter(Objects::nonNull)
+                .map(this::copy)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> findAll() {
+        return CompletableFuture.completedFuture(items.values().stream().map(this::copy).collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> findByUserId(long userId) {
+        return CompletableFuture.completedFuture(items.values().stream()
+                .filter(item -> item.getUserId() == userId)
+                .map(this::copy)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> findPage(String startAfterDocId, int limit) {
+        return CompletableFuture.completedFuture(after(startAfterDocId).values().stream()
+                .limit(limit)
+                .map(this::copy)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<List<Item>> findPageByUserId(long userId, String startAfterDocId, int limit) {
+        return CompletableFuture.completedFuture(after(startAfterDocId).values().stream()
+                .filter(item -> item.getUserId() == userId)
+                .limit(limit)
+                .map(this::copy)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<String> create(Item item) {
+        Item stored = keyedCopy(item);
+        stored.setVersion(nextVersion());
+        if (Objects.nonNull(items.putIfAbsent(stored.getDocId(), stored)))
+            return CompletableFuture.failedFuture(new ConflictException(Constants.ERROR_ITEM_ALREADY_EXISTS.replace(Constants.KEY_ITEM_NAME, item.getName())));
+
+        index(stored);
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    @Override
+    public synchronized CompletableFuture<String> saveAll(List<Item> items) {
+        List<Item> created = new ArrayList<>();
+        for (Item item : items) {
+            Item stored = keyedCopy(item);
+            stored.setVersion(nextVersion());
+            if (Objects.nonNull(this.items.putIfAbsent(stored.getDocId(), stored))) {
+                // all or nothing, like the firestore batch
+                created.forEach(done -> this.items.remove(done.getDocId(), done));
+                return CompletableFuture.failedFuture(new ConflictException(items.size() == 1
+                        ? Constants.ERROR_ITEM_ALREADY_EXISTS.replace(Constants.KEY_ITEM_NAME, item.getName())
+                        : Constants.ERROR_ITEMS_ALREADY_EXIST));
+            }
+            created.add(stored);
+        }
+        created.forEach(this::index);
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    /**
+     * the change is only stored if the item is still the one it was made from, like the update-time precondition
+     * of the firestore implementation, if it was changed or deleted in between the update starts over
+     */
+    @Override
+    public CompletableFuture<ItemUpdate> update(long userId, String name, ItemDTO changes, String expectedVersion) {
+        String docId = Utils.itemKey(userId, name);
+
+        while (true) {
+            Item current = items.get(docId);
+
+            if (Objects.isNull(current))
+                return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_ITEM_NOT_FOUND));
+            if (Objects.nonNull(expectedVersion) && !expectedVersion.equals(current.getVersion()))
+                return CompletableFuture.failedFuture(new PreconditionFailedException(Constants.ERROR_VERSION_MISMATCH));
+
+            Item item = copy(current);
+            item.applyChanges(changes);
+            item.setDocId(Utils.itemKey(userId, item.getName()));
+            item.setVersion(nextVersion());
+
+            if (!item.getDocId().equals(docId)) {
+                if (Objects.nonNull(items.putIfAbsent(item.getDocId(), item)))
+                    return CompletableFuture.failedFuture(new ConflictException(Constants.ERROR_ITEM_ALREADY_EXISTS.replace(Constants.KEY_ITEM_NAME, item.getName())));
+                if (items.remove(docId, current)) {
+                    index(item);
+                    return CompletableFuture.completedFuture(new ItemUpdate(docId, item.getVersion()));
+                }
+                items.remove(item.getDocId(), item);
+            } else if (items.replace(docId, current, item)) {
+                return CompletableFuture.completedFuture(new ItemUpdate(docId, item.getVersion()));
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> delete(String docId) {
+        unindex(items.remove(docId));
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    @Override
+    public CompletableFuture<List<String>> deleteByUserId(long userId) {
+        List<String> docIds = items.values().stream()
+                .filter(item -> item.getUserId() == userId)
+                .map(Item::getDocId)
+                .collect(Collectors.toList());
+        docIds.forEach(docId -> unindex(items.remove(docId)));
+        return CompletableFuture.completedFuture(docIds);
+    }
+
+    /**
+     * nothing to migrate, the in-memory store has always been keyed
+     */
+    @Override
+    public CompletableFuture<Integer> migrateLegacyKeys() {
+        return CompletableFuture.completedFuture(0);
+    }
+
+    private Map<String, Item> after(String startAfterDocId) {
+        return Objects.isNull(startAfterDocId) ? items : items.tailMap(startAfterDocId, false);
+    }
+
+    private Item itemById(Long itemId) {
+        String docId = Objects.isNull(itemId) ? null : docIdsByItemId.get(itemId);
+        Item item = Objects.isNull(docId) ? null : items.get(docId);
+        // the index is written after the item, the key may already hold another item
+        return Objects.nonNull(item) && Objects.equals(item.getItemId(), itemId) ? item : null;
+    }
+
+    private void index(Item item) {
+        if (Objects.nonNull(item.getItemId()))
+            docIdsByItemId.put(item.getItemId(), item.getDocId());
+    }
+
+    private void unindex(Item item) {
+        if (Objects.nonNull(item) && Objects.nonNull(item.getItemId()))
+            docIdsByItemId.remove(item.getItemId(), item.getDocId());
+    }
+
+    private String nextVersion() {
+        return String.valueOf(versions.incrementAndGet());
+    }
+
+    private Item keyedCopy(Item item) {
+        Item stored = copy(item);
+        stored.setDocId(Utils.itemKey(item.getUserId(), item.getName()));
+        return stored;
+    }
+
+    private Item copy(Item item) {
+        return modelMapper.map(item, Item.class);
+    }
+}
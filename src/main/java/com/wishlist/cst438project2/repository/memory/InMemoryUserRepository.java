@@ -0,0 +1,117 @@
+package com.wishlist.cst438project2.repository.memory;
+
+import com.google.cloud.Timestamp;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.document.User;
+import com.wishlist.cst438project2.dto.UserDTO;
+import com.wishlist.cst438project2.exception.BadRequestException;
+import com.wishlist.cst438project2.exception.PreconditionFailedException;
+import com.wishlist.cst438project2.repository.UserRepository;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory user storage used for local runs and benchmarks without a Firestore backend
+ * <p>
+ * documents are copied on every read and write, same as they would be (de)serialized by Firestore,
+ * and kept sorted by username, the document id, for paging. Versions come from a counter instead of update times
+ * @version %I% %G%
+ */
+
+@Repository
+@Profile(Constants.PROFILE_IN_MEMORY)
+public class InMemoryUserRepository implements UserRepository {
+
+    private final NavigableMap<String, User> users = new ConcurrentSkipListMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    @Autowired
+    private ModelMapper modelMapper;
+
+    @Override
+    public CompletableFuture<User> findByUsername(String username) {
+        User user = users.get(username);
+        return CompletableFuture.completedFuture(user == null ? null : copy(user));
+    }
+
+    @Override
+    public CompletableFuture<List<User>> findByUsernames(Collection<String> usernames) {
+        return CompletableFuture.completedFuture(usernames.stream().distinct()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(this::copy)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<List<User>> findAll() {
+        return CompletableFuture.completedFuture(users.values().stream().map(this::copy).collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<List<User>> findPage(String startAfterDocId, int limit) {
+        Map<String, User> page = Objects.isNull(startAfterDocId) ? users : users.tailMap(startAfterDocId, false);
+        return CompletableFuture.completedFuture(page.values().stream().limit(limit).map(this::copy).collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<String> create(User user) {
+        User stored = copy(user);
+        stored.setId(user.getUsername());
+        stored.setVersion(nextVersion());
+        if (Objects.nonNull(users.putIfAbsent(user.getUsername(), stored)))
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_USER_ALREADY_EXISTS.replace(Constants.KEY_USERNAME, user.getUsername())));
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    @Override
+    public CompletableFuture<String> save(User user) {
+        User stored = copy(user);
+        stored.setId(user.getUsername());
+        stored.setVersion(nextVersion());
+        users.put(user.getUsername(), stored);
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    @Override
+    public synchronized CompletableFuture<String> update(String username, UserDTO changes, String expectedVersion) {
+        User current = users.get(username);
+
+        if (Objects.isNull(current))
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_USER_DOES_NOT_EXISTS.replace(Constants.KEY_USERNAME, username)));
+        if (Objects.nonNull(expectedVersion) && !expectedVersion.equals(current.getVersion()))
+            return CompletableFuture.failedFuture(new PreconditionFailedException(Constants.ERROR_VERSION_MISMATCH));
+
+        User user = copy(current);
+        user.applyChanges(changes);
+        user.setVersion(nextVersion());
+        users.put(username, user);
+        return CompletableFuture.completedFuture(user.getVersion());
+    }
+
+    @Override
+    public CompletableFuture<String> delete(String username) {
+        users.remove(username);
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    private String nextVersion() {
+        return String.valueOf(versions.incrementAndGet());
+    }
+
+    private User copy(User user) {
+        return modelMapper.map(user, User.class);
+    }
+}
@@ -0,0 +1,81 @@
+package com.wishlist.cst438project2.repository.memory;
+
+import com.google.cloud.Timestamp;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.extras.Wishlist;
+import com.wishlist.cst438project2.repository.WishlistRepository;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory wishlist storage used for local runs and benchmarks without a Firestore backend
+ * @version %I% %G%
+ */
+
+@Repository
+@Profile(Constants.PROFILE_IN_MEMORY)
+public class InMemoryWishlistRepository implements WishlistRepository {
+
+    private final Map<Long, Wishlist> wishlists = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletableFuture<Wishlist> findByUserId(Long userId) {
+        Wishlist wishlist = wishlists.get(userId);
+        return CompletableFuture.completedFuture(wishlist == null ? null : copy(wishlist));
+    }
+
+    @Override
+    public CompletableFuture<String> save(Wishlist wishlist) {
+        wishlists.put(wishlist.getUserId(), copy(wishlist));
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    @Override
+    public CompletableFuture<String> addItems(Long userId, List<Long> itemIds) {
+        wishlists.compute(userId, (id, wishlist) -> {
+            Wishlist updated = Objects.isNull(wishlist) ? new Wishlist(userId, new ArrayList<>()) : copy(wishlist);
+            if (Objects.isNull(updated.getItemIds()))
+                updated.setItemIds(new ArrayList<>());
+            for (Long itemId : itemIds)
+                if (!updated.getItemIds().contains(itemId))
+                    updated.getItemIds().add(itemId);
+            return updated;
+        });
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    @Override
+    public CompletableFuture<String> removeItems(Long userId, List<Long> itemIds) {
+        wishlists.computeIfPresent(userId, (id, wishlist) -> {
+            Wishlist updated = copy(wishlist);
+            if (Objects.nonNull(updated.getItemIds()))
+                updated.getItemIds().removeAll(itemIds);
+            return updated;
+        });
+        return CompletableFuture.completedFuture(Timestamp.now().toString());
+    }
+
+    @Override
+    public CompletableFuture<Wishlist> reorder(Long userId, List<Long> itemIds) {
+        List<Long> order = new ArrayList<>(new LinkedHashSet<>(itemIds));
+        Wishlist[] reordered = new Wishlist[1];
+
+        wishlists.compute(userId, (id, wishlist) -> {
+            List<Long> stored = Objects.isNull(wishlist) || Objects.isNull(wishlist.getItemIds()) ? Collections.emptyList() : wishlist.getItemIds();
+            if (order.size() != itemIds.size() || !new HashSet<>(stored).equals(new HashSet<>(order)))
+                return wishlist;
+            reordered[0] = new Wishlist(userId, order);
+            return copy(reordered[0]);
+        });
+        return CompletableFuture.completedFuture(reordered[0]);
+    }
+
+    private Wishlist copy(Wishlist wishlist) {
+        return new Wishlist(wishlist.getUserId(),
+                wishlist.getItemIds() == null ? null : new ArrayList<>(wishlist.getItemIds()));
+    }
+}
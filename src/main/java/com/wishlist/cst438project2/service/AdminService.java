@@ -1,11 +1,16 @@
 package com.wishlist.cst438project2.service;
 
+import com.wishlist.cst438project2.dto.PageDTO;
 import com.wishlist.cst438project2.dto.SignInDTO;
 import com.wishlist.cst438project2.dto.SignUpDTO;
 import com.wishlist.cst438project2.dto.UserDTO;
 import com.wishlist.cst438project2.dto.UserLoginDTO;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Admin service interface
@@ -15,14 +20,34 @@ import java.util.List;
 
 public interface AdminService {
 
-    List<UserDTO> getAllUsers();
-    void deleteUser(String username);
+    CompletableFuture<List<UserDTO>> getAllUsers();
 
-    String createUser(SignUpDTO signUpDTO);
+    CompletableFuture<PageDTO<UserDTO>> getAllUsers(int pageSize, String startAfter);
 
-    UserLoginDTO login(SignInDTO signInDTO);
+    CompletableFuture<Void> deleteUser(String username);
 
-    String removeItem(String itemName, Long userId);
+    CompletableFuture<String> createUser(SignUpDTO signUpDTO);
 
-    UserDTO updateUser(UserDTO userDTO);
+    CompletableFuture<UserLoginDTO> login(SignInDTO signInDTO);
+
+    CompletableFuture<String> removeItem(String itemName, Long userId);
+
+    /**
+     * same as UserService.updateUser, role included
+     */
+    CompletableFuture<UserDTO> updateUser(UserDTO userDTO, String expectedVersion);
+
+    CompletableFuture<Integer> migrateItemKeys();
+
+    CompletableFuture<Map<String, Map<String, Long>>> getStats();
+
+    /**
+     * writes every user as one JSON object per line, blocking the calling thread until done
+     */
+    void exportUsers(OutputStream outputStream) throws IOException;
+
+    /**
+     * writes every item as one JSON object per line, blocking the calling thread until done
+     */
+    void exportItems(OutputStream outputStream) throws IOException;
 }
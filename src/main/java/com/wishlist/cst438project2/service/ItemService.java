@@ -1,7 +1,15 @@
 package com.wishlist.cst438project2.service;
 
+import com.wishlist.cst438project2.dto.ImportResultDTO;
 import com.wishlist.cst438project2.dto.ItemDTO;
+import com.wishlist.cst438project2.dto.ItemQueryDTO;
+import com.wishlist.cst438project2.dto.ItemSearchResultDTO;
+import com.wishlist.cst438project2.dto.JobDTO;
+import com.wishlist.cst438project2.dto.PageDTO;
+import com.wishlist.cst438project2.enums.ImportFormat;
+import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service methods to be used with API endpoints in ItemController.java
@@ -16,51 +24,109 @@ public interface ItemService {
      * <p>
      * returns timestamp of successful record creation.
      */
-    String createItem(ItemDTO itemDTO, String username);
+    CompletableFuture<String> createItem(ItemDTO itemDTO, String username);
+
+    /**
+     * creates the items of a NDJSON or CSV body for the given user, rows that fail validation
+     * are reported and skipped, they don't stop the other rows. The body is read before this returns, on the
+     * calling thread
+     * returns the outcome of every row
+     */
+    CompletableFuture<ImportResultDTO> importItems(String username, ImportFormat format, InputStream body);
 
     /**
      * retrieve a specific document from item collection with a given userId and item name
      * returns the item
      */
-    ItemDTO getSpecificItem(String item_name, long userId);
+    CompletableFuture<ItemDTO> getSpecificItem(String item_name, long userId);
 
     /**
      * retrieve a specific document from item collection with a given username and item name
      * returns the item
      */
-    ItemDTO getSpecificItem2(String item_name, String username);
+    CompletableFuture<ItemDTO> getSpecificItem2(String item_name, String username);
 
     /**
      * retrieve all documents from item collection
      * returns a list of all created items
      */
-    List<ItemDTO> getAllItems();
+    CompletableFuture<List<ItemDTO>> getAllItems();
+
+    /**
+     * returns one page of all items, startAfter is the nextCursor of the previous page
+     */
+    CompletableFuture<PageDTO<ItemDTO>> getAllItems(int pageSize, String startAfter);
 
     /**
      * remove the item associated with a given user and item name
      * returns timestamp of deletion
      */
-    String removeItem(String name, String username);
+    CompletableFuture<String> removeItem(String name, String username);
 
     /**
-     * update the item associated with a userId matching the updatedItemDTO and old item name
-     * returns timestamp of successful update
+     * update the item associated with a userId matching the updatedItemDTO and old item name,
+     * fields left null keep their stored values
+     * fails with PreconditionFailedException if expectedVersion is given and the item has changed since
+     * returns the new version of the item, the timestamp of successful update
      */
-    String updateItem(String name, ItemDTO updatedItem);
+    CompletableFuture<String> updateItem(String name, ItemDTO updatedItem, String expectedVersion);
 
     /**
      * returns a list of items associated with a given username
      */
-    List<ItemDTO> getUserItems(String username);
+    CompletableFuture<List<ItemDTO>> getUserItems(String username);
+
+    /**
+     * returns one page of the items of a given username
+     */
+    CompletableFuture<PageDTO<ItemDTO>> getUserItems(String username, int pageSize, String startAfter);
 
     /**
      * returns a list of items based on search keywords
      */
-    List<ItemDTO> getSearchAllItems(List<String> keywords);
+    CompletableFuture<List<ItemDTO>> getSearchAllItems(List<String> keywords);
+
+    /**
+     * returns the most relevant items for the search keywords, best match first,
+     * or every match unranked when limit is null
+     */
+    CompletableFuture<List<ItemDTO>> getSearchAllItems(List<String> keywords, Integer limit);
+
+    /**
+     * returns one page of the items matching the search keywords, with priority and owner counts over all matches
+     */
+    CompletableFuture<ItemSearchResultDTO> getFacetedSearchItems(List<String> keywords, int page, int pageSize);
+
+    /**
+     * returns items matching the search keywords up to a few typos, closest first,
+     * at most limit (or MAX_SEARCH_LIMIT when null) of them
+     */
+    CompletableFuture<List<ItemDTO>> getFuzzySearchItems(List<String> keywords, Integer limit);
+
+    /**
+     * returns the items matching every (or, with operator OR, any) predicate of the query
+     */
+    CompletableFuture<List<ItemDTO>> queryItems(ItemQueryDTO itemQueryDTO);
+
+    /**
+     * returns item names starting with the given prefix, most common first
+     */
+    CompletableFuture<List<String>> getItemSuggestions(String prefix, int limit);
 
     /**
      * remove every item associated with a given user
-     * returns timestamp of successful deletion
+     * returns number of removed items
+     */
+    CompletableFuture<Integer> removeItemsByUser(String username);
+
+    /**
+     * starts removing every item associated with a given user in the background
+     * returns the job, its count is the number of removed items once it is done
+     */
+    CompletableFuture<JobDTO> startRemoveItemsByUser(String username);
+
+    /**
+     * returns the state of a job started by this node, fails with NotFoundException for unknown or expired jobs
      */
-    String removeItemsByUser(String username);
+    CompletableFuture<JobDTO> getJob(String jobId);
 }
@@ -2,6 +2,8 @@ package com.wishlist.cst438project2.service;
 
 import com.wishlist.cst438project2.dto.*;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * User service interface
  * @author Chaitanya Parwatkar
@@ -10,14 +12,19 @@ import com.wishlist.cst438project2.dto.*;
 
 public interface UserService {
 
-    String saveUser(SignUpDTO signUpDTO);
-    UserDTO updateUser(UserDTO userDTO);
+    CompletableFuture<String> saveUser(SignUpDTO signUpDTO);
+    /**
+     * writes the name, email and, if set, password of userDTO to the user, fields left null keep their stored values
+     * fails with PreconditionFailedException if expectedVersion is given and the user has changed since
+     * returns the updated user, with its new version
+     */
+    CompletableFuture<UserDTO> updateUser(UserDTO userDTO, String expectedVersion);
 
-    String changePassword(String username, ChangePasswordDTO changePasswordDTO);
+    CompletableFuture<String> changePassword(String username, ChangePasswordDTO changePasswordDTO);
 
-    UserLoginDTO login(SignInDTO signInDTO);
+    CompletableFuture<UserLoginDTO> login(SignInDTO signInDTO);
 
-    void deleteUser(DeleteUserDTO deleteUserDTO);
+    CompletableFuture<Void> deleteUser(DeleteUserDTO deleteUserDTO);
 
-    void logout(String accessToken);
+    CompletableFuture<Void> logout(String accessToken);
 }
@@ -1,13 +1,15 @@
 package com.wishlist.cst438project2.service.impl;
 
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.WriteResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.IdAllocator;
+import com.wishlist.cst438project2.common.StatsProvider;
 import com.wishlist.cst438project2.common.TokenManager;
 import com.wishlist.cst438project2.common.Utils;
 import com.wishlist.cst438project2.document.Item;
 import com.wishlist.cst438project2.document.User;
 import com.wishlist.cst438project2.dto.*;
+import com.wishlist.cst438project2.enums.IdSequence;
 import com.wishlist.cst438project2.enums.RoleType;
 import com.wishlist.cst438project2.exception.BadRequestException;
 import com.wishlist.cst438project2.exception.ExternalServerException;
@@ -15,14 +17,20 @@ import com.wishlist.cst438project2.exception.UnauthorizedException;
 import com.wishlist.cst438project2.integration.FirebaseIntegration;
 import com.wishlist.cst438project2.service.AdminService;
 import com.wishlist.cst438project2.service.ItemService;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
 
 @Slf4j
 @Service
@@ -37,85 +45,106 @@ public class AdminServiceImpl implements AdminService {
     @Autowired
     private TokenManager tokenManager;
 
+    @Autowired
+    private IdAllocator idAllocator;
+
     @Autowired
     private ItemService itemService;
 
+    @Autowired
+    private List<StatsProvider> statsProviders;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${wishlist.export.page-size:500}")
+    private int exportPageSize;
+
     @Override
-    public List<UserDTO> getAllUsers() {
+    public CompletableFuture<List<UserDTO>> getAllUsers() {
 
         log.info("AdminServiceImpl: Starting getAllUsers");
 
-        List<UserDTO> userDTOList = firebaseIntegration.getAllUsers();
+        return firebaseIntegration.getAllUsersAsync().thenApply(userDTOList -> {
 
-        log.info("AdminServiceImpl: Exiting getAllUsers");
+            log.info("AdminServiceImpl: Exiting getAllUsers");
 
-        return userDTOList;
+            return userDTOList;
+        });
     }
 
-    @SneakyThrows
+    /**
+     * returns one page of users, startAfter is the nextCursor of the previous page
+     */
     @Override
-    public void deleteUser(String username) {
+    public CompletableFuture<PageDTO<UserDTO>> getAllUsers(int pageSize, String startAfter) {
 
-        log.info("AdminServiceImpl: Starting deleteUser");
+        log.info("AdminServiceImpl: Starting getAllUsers page");
+
+        if (pageSize < 1 || pageSize > Constants.MAX_SEARCH_LIMIT)
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_INVALID_PAGE_SIZE));
+
+        return firebaseIntegration.getUsersPageAsync(pageSize, startAfter);
+    }
 
-        User user = fetchUser(username);
+    @Override
+    public CompletableFuture<Void> deleteUser(String username) {
 
-        firebaseIntegration.deleteUser(user.getUsername());
+        log.info("AdminServiceImpl: Starting deleteUser");
 
-        log.info("AdminServiceImpl: Exiting deleteUser");
+        return fetchUser(username)
+                .thenCompose(user -> firebaseIntegration.deleteUserAsync(user.getUsername()))
+                .thenRun(() -> log.info("AdminServiceImpl: Exiting deleteUser"));
     }
 
-    @SneakyThrows
     @Override
-    public String createUser(SignUpDTO signUpDTO) {
+    public CompletableFuture<String> createUser(SignUpDTO signUpDTO) {
 
         log.info("AdminServiceImpl: Starting createUser");
 
-        UserDTO dbUserDTO = firebaseIntegration.getUser(signUpDTO.getUsername());
+        return idAllocator.nextId(IdSequence.USER).thenCompose(userId -> {
 
-        User user;
-        if(Objects.isNull(dbUserDTO)) {
-            user = modelMapper.map(signUpDTO, User.class);
-            user.setUserId(firebaseIntegration.getAllUsers().size() + 1L);
-        } else
-            throw new BadRequestException(Constants.ERROR_USER_ALREADY_EXISTS.replace(Constants.KEY_USERNAME, signUpDTO.getUsername()));
+            User user = modelMapper.map(signUpDTO, User.class);
+            user.setUserId(userId);
 
-        user.setPassword(Utils.encodePassword(user.getPassword()));
+            user.setPassword(Utils.encodePassword(user.getPassword()));
 
-        ApiFuture<WriteResult> collectionApiFuture = firebaseIntegration.dbFirestore.collection(Constants.DOCUMENT_USER).document(user.getUsername()).set(user);
+            return firebaseIntegration.createUserAsync(user);
+        }).thenApply(responseTimestamp -> {
 
-        String responseTimestamp = collectionApiFuture.get().getUpdateTime().toString();
+            log.info("ResponseTimestamp: {}", responseTimestamp);
 
-        log.info("ResponseTimestamp: {}", responseTimestamp);
+            log.info("AdminServiceImpl: Exiting createUser");
 
-        log.info("UserServiceImpl: Exiting saveUser");
-
-        return responseTimestamp;
+            return responseTimestamp;
+        });
     }
 
     @Override
-    public UserLoginDTO login(SignInDTO signInDTO) {
+    public CompletableFuture<UserLoginDTO> login(SignInDTO signInDTO) {
 
         log.info("AdminServiceImpl: Starting login");
 
-        User user = fetchUser(signInDTO.getUsername());
+        return fetchUser(signInDTO.getUsername()).thenCompose(user -> {
 
-        if (!user.getRole().getValue().equals(RoleType.ADMIN.getValue()))
-            throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
+            if (!user.getRole().getValue().equals(RoleType.ADMIN.getValue()))
+                throw new UnauthorizedException(Constants.ERROR_INVALID_TOKEN);
 
-        String accessToken = null;
+            if (!Utils.checkPassword(signInDTO.getPassword(), user.getPassword()))
+                return CompletableFuture.completedFuture(null);
 
-        if (Utils.checkPassword(signInDTO.getPassword(), user.getPassword())) {
             log.info(Constants.USER_LOGIN_SUCCESSFUL);
-            accessToken = tokenManager.generateToken(user);
-        }
 
-        UserLoginDTO userLoginDTO = null;
-        if (Objects.nonNull(accessToken) && !accessToken.isEmpty())
-            userLoginDTO = new UserLoginDTO(user.fetchUserDTO(), accessToken);
+            return tokenManager.generateTokenAsync(user).thenApply(accessToken -> {
+
+                UserLoginDTO userLoginDTO = null;
+                if (Objects.nonNull(accessToken) && !accessToken.isEmpty())
+                    userLoginDTO = new UserLoginDTO(user.fetchUserDTO(), accessToken);
 
-        log.info("AdminServiceImpl: Exiting login");
-        return userLoginDTO;
+                log.info("AdminServiceImpl: Exiting login");
+                return userLoginDTO;
+            });
+        });
     }
 
     /**
@@ -123,65 +152,134 @@ public class AdminServiceImpl implements AdminService {
      * returns timestamp of deletion
      */
     @Override
-    public String removeItem(String name, Long userId) {
+    public CompletableFuture<String> removeItem(String name, Long userId) {
         log.info("AdminServiceImpl: Starting removeItem");
-        String docId = firebaseIntegration.getItemDocId(name, userId);
-        return  firebaseIntegration.removeItem(docId);
+        return firebaseIntegration.getItemDocIdAsync(name, userId)
+                .thenCompose(docId -> firebaseIntegration.removeItemAsync(docId));
     }
 
-    @SneakyThrows
     @Override
-    public UserDTO updateUser(UserDTO userDTO) {
+    public CompletableFuture<UserDTO> updateUser(UserDTO userDTO, String expectedVersion) {
 
         log.info("AdminServiceImpl: Starting updateUser");
 
-        User user = fetchUser(userDTO.getUsername());
-
-        user.setFirstName(userDTO.getFirstName());
-        user.setLastName(userDTO.getLastName());
-        user.setEmailId(userDTO.getEmailId());
+        UserDTO changes = new UserDTO(userDTO.getFirstName(), userDTO.getLastName(), userDTO.getEmailId(), userDTO.getUsername(), null);
 
         if(Objects.nonNull(userDTO.getRole()))
-            user.setRole(RoleType.valueOf(userDTO.getRole()));
+            changes.setRole(RoleType.valueOf(userDTO.getRole()).getValue());
 
         if(Objects.nonNull(userDTO.getPassword()))
-            user.setPassword(Utils.encodePassword(userDTO.getPassword()));
+            changes.setPassword(Utils.encodePassword(userDTO.getPassword()));
 
-        ApiFuture<WriteResult> collectionApiFuture = firebaseIntegration.dbFirestore.collection(Constants.DOCUMENT_USER).document(user.getUsername()).set(user);
+        return firebaseIntegration.updateUserAsync(userDTO.getUsername(), changes, expectedVersion).thenCompose(version -> {
 
-        String responseTimestamp = collectionApiFuture.get().getUpdateTime().toString();
+            if(version.isEmpty()) {
+                throw new ExternalServerException(Constants.ERROR_UNABLE_TO_UPDATE_USER);
+            }
 
-        if(responseTimestamp.isEmpty()) {
-            throw new ExternalServerException(Constants.ERROR_UNABLE_TO_UPDATE_USER);
-        }
+            return fetchUser(userDTO.getUsername());
+        }).thenApply(user -> {
 
-        log.info("AdminServiceImpl: Exiting updateUser");
+            log.info("AdminServiceImpl: Exiting updateUser");
 
-        return user.fetchUserDTO();
+            return user.fetchUserDTO();
+        });
+    }
+
+    /**
+     * one-off move of item documents written before items were keyed by userId and name
+     * returns number of moved items
+     */
+    @Override
+    public CompletableFuture<Integer> migrateItemKeys() {
+
+        log.info("AdminServiceImpl: Starting migrateItemKeys");
+
+        return firebaseIntegration.migrateItemKeysAsync().thenApply(migrated -> {
+
+            log.info("AdminServiceImpl: Exiting migrateItemKeys");
+
+            return migrated;
+        });
+    }
+
+    /**
+     * returns the counters of every cache/batcher, keyed by its name
+     */
+    @Override
+    public CompletableFuture<Map<String, Map<String, Long>>> getStats() {
+
+        Map<String, Map<String, Long>> stats = new TreeMap<>();
+        for (StatsProvider statsProvider : statsProviders)
+            stats.put(statsProvider.getStatsName(), statsProvider.getStats());
+
+        return CompletableFuture.completedFuture(stats);
+    }
+
+    @Override
+    public void exportUsers(OutputStream outputStream) throws IOException {
+
+        log.info("AdminServiceImpl: Starting exportUsers");
+
+        long exported = export(outputStream, firebaseIntegration::getUsersPage);
+
+        log.info("AdminServiceImpl: Exiting exportUsers, {} users", exported);
+    }
+
+    @Override
+    public void exportItems(OutputStream outputStream) throws IOException {
+
+        log.info("AdminServiceImpl: Starting exportItems");
+
+        long exported = export(outputStream, firebaseIntegration::getItemsPage);
+
+        log.info("AdminServiceImpl: Exiting exportItems, {} items", exported);
     }
 
     //Private Methods
-    private User fetchUser(String username) {
+    /**
+     * walks the pages one at a time and writes each page before reading the next one, so a slow reader holds
+     * back the reads (the write blocks) and at most one page is in memory. Every page is flushed so the client
+     * can start consuming right away
+     * returns number of exported documents
+     */
+    private <T> long export(OutputStream outputStream, BiFunction<Integer, String, PageDTO<T>> pageReader) throws IOException {
+        long exported = 0;
+        String cursor = null;
+
+        do {
+            PageDTO<T> page = pageReader.apply(exportPageSize, cursor);
+            for (T dto : page.getItems()) {
+                outputStream.write(objectMapper.writeValueAsBytes(dto));
+                outputStream.write('\n');
+            }
+            outputStream.flush();
+
+            exported += page.getItems().size();
+            cursor = page.getNextCursor();
+        } while (Objects.nonNull(cursor));
+
+        return exported;
+    }
+
+    private CompletableFuture<User> fetchUser(String username) {
 
-        UserDTO dbUserDTO = firebaseIntegration.getUser(username);
+        return firebaseIntegration.getUserAsync(username).thenApply(dbUserDTO -> {
 
-        if(Objects.isNull(dbUserDTO)) {
-            throw new BadRequestException(Constants.ERROR_USER_DOES_NOT_EXISTS.replace(Constants.KEY_USERNAME, username));
-        }
+            if(Objects.isNull(dbUserDTO)) {
+                throw new BadRequestException(Constants.ERROR_USER_DOES_NOT_EXISTS.replace(Constants.KEY_USERNAME, username));
+            }
 
-        return modelMapper.map(dbUserDTO, User.class);
+            return modelMapper.map(dbUserDTO, User.class);
+        });
     }
 
     /**
      * returns the item found in database by given name
      */
-    private Item fetchItem(String name, long userId) {
-        ItemDTO dbItemDTO = firebaseIntegration.getItem(name, userId);
-
-        if(Objects.isNull(dbItemDTO)) {
-            return null;
-        }
+    private CompletableFuture<Item> fetchItem(String name, long userId) {
 
-        return modelMapper.map(dbItemDTO, Item.class);
+        return firebaseIntegration.getItemAsync(name, userId)
+                .thenApply(dbItemDTO -> Objects.isNull(dbItemDTO) ? null : modelMapper.map(dbItemDTO, Item.class));
     }
 }
@@ -1,21 +1,52 @@
 package com.wishlist.cst438project2.service.impl;
 
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.WriteResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.CsvReader;
+import com.wishlist.cst438project2.common.IdAllocator;
+import com.wishlist.cst438project2.common.JobRegistry;
+import com.wishlist.cst438project2.common.Utils;
 import com.wishlist.cst438project2.document.Item;
+import com.wishlist.cst438project2.dto.ImportResultDTO;
+import com.wishlist.cst438project2.dto.ImportRowDTO;
 import com.wishlist.cst438project2.dto.ItemDTO;
+import com.wishlist.cst438project2.dto.ItemQueryDTO;
+import com.wishlist.cst438project2.dto.ItemSearchResultDTO;
+import com.wishlist.cst438project2.dto.JobDTO;
+import com.wishlist.cst438project2.dto.PageDTO;
+import com.wishlist.cst438project2.enums.IdSequence;
+import com.wishlist.cst438project2.enums.ImportFormat;
+import com.wishlist.cst438project2.enums.QueryOperator;
 import com.wishlist.cst438project2.exception.BadRequestException;
+import com.wishlist.cst438project2.exception.ConflictException;
+import com.wishlist.cst438project2.exception.NotFoundException;
 import com.wishlist.cst438project2.integration.FirebaseIntegration;
+import com.wishlist.cst438project2.repository.ItemRepository;
 import com.wishlist.cst438project2.service.ItemService;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
 
 /**
  * Service method implementations to be used with API endpoints in ItemController.java.
@@ -33,166 +64,472 @@ public class ItemServiceImpl implements ItemService {
     @Autowired
     private FirebaseIntegration firebaseIntegration;
 
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JobRegistry jobRegistry;
+
+    @Value("${wishlist.import.max-rows:10000}")
+    private int importMaxRows;
+
+    private static final Pattern PRIORITY = Pattern.compile("low|med|high");
+
     /**
      * database record creation route for item.
      * <p>
+     * the user (usually cached) and the itemId (usually served from memory) are resolved side by side,
+     * the duplicate check is left to the keyed create, so a create is one write to the database.
+     * An itemId taken for an item that turns out to exist is skipped
      * returns timestamp of successful record creation.
      */
-    @SneakyThrows
-    @Override
-    public String createItem(ItemDTO itemDTO, String username) {
-//        log.info("ItemServiceImpl: starting createItem");
-        long userId = firebaseIntegration.getUserId(username);
-
-        // check for existence of item by name and userId
-        Item item = fetchItem(itemDTO.getName(), userId);
-        // if item exists, don't add an identical item? throw err
-        if (Objects.nonNull(item)) {
-            throw new BadRequestException(Constants.ERROR_ITEM_ALREADY_EXISTS.replace(Constants.KEY_ITEM_NAME, itemDTO.getName()));
-        } else {
-            // If item does not exist, add the item
-            item = modelMapper.map(itemDTO, Item.class);
-            item.setItemId(firebaseIntegration.getAllItems().size() + 1L); // for admin functionalities
-            item.setUserId(userId);
-            item.logItem();
+    @Override
+    public CompletableFuture<String> createItem(ItemDTO itemDTO, String username) {
+        return firebaseIntegration.getUserIdAsync(username)
+                .thenCombine(idAllocator.nextId(IdSequence.ITEM), (userId, itemId) -> {
+                    Item item = modelMapper.map(itemDTO, Item.class);
+                    item.setItemId(itemId); // for admin functionalities
+                    item.setUserId(userId);
+                    item.logItem();
+                    return item;
+                })
+                .thenCompose(firebaseIntegration::createItemAsync);
+    }
+
+    /**
+     * the body is read and validated row by row on the calling thread, before any backend call, so the blocking
+     * reads of the upload never run on the threads backend calls complete on. Then the user and their existing
+     * item names are looked up once, ids for all accepted rows come from one reservation and the rows are written
+     * MAX_BATCH_ITEMS per batch, with all batches in flight at once. A failed batch only fails its own rows
+     */
+    @Override
+    public CompletableFuture<ImportResultDTO> importItems(String username, ImportFormat format, InputStream body) {
+        log.info("ItemServiceImpl: Starting importItems");
+
+        ItemImport itemImport = new ItemImport();
+        try {
+            if (format == ImportFormat.CSV)
+                readCsv(body, itemImport);
+            else
+                readNdjson(body, itemImport);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(ex));
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
         }
 
-        /*
-         * let item documents have a randomly assigned docId, otherwise multiple users can't have items with the same name. . .
-         * I had issues before because I was setting the docId to the item name --> firebase overrode the name field in favor of docId
-         */
-        ApiFuture<WriteResult> collectionsApiFuture = firebaseIntegration.dbFirestore.collection(Constants.DOCUMENT_ITEM).document().set(item);
-        String timestamp = collectionsApiFuture.get().getUpdateTime().toString();
+        return firebaseIntegration.getUserIdAsync(username).thenCompose(userId ->
+                firebaseIntegration.getItemsByUserIdAsync(userId).thenCompose(userItems -> {
 
-//        log.info("ItemServiceImpl: createItem: timestamp: {}", timestamp);
-//        log.info("ItemServiceImpl: exiting createItem");
-        return timestamp;
+                    Set<String> takenKeys = new HashSet<>();
+                    for (ItemDTO userItem : userItems)
+                        takenKeys.add(Utils.itemKey(userId, userItem.getName()));
+
+                    itemImport.assign(userId, takenKeys);
+                    return saveImportedItems(itemImport);
+                })).thenApply(importResultDTO -> {
+                    log.info("ItemServiceImpl: Exiting importItems, {} imported, {} failed", importResultDTO.getImported(), importResultDTO.getFailed());
+                    return importResultDTO;
+                });
     }
 
     /**
      * retrieve a specific document from item collection with a given userId and item name
      * returns the item
      */
-    @SneakyThrows
     @Override
-    public ItemDTO getSpecificItem(String item_name, long userId) {
+    public CompletableFuture<ItemDTO> getSpecificItem(String item_name, long userId) {
         log.info("ItemServiceImpl: starting getSpecificItem");
-        Item item = fetchItem(item_name, userId);
-        item.logItem();
+        return fetchItem(item_name, userId).thenApply(item -> {
+            item.logItem();
 
-        ItemDTO itemDTO = modelMapper.map(item, ItemDTO.class);
-        log.info("ItemServiceImpl: exiting getSpecificItem");
-        return  itemDTO;
+            ItemDTO itemDTO = modelMapper.map(item, ItemDTO.class);
+            log.info("ItemServiceImpl: exiting getSpecificItem");
+            return itemDTO;
+        });
     }
 
     /**
      * retrieve a specific document from item collection with a given username and item name
      * returns the item
      */
-    @SneakyThrows
     @Override
-    public ItemDTO getSpecificItem2(String item_name, String username) {
+    public CompletableFuture<ItemDTO> getSpecificItem2(String item_name, String username) {
         log.info("ItemServiceImpl: starting getSpecificItem2");
-        long userId = firebaseIntegration.getUserId(username);
-        ItemDTO itemDTO = firebaseIntegration.getItem(item_name, userId);
-        log.info("ItemServiceImpl: exiting getSpecificItem2");
-        return  itemDTO;
+        return firebaseIntegration.getUserIdAsync(username)
+                .thenCompose(userId -> firebaseIntegration.getItemAsync(item_name, userId))
+                .thenApply(itemDTO -> {
+                    log.info("ItemServiceImpl: exiting getSpecificItem2");
+                    return itemDTO;
+                });
     }
 
     /**
      * retrieve all documents from item collection
      * returns a list of all created items
      */
-    @SneakyThrows
     @Override
-    public List<ItemDTO> getAllItems() {
-//        log.info("ItemServiceImpl: starting getAllItems");
-        List<ItemDTO> collection = firebaseIntegration.getAllItems();
+    public CompletableFuture<List<ItemDTO>> getAllItems() {
+        return firebaseIntegration.getAllItemsAsync();
+    }
+
+    @Override
+    public CompletableFuture<PageDTO<ItemDTO>> getAllItems(int pageSize, String startAfter) {
+        if (pageSize < 1 || pageSize > Constants.MAX_SEARCH_LIMIT)
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_INVALID_PAGE_SIZE));
 
-//        log.info("ItemServiceImpl: exiting getAllItems");
-        return collection;
+        return firebaseIntegration.getItemsPageAsync(pageSize, startAfter);
     }
 
     /**
      * remove the item associated with a given user and item name
      * returns timestamp of deletion
      */
-    @SneakyThrows
     @Override
-    public String removeItem(String name, String username) {
-//        log.info("ItemServiceImpl: Starting removeItem");
-        long userId = firebaseIntegration.getUserId(username);
-        String docId = firebaseIntegration.getItemDocId(name, userId);
-
-        String timestamp = firebaseIntegration.removeItem(docId);
-//        log.info("ItemServiceImpl: exiting removeItem");
-        return timestamp;
+    public CompletableFuture<String> removeItem(String name, String username) {
+        return firebaseIntegration.getUserIdAsync(username)
+                .thenCompose(userId -> firebaseIntegration.getItemDocIdAsync(name, userId))
+                .thenCompose(docId -> firebaseIntegration.removeItemAsync(docId));
     }
 
     /**
      * update the item associated with a userId matching the updatedItemDTO and old item name
      * returns timestamp of successful update
      */
-    @SneakyThrows
     @Override
-    public String updateItem(String name, ItemDTO updatedItemDTO) {
-//        log.info("ItemServiceImpl: Starting updateItem");
-        String docId = firebaseIntegration.getItemDocId(name, updatedItemDTO.getUserId());
-
-        String timestamp = firebaseIntegration.updateItem(docId, updatedItemDTO);
-//        log.info("ItemServiceImpl: Exiting updateItem");
-        return timestamp;
+    public CompletableFuture<String> updateItem(String name, ItemDTO updatedItemDTO, String expectedVersion) {
+        return firebaseIntegration.updateItemAsync(updatedItemDTO.getUserId(), name, updatedItemDTO, expectedVersion);
     }
 
     /**
      * returns a list of items associated with a given username
      */
-    @SneakyThrows
     @Override
-    public List<ItemDTO> getUserItems(String username) {
-//        log.info("ItemServiceImpl: Starting updateItem");
-        List<ItemDTO> userItems = firebaseIntegration.getUserItems(username);
-//        log.info("ItemServiceImpl: Exiting updateItem");
-        return userItems;
+    public CompletableFuture<List<ItemDTO>> getUserItems(String username) {
+        return firebaseIntegration.getUserItemsAsync(username);
+    }
+
+    @Override
+    public CompletableFuture<PageDTO<ItemDTO>> getUserItems(String username, int pageSize, String startAfter) {
+        if (pageSize < 1 || pageSize > Constants.MAX_SEARCH_LIMIT)
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_INVALID_PAGE_SIZE));
+
+        return firebaseIntegration.getUserItemsPageAsync(username, pageSize, startAfter);
     }
 
     /**
      * returns a list of items based on search keywords
      */
-    @SneakyThrows
     @Override
-    public List<ItemDTO> getSearchAllItems(List<String> keywords) {
-//        log.info("ItemServiceImpl: Starting getSearchItems");
-        List<ItemDTO> searchItems = firebaseIntegration.getSearchAllItems(keywords);
-//        log.info("ItemServiceImpl: Exiting getSearchItems");
-        return searchItems;
+    public CompletableFuture<List<ItemDTO>> getSearchAllItems(List<String> keywords) {
+        return firebaseIntegration.getSearchAllItemsAsync(keywords);
+    }
+
+    /**
+     * returns the most relevant items for the search keywords, capped at limit
+     */
+    @Override
+    public CompletableFuture<List<ItemDTO>> getSearchAllItems(List<String> keywords, Integer limit) {
+        if (Objects.isNull(limit))
+            return getSearchAllItems(keywords);
+
+        if (limit < 1 || limit > Constants.MAX_SEARCH_LIMIT)
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_INVALID_SEARCH_LIMIT));
+
+        return firebaseIntegration.getTopSearchItemsAsync(keywords, limit);
+    }
+
+    /**
+     * returns one page of the items matching the search keywords, with facet counts
+     */
+    @Override
+    public CompletableFuture<ItemSearchResultDTO> getFacetedSearchItems(List<String> keywords, int page, int pageSize) {
+        if (page < 0 || pageSize < 1 || pageSize > Constants.MAX_SEARCH_LIMIT)
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_INVALID_PAGE));
+
+        return firebaseIntegration.getFacetedSearchItemsAsync(keywords, page, pageSize);
+    }
+
+    /**
+     * returns items matching the search keywords up to a few typos, closest first
+     */
+    @Override
+    public CompletableFuture<List<ItemDTO>> getFuzzySearchItems(List<String> keywords, Integer limit) {
+        int cappedLimit = Objects.isNull(limit) ? Constants.MAX_SEARCH_LIMIT : limit;
+        if (cappedLimit < 1 || cappedLimit > Constants.MAX_SEARCH_LIMIT)
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_INVALID_SEARCH_LIMIT));
+
+        return firebaseIntegration.getFuzzySearchItemsAsync(keywords, cappedLimit);
+    }
+
+    /**
+     * returns the items matching the structured query, at most its limit (MAX_SEARCH_LIMIT when not given)
+     */
+    @Override
+    public CompletableFuture<List<ItemDTO>> queryItems(ItemQueryDTO itemQueryDTO) {
+        if (Objects.isNull(itemQueryDTO.getUserIds()) && Objects.isNull(itemQueryDTO.getPriorities())
+                && Objects.isNull(itemQueryDTO.getHasLink()) && Objects.isNull(itemQueryDTO.getKeywords()))
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_EMPTY_ITEM_QUERY));
+
+        int limit = Objects.isNull(itemQueryDTO.getLimit()) ? Constants.MAX_SEARCH_LIMIT : itemQueryDTO.getLimit();
+        if (limit < 1 || limit > Constants.MAX_SEARCH_LIMIT)
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_INVALID_SEARCH_LIMIT));
+
+        if (Objects.isNull(itemQueryDTO.getOperator()))
+            itemQueryDTO.setOperator(QueryOperator.AND);
+
+        return firebaseIntegration.queryItemsAsync(itemQueryDTO, limit);
+    }
+
+    /**
+     * returns item names starting with the given prefix, most common first
+     */
+    @Override
+    public CompletableFuture<List<String>> getItemSuggestions(String prefix, int limit) {
+        if (limit < 1 || limit > Constants.MAX_SEARCH_LIMIT)
+            return CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_INVALID_SEARCH_LIMIT));
+
+        return firebaseIntegration.getItemSuggestionsAsync(prefix, limit);
     }
 
     /**
      * remove every item associated with a given user
-     * returns timestamp of successful deletion
+     * returns number of removed items
      */
-    @SneakyThrows
     @Override
-    public String removeItemsByUser(String username) {
+    public CompletableFuture<Integer> removeItemsByUser(String username) {
         log.info("ItemServiceImpl: Starting removeItemsByUser");
-        String timestamp = firebaseIntegration.removeItemsByUser(username);
-        log.info("ItemServiceImpl: Exiting removeItemsByUser");
-        return timestamp;
+        return firebaseIntegration.removeItemsByUserAsync(username).thenApply(removed -> {
+            log.info("ItemServiceImpl: Exiting removeItemsByUser");
+            return removed;
+        });
     }
 
     /**
-     * utility method
-     * returns the item found in database by given name
+     * the user is resolved before the job starts, so an unknown username fails the request instead of the job
+     */
+    @Override
+    public CompletableFuture<JobDTO> startRemoveItemsByUser(String username) {
+        log.info("ItemServiceImpl: Starting startRemoveItemsByUser");
+        return firebaseIntegration.getUserIdAsync(username).thenApply(userId -> {
+            JobDTO jobDTO = jobRegistry.submit(() -> firebaseIntegration.removeItemsByUserIdAsync(userId));
+            log.info("ItemServiceImpl: Exiting startRemoveItemsByUser, job {}", jobDTO.getJobId());
+            return jobDTO;
+        });
+    }
+
+    @Override
+    public CompletableFuture<JobDTO> getJob(String jobId) {
+        JobDTO jobDTO = jobRegistry.get(jobId);
+        if (Objects.isNull(jobDTO))
+            return CompletableFuture.failedFuture(new NotFoundException(Constants.ERROR_JOB_NOT_FOUND));
+
+        return CompletableFuture.completedFuture(jobDTO);
+    }
+
+    /**
+     * one JSON item per line, blank lines are skipped
+     */
+    private void readNdjson(InputStream body, ItemImport itemImport) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+
+        long line = 0;
+        String json;
+        while (Objects.nonNull(json = reader.readLine())) {
+            line++;
+            if (json.isBlank())
+                continue;
+
+            try {
+                itemImport.add(line, objectMapper.readValue(json, ItemDTO.class), null);
+            } catch (JsonProcessingException ex) {
+                itemImport.add(line, null, Constants.ERROR_INVALID_IMPORT_ROW + ex.getOriginalMessage());
+            }
+        }
+    }
+
+    /**
+     * a header row naming the columns (name, link, description, imgUrl, priority, in any order, others are ignored)
+     * followed by one item per row, empty fields are read as null
      */
-    private Item fetchItem(String name, long userId) {
-        ItemDTO dbItemDTO = firebaseIntegration.getItem(name, userId);
+    private void readCsv(InputStream body, ItemImport itemImport) throws IOException {
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+
+        List<String> header;
+        try {
+            header = reader.next();
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException(Constants.ERROR_IMPORT_CSV_HEADER);
+        }
 
-        if(Objects.isNull(dbItemDTO)) {
-            Item item = null;
-            return item;
+        Map<String, Integer> columns = new HashMap<>();
+        if (Objects.nonNull(header)) {
+            for (int i = 0; i < header.size(); i++)
+                columns.putIfAbsent(header.get(i).trim().toLowerCase(Locale.ROOT), i);
         }
+        if (!columns.containsKey(Constants.FIELD_ITEM_NAME))
+            throw new BadRequestException(Constants.ERROR_IMPORT_CSV_HEADER);
+
+        while (true) {
+            List<String> fields;
+            try {
+                fields = reader.next();
+            } catch (IllegalArgumentException ex) {
+                // an unclosed quote runs to the end of the body, nothing after it can be read
+                itemImport.add(reader.getRecordLine(), null, Constants.ERROR_INVALID_IMPORT_ROW + ex.getMessage());
+                return;
+            }
+            if (Objects.isNull(fields))
+                return;
+
+            if (fields.size() != header.size()) {
+                itemImport.add(reader.getRecordLine(), null, Constants.ERROR_IMPORT_FIELD_COUNT);
+                continue;
+            }
+
+            ItemDTO itemDTO = new ItemDTO();
+            itemDTO.setName(csvField(fields, columns, Constants.FIELD_ITEM_NAME));
+            itemDTO.setLink(csvField(fields, columns, Constants.FIELD_ITEM_LINK));
+            itemDTO.setDescription(csvField(fields, columns, Constants.FIELD_ITEM_DESCRIPTION));
+            itemDTO.setImgUrl(csvField(fields, columns, Constants.FIELD_ITEM_IMG_URL.toLowerCase(Locale.ROOT)));
+            itemDTO.setPriority(csvField(fields, columns, Constants.FIELD_ITEM_PRIORITY));
+            itemImport.add(reader.getRecordLine(), itemDTO, null);
+        }
+    }
+
+    private static String csvField(List<String> fields, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (Objects.isNull(index) || fields.get(index).isEmpty())
+            return null;
+        return fields.get(index);
+    }
+
+    private CompletableFuture<ImportResultDTO> saveImportedItems(ItemImport itemImport) {
+        List<Item> items = itemImport.items;
+        if (items.isEmpty())
+            return CompletableFuture.completedFuture(itemImport.toResult());
 
-        return modelMapper.map(dbItemDTO, Item.class);
+        return idAllocator.reserve(IdSequence.ITEM, items.size()).thenCompose(firstId -> {
+            for (int i = 0; i < items.size(); i++)
+                items.get(i).setItemId(firstId + i);
+
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            for (int from = 0; from < items.size(); from += ItemRepository.MAX_BATCH_ITEMS) {
+                int to = Math.min(from + ItemRepository.MAX_BATCH_ITEMS, items.size());
+                List<Item> batch = items.subList(from, to);
+                List<ImportRowDTO> batchRows = itemImport.itemRows.subList(from, to);
+                batches.add(saveImportBatch(batch, batchRows));
+            }
+
+            return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(done -> itemImport.toResult());
+        });
+    }
+
+    /**
+     * saves one chunk of imported items, if some of them were created by someone else since the import checked
+     * their names the chunk is saved again item by item, so only the rows whose name got taken fail
+     */
+    private CompletableFuture<Void> saveImportBatch(List<Item> batch, List<ImportRowDTO> batchRows) {
+        return firebaseIntegration.saveItemsAsync(batch).handle((responseTimestamp, ex) -> {
+            if (Objects.isNull(ex)) {
+                for (int i = 0; i < batch.size(); i++)
+                    batchRows.get(i).setItemId(batch.get(i).getItemId());
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            Throwable cause = ex instanceof CompletionException && Objects.nonNull(ex.getCause()) ? ex.getCause() : ex;
+            if (cause instanceof ConflictException && batch.size() > 1) {
+                List<CompletableFuture<Void>> rows = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++)
+                    rows.add(saveImportBatch(batch.subList(i, i + 1), batchRows.subList(i, i + 1)));
+                return CompletableFuture.allOf(rows.toArray(new CompletableFuture<?>[0]));
+            }
+
+            if (cause instanceof ConflictException) {
+                batchRows.forEach(row -> row.setError(cause.getMessage()));
+            } else {
+                batchRows.forEach(row -> row.setError(Constants.ERROR_UNABLE_TO_SAVE_ITEM));
+                log.error("ItemServiceImpl: import batch of {} items failed", batch.size(), ex);
+            }
+            return CompletableFuture.<Void>completedFuture(null);
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * rows of one import, in body order, with the items still to be written next to the rows they came from
+     */
+    private class ItemImport {
+        private final List<ImportRowDTO> rows = new ArrayList<>();
+        private List<Item> items = new ArrayList<>();
+        private List<ImportRowDTO> itemRows = new ArrayList<>();
+
+        /**
+         * records a row, the item is checked like a single create would and only kept when it passes,
+         * its name is checked against the user's items by assign()
+         */
+        private void add(long line, ItemDTO itemDTO, String error) {
+            if (rows.size() == importMaxRows)
+                throw new BadRequestException(Constants.ERROR_IMPORT_TOO_LARGE.replace(Constants.KEY_ROWS, String.valueOf(importMaxRows)));
+
+            ImportRowDTO row = new ImportRowDTO(line, Objects.isNull(itemDTO) ? null : itemDTO.getName(), null, error);
+            rows.add(row);
+            if (Objects.nonNull(error))
+                return;
+
+            if (Objects.isNull(itemDTO.getName()) || itemDTO.getName().isBlank()) {
+                row.setError(Constants.ERROR_ITEM_NAME_REQUIRED);
+            } else if (Objects.nonNull(itemDTO.getPriority()) && !PRIORITY.matcher(itemDTO.getPriority()).matches()) {
+                row.setError(Constants.ERROR_INVALID_PRIORITY);
+            } else {
+                Item item = modelMapper.map(itemDTO, Item.class);
+                item.setItemId(null);
+                items.add(item);
+                itemRows.add(row);
+            }
+        }
+
+        /**
+         * gives the kept items to the user, rows whose name the user already has, or that an earlier row of the
+         * body has, are dropped as already existing
+         */
+        private void assign(long userId, Set<String> takenKeys) {
+            List<Item> assigned = new ArrayList<>();
+            List<ImportRowDTO> assignedRows = new ArrayList<>();
+
+            for (int i = 0; i < items.size(); i++) {
+                Item item = items.get(i);
+                if (takenKeys.add(Utils.itemKey(userId, item.getName()))) {
+                    item.setUserId(userId);
+                    assigned.add(item);
+                    assignedRows.add(itemRows.get(i));
+                } else {
+                    itemRows.get(i).setError(Constants.ERROR_ITEM_ALREADY_EXISTS.replace(Constants.KEY_ITEM_NAME, item.getName()));
+                }
+            }
+            items = assigned;
+            itemRows = assignedRows;
+        }
+
+        private ImportResultDTO toResult() {
+            int imported = 0;
+            for (ImportRowDTO row : rows) {
+                if (Objects.isNull(row.getError()))
+                    imported++;
+            }
+            return new ImportResultDTO(imported, rows.size() - imported, rows);
+        }
+    }
+
+    /**
+     * utility method
+     * returns the item found in database by given name
+     */
+    private CompletableFuture<Item> fetchItem(String name, long userId) {
+        return firebaseIntegration.getItemAsync(name, userId)
+                .thenApply(dbItemDTO -> Objects.isNull(dbItemDTO) ? null : modelMapper.map(dbItemDTO, Item.class));
     }
 }
@@ -1,23 +1,23 @@
 package com.wishlist.cst438project2.service.impl;
 
-import com.google.api.core.ApiFuture;
-import com.google.cloud.firestore.WriteResult;
 import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.IdAllocator;
 import com.wishlist.cst438project2.common.TokenManager;
 import com.wishlist.cst438project2.common.Utils;
 import com.wishlist.cst438project2.document.User;
 import com.wishlist.cst438project2.dto.*;
+import com.wishlist.cst438project2.enums.IdSequence;
 import com.wishlist.cst438project2.exception.BadRequestException;
 import com.wishlist.cst438project2.exception.ExternalServerException;
 import com.wishlist.cst438project2.integration.FirebaseIntegration;
 import com.wishlist.cst438project2.service.UserService;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Slf4j
@@ -32,149 +32,139 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private TokenManager tokenManager;
 
-    @SneakyThrows
+    @Autowired
+    private IdAllocator idAllocator;
+
     @Override
-    public String saveUser(SignUpDTO signUpDTO) {
+    public CompletableFuture<String> saveUser(SignUpDTO signUpDTO) {
 
         log.info("UserServiceImpl: Starting saveUser");
 
-        UserDTO dbUserDTO = firebaseIntegration.getUser(signUpDTO.getUsername());
-
-        User user;
-        if(Objects.isNull(dbUserDTO)) {
-            user = modelMapper.map(signUpDTO, User.class);
-            // barbara added next line
-            user.setUserId(firebaseIntegration.getAllUsers().size() + 1L);
-        } else
-            throw new BadRequestException(Constants.ERROR_USER_ALREADY_EXISTS.replace(Constants.KEY_USERNAME, signUpDTO.getUsername()));
+        // the username is the document key, so a taken username is rejected by the create itself
+        return idAllocator.nextId(IdSequence.USER).thenCompose(userId -> {
 
-        user.setPassword(Utils.encodePassword(user.getPassword()));
+            User user = modelMapper.map(signUpDTO, User.class);
+            user.setUserId(userId);
 
-        ApiFuture<WriteResult> collectionApiFuture = firebaseIntegration.dbFirestore.collection(Constants.DOCUMENT_USER).document(user.getUsername()).set(user);
+            user.setPassword(Utils.encodePassword(user.getPassword()));
 
-        String responseTimestamp = collectionApiFuture.get().getUpdateTime().toString();
+            return firebaseIntegration.createUserAsync(user);
+        }).thenApply(responseTimestamp -> {
 
-        log.info("ResponseTimestamp: {}", responseTimestamp);
+            log.info("ResponseTimestamp: {}", responseTimestamp);
 
-        log.info("UserServiceImpl: Exiting saveUser");
-
-        return responseTimestamp;
+            log.info("UserServiceImpl: Exiting saveUser");
 
+            return responseTimestamp;
+        });
     }
 
-    @SneakyThrows
     @Override
-    public UserDTO updateUser(UserDTO userDTO) {
+    public CompletableFuture<UserDTO> updateUser(UserDTO userDTO, String expectedVersion) {
         log.info("UserServiceImpl: Starting updateUser");
 
-        User user = fetchUser(userDTO.getUsername());
-
-        user.setFirstName(userDTO.getFirstName());
-        user.setLastName(userDTO.getLastName());
-        user.setEmailId(userDTO.getEmailId());
+        UserDTO changes = new UserDTO(userDTO.getFirstName(), userDTO.getLastName(), userDTO.getEmailId(), userDTO.getUsername(), null);
 
         if(Objects.nonNull(userDTO.getPassword()))
-            user.setPassword(Utils.encodePassword(userDTO.getPassword()));
+            changes.setPassword(Utils.encodePassword(userDTO.getPassword()));
 
-        ApiFuture<WriteResult> collectionApiFuture = firebaseIntegration.dbFirestore.collection(Constants.DOCUMENT_USER).document(user.getUsername()).set(user);
+        return firebaseIntegration.updateUserAsync(userDTO.getUsername(), changes, expectedVersion).thenCompose(version -> {
 
-        String responseTimestamp = collectionApiFuture.get().getUpdateTime().toString();
+            if(version.isEmpty()) {
+                throw new ExternalServerException(Constants.ERROR_UNABLE_TO_UPDATE_USER);
+            }
 
-        if(responseTimestamp.isEmpty()) {
-            throw new ExternalServerException(Constants.ERROR_UNABLE_TO_UPDATE_USER);
-        }
+            return fetchUser(userDTO.getUsername());
+        }).thenApply(user -> {
 
-        log.info("UserServiceImpl: Exiting updateUser");
+            log.info("UserServiceImpl: Exiting updateUser");
 
-        return user.fetchUserDTO();
+            return user.fetchUserDTO();
+        });
     }
 
-    @SneakyThrows
     @Override
-    public String changePassword(String username, ChangePasswordDTO changePasswordDTO) {
+    public CompletableFuture<String> changePassword(String username, ChangePasswordDTO changePasswordDTO) {
 
         log.info("UserServiceImpl: Starting changePassword");
 
-        User user = fetchUser(username);
-
-        user.setPassword(Utils.encodePassword(changePasswordDTO.getNewPassword()));
+        UserDTO changes = new UserDTO();
+        changes.setPassword(Utils.encodePassword(changePasswordDTO.getNewPassword()));
 
-        ApiFuture<WriteResult> collectionApiFuture = firebaseIntegration.dbFirestore.collection(Constants.DOCUMENT_USER).document(user.getUsername()).set(user);
+        return firebaseIntegration.updateUserAsync(username, changes, null).thenApply(responseTimestamp -> {
 
-        String responseTimestamp = collectionApiFuture.get().getUpdateTime().toString();
+            if(responseTimestamp.isEmpty()) {
+                throw new ExternalServerException(Constants.ERROR_UNABLE_TO_UPDATE_USER);
+            }
 
-        if(responseTimestamp.isEmpty()) {
-            throw new ExternalServerException(Constants.ERROR_UNABLE_TO_UPDATE_USER);
-        }
+            log.info("UserServiceImpl: Exiting changePassword");
 
-        log.info("UserServiceImpl: Exiting changePassword");
-
-        return Constants.USER_PASSWORD_CHANGED_SUCCESSFULLY;
+            return Constants.USER_PASSWORD_CHANGED_SUCCESSFULLY;
+        });
     }
 
     @Override
-    public UserLoginDTO login(SignInDTO signInDTO) {
+    public CompletableFuture<UserLoginDTO> login(SignInDTO signInDTO) {
 
         log.info("UserServiceImpl: Starting login");
 
-        User user = fetchUser(signInDTO.getUsername());
+        return fetchUser(signInDTO.getUsername()).thenCompose(user -> {
 
-        String accessToken = null;
+            if(!Utils.checkPassword(signInDTO.getPassword(), user.getPassword()))
+                return CompletableFuture.completedFuture(null);
 
-        if(Utils.checkPassword(signInDTO.getPassword(), user.getPassword())) {
             log.info(Constants.USER_LOGIN_SUCCESSFUL);
-            accessToken = tokenManager.generateToken(user);
-        }
 
-        UserLoginDTO userLoginDTO = null;
-        if(Objects.nonNull(accessToken) && !accessToken.isEmpty())
-            userLoginDTO = new UserLoginDTO(user.fetchUserDTO(), accessToken);
+            return tokenManager.generateTokenAsync(user).thenApply(accessToken -> {
+
+                UserLoginDTO userLoginDTO = null;
+                if(Objects.nonNull(accessToken) && !accessToken.isEmpty())
+                    userLoginDTO = new UserLoginDTO(user.fetchUserDTO(), accessToken);
 
-        log.info("UserServiceImpl: Exiting login");
-        return userLoginDTO;
+                log.info("UserServiceImpl: Exiting login");
+                return userLoginDTO;
+            });
+        });
     }
 
     @Override
-    public void deleteUser(DeleteUserDTO deleteUserDTO) {
+    public CompletableFuture<Void> deleteUser(DeleteUserDTO deleteUserDTO) {
 
         log.info("UserServiceImpl: Starting deleteUser");
 
-        User user = fetchUser(deleteUserDTO.getUsername());
-
-        try {
+        return fetchUser(deleteUserDTO.getUsername()).thenCompose(user -> {
 
-            if (Utils.checkPassword(deleteUserDTO.getPassword(), user.getPassword()))
-                firebaseIntegration.deleteUser(user.getUsername());
-            else
+            if (!Utils.checkPassword(deleteUserDTO.getPassword(), user.getPassword()))
                 throw new BadRequestException(Constants.ERROR_INVALID_PASSWORD);
 
-        } catch(Exception ex) {
-            log.error(ex.getMessage(), ex);
-            throw ex;
-        }
+            return firebaseIntegration.deleteUserAsync(user.getUsername());
+        }).whenComplete((result, ex) -> {
 
-        log.info("UserServiceImpl: Exiting deleteUser");
+            if(Objects.nonNull(ex))
+                log.error(ex.getMessage(), ex);
+            else
+                log.info("UserServiceImpl: Exiting deleteUser");
+        });
     }
 
     @Override
-    public void logout(String accessToken) {
+    public CompletableFuture<Void> logout(String accessToken) {
 
         log.info("UserServiceImpl: Starting logout");
 
-        firebaseIntegration.deleteAccessToken(accessToken);
-
-        log.info("UserServiceImpl: Exiting logout");
+        return firebaseIntegration.deleteAccessTokenAsync(accessToken).thenRun(() -> log.info("UserServiceImpl: Exiting logout"));
     }
 
     //Private Methods
-    private User fetchUser(String username) {
+    private CompletableFuture<User> fetchUser(String username) {
 
-        UserDTO dbUserDTO = firebaseIntegration.getUser(username);
+        return firebaseIntegration.getUserAsync(username).thenApply(dbUserDTO -> {
 
-        if(Objects.isNull(dbUserDTO)) {
-            throw new BadRequestException(Constants.ERROR_USER_DOES_NOT_EXISTS.replace(Constants.KEY_USERNAME, username));
-        }
+            if(Objects.isNull(dbUserDTO)) {
+                throw new BadRequestException(Constants.ERROR_USER_DOES_NOT_EXISTS.replace(Constants.KEY_USERNAME, username));
+            }
 
-        return modelMapper.map(dbUserDTO, User.class);
+            return modelMapper.map(dbUserDTO, User.class);
+        });
     }
 }
@@ -71,13 +71,13 @@ public class AdminControllerTest {
         credentials.setUsername(ADMIN_USERNAME);
         credentials.setPassword(ADMIN_PASSWORD);
 
-        ResponseDTO<UserLoginDTO> response = adminController.login(credentials);
+        ResponseDTO<UserLoginDTO> response = adminController.login(credentials).join();
 
         String token = response.getData().getAccessToken();
 
         assertThat(token, notNullValue());
 
-        userController.logout(token);
+        userController.logout(token).join();
     }
 
     @Test
@@ -91,10 +91,10 @@ public class AdminControllerTest {
 
         String adminAccessToken = getAdminAccessToken();
         SignUpDTO signUpDTO = new SignUpDTO(FIRSTNAME, LASTNAME, EMAIL, USERNAME, PASSWORD);
-        String responseTimestamp = adminController.createUser(adminAccessToken, signUpDTO);
+        String responseTimestamp = adminController.createUser(adminAccessToken, signUpDTO).join();
         assertThat(responseTimestamp, notNullValue());
 
-        userController.logout(adminAccessToken);
+        userController.logout(adminAccessToken).join();
     }
 
     @Test
@@ -107,14 +107,14 @@ public class AdminControllerTest {
 
         String adminAccessToken = getAdminAccessToken();
         UserDTO updateUserRequest = new UserDTO(newFirstName, newLastName, newEmail, USERNAME, null);
-        UserDTO updateUserResponse = adminController.updateUser(adminAccessToken, updateUserRequest);
+        UserDTO updateUserResponse = adminController.updateUser(adminAccessToken, updateUserRequest, null).join().getBody();
 
         assertThat(updateUserResponse, notNullValue());
         assertEquals(newFirstName, updateUserResponse.getFirstName());
         assertEquals(newLastName, updateUserResponse.getLastName());
         assertEquals(newEmail, updateUserResponse.getEmailId());
 
-        userController.logout(adminAccessToken);
+        userController.logout(adminAccessToken).join();
     }
 
     @Test
@@ -127,7 +127,7 @@ public class AdminControllerTest {
 
         String adminAccessToken = getAdminAccessToken();
         UserDTO updateUserRequest = new UserDTO(newFirstName, newLastName, newEmail, USERNAME, NEW_PASSWORD);
-        UserDTO updateUserResponse = adminController.updateUser(adminAccessToken, updateUserRequest);
+        UserDTO updateUserResponse = adminController.updateUser(adminAccessToken, updateUserRequest, null).join().getBody();
 
         assertThat(updateUserResponse, notNullValue());
         assertEquals(newFirstName, updateUserResponse.getFirstName());
@@ -142,8 +142,8 @@ public class AdminControllerTest {
         assertEquals(updateUserResponse.getUserId(), userTokenDTO.getUserId());
         assertEquals(updateUserResponse.getRole(), userTokenDTO.getRole());
 
-        userController.logout(adminAccessToken);
-        userController.logout(userAccessToken);
+        userController.logout(adminAccessToken).join();
+        userController.logout(userAccessToken).join();
     }
 
     @Test
@@ -156,14 +156,14 @@ public class AdminControllerTest {
         itemDTO.setName(INITIAL_ITEM_NAME);
 
         String adminAccessToken = getAdminAccessToken();
-        String createResponse = adminController.createItem(adminAccessToken, itemDTO, USERNAME);
+        String createResponse = adminController.createItem(adminAccessToken, itemDTO, USERNAME).join();
         assertEquals(createResponse.substring(0,5), "2021-");
 
-        List<ItemDTO> userItemsResponse = itemController.getUserItems(userAccessToken, USERNAME);
+        List<ItemDTO> userItemsResponse = itemController.getUserItems(userAccessToken, USERNAME).join();
         assert(userItemsResponse.size() == 1);
 
-        userController.logout(adminAccessToken);
-        userController.logout(userAccessToken);
+        userController.logout(adminAccessToken).join();
+        userController.logout(userAccessToken).join();
     }
 
     @Test
@@ -176,11 +176,11 @@ public class AdminControllerTest {
         updatedItemDTO.setName(UPDATE_ITEM_NAME);
         updatedItemDTO.setUserId(firebaseIntegration.getUserId(USERNAME));
 
-        String updateResponse = adminController.updateItem(adminAccessToken, INITIAL_ITEM_NAME, updatedItemDTO);
+        String updateResponse = adminController.updateItem(adminAccessToken, INITIAL_ITEM_NAME, updatedItemDTO, null).join().getBody();
         System.out.println(updateResponse);
         assertEquals(updateResponse.substring(0,5), "2021-");
 
-        userController.logout(adminAccessToken);
+        userController.logout(adminAccessToken).join();
     }
 
     @Test
@@ -188,10 +188,10 @@ public class AdminControllerTest {
 
         String adminAccessToken = getAdminAccessToken();
 
-        List<ItemDTO> allItemsResponse = adminController.getAllItems(adminAccessToken);
+        List<ItemDTO> allItemsResponse = adminController.getAllItems(adminAccessToken).join();
         assert(allItemsResponse.size() > 0);
 
-        userController.logout(adminAccessToken);
+        userController.logout(adminAccessToken).join();
     }
 
     @Test
@@ -203,11 +203,11 @@ public class AdminControllerTest {
         String searchKeyword1 = "update";
         String searchKeyword2 = "item";
 
-        List<ItemDTO> keywordItemsResponse = adminController.searchAllItems(adminAccessToken, Arrays.asList(searchKeyword1, searchKeyword2));
+        List<ItemDTO> keywordItemsResponse = adminController.searchAllItems(adminAccessToken, Arrays.asList(searchKeyword1, searchKeyword2), null).join();
 
         assertTrue(keywordItemsResponse.size() > 0);
 
-        userController.logout(adminAccessToken);
+        userController.logout(adminAccessToken).join();
     }
 
     @Test
@@ -216,28 +216,28 @@ public class AdminControllerTest {
 
         String userAccessToken = getUserAccessToken(USERNAME, NEW_PASSWORD);
 
-        List<ItemDTO> userItemsResponse = itemController.getUserItems(userAccessToken, USERNAME);
+        List<ItemDTO> userItemsResponse = itemController.getUserItems(userAccessToken, USERNAME).join();
         assert(userItemsResponse.size() == 1);
 
         Long userId = firebaseIntegration.getUserId(USERNAME);
 
         String adminAccessToken = getAdminAccessToken();
-        String removeResponse = adminController.removeItem(adminAccessToken, UPDATE_ITEM_NAME, userId);
+        String removeResponse = adminController.removeItem(adminAccessToken, UPDATE_ITEM_NAME, userId).join();
         System.out.println(removeResponse);
         assertEquals(removeResponse.substring(0,5), "2021-");
 
-        userItemsResponse = itemController.getUserItems(userAccessToken, USERNAME);
+        userItemsResponse = itemController.getUserItems(userAccessToken, USERNAME).join();
         assert(userItemsResponse.size() == 0);
 
-        userController.logout(adminAccessToken);
-        userController.logout(userAccessToken);
+        userController.logout(adminAccessToken).join();
+        userController.logout(userAccessToken).join();
     }
 
     @Test
     @Order(9)
     void adminLogout_Success() {
 
-        String response = userController.logout(getAdminAccessToken());
+        String response = userController.logout(getAdminAccessToken()).join();
 
         assertEquals(Constants.USER_LOGOUT_SUCCESSFUL, response);
     }
@@ -248,7 +248,7 @@ public class AdminControllerTest {
 
         String adminAccessToken = getAdminAccessToken();
 
-        String response = adminController.deleteUser(adminAccessToken, USERNAME);
+        String response = adminController.deleteUser(adminAccessToken, USERNAME).join();
 
         assertEquals(Constants.USER_DELETED + " " + USERNAME, response);
 
@@ -256,7 +256,7 @@ public class AdminControllerTest {
 
         assertTrue(Objects.isNull(userDTO));
 
-        userController.logout(adminAccessToken);
+        userController.logout(adminAccessToken).join();
     }
 
     //Private Methods
@@ -265,7 +265,7 @@ public class AdminControllerTest {
         credentials.setUsername(ADMIN_USERNAME);
         credentials.setPassword(ADMIN_PASSWORD);
 
-        ResponseDTO<UserLoginDTO> response = adminController.login(credentials);
+        ResponseDTO<UserLoginDTO> response = adminController.login(credentials).join();
         assertThat(response.getData().getAccessToken(), notNullValue());
         return response.getData().getAccessToken();
     }
@@ -275,7 +275,7 @@ public class AdminControllerTest {
         credentials.setUsername(username);
         credentials.setPassword(password);
 
-        ResponseDTO<UserLoginDTO> response = userController.login(credentials);
+        ResponseDTO<UserLoginDTO> response = userController.login(credentials).join();
         assertThat(response.getData().getAccessToken(), notNullValue());
         return response.getData().getAccessToken();
     }
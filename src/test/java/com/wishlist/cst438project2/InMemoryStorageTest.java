@@ -0,0 +1,865 @@
+package com.wishlist.cst438project2;
+
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.wishlist.cst438project2.common.BatchLoader;
+import com.wishlist.cst438project2.common.Constants;
+import com.wishlist.cst438project2.common.IdAllocator;
+import com.wishlist.cst438project2.common.ItemSearchIndex;
+import com.wishlist.cst438project2.common.JobRegistry;
+import com.wishlist.cst438project2.common.SingleFlight;
+import com.wishlist.cst438project2.common.TokenManager;
+import com.wishlist.cst438project2.common.Utils;
+import com.wishlist.cst438project2.common.extras.WishlistService;
+import com.wishlist.cst438project2.controller.AdminController;
+import com.wishlist.cst438project2.controller.ItemController;
+import com.wishlist.cst438project2.controller.UserController;
+import com.wishlist.cst438project2.document.Item;
+import com.wishlist.cst438project2.dto.*;
+import com.wishlist.cst438project2.enums.IdSequence;
+import com.wishlist.cst438project2.enums.ImportFormat;
+import com.wishlist.cst438project2.enums.JobStatus;
+import com.wishlist.cst438project2.enums.QueryOperator;
+import com.wishlist.cst438project2.enums.RoleType;
+import com.wishlist.cst438project2.exception.BadRequestException;
+import com.wishlist.cst438project2.exception.ConflictException;
+import com.wishlist.cst438project2.exception.NotFoundException;
+import com.wishlist.cst438project2.exception.PreconditionFailedException;
+import com.wishlist.cst438project2.exception.UnauthorizedException;
+import com.wishlist.cst438project2.integration.FirebaseIntegration;
+import com.wishlist.cst438project2.repository.ItemRepository;
+import com.wishlist.cst438project2.repository.ItemUpdate;
+import com.wishlist.cst438project2.repository.firestore.ApiFutureAdapter;
+import com.wishlist.cst438project2.repository.firestore.GroupCommitWriter;
+import com.wishlist.cst438project2.service.ItemService;
+import io.grpc.Status;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test cases for the user and item flows running on the in-memory storage profile,
+ * these don't need a Firestore backend or a service account key
+ * @version %I% %G%
+ */
+
+@SpringBootTest(properties = "wishlist.firebase.service-account-filename=missing_service_account_key.json")
+@ActiveProfiles(Constants.PROFILE_IN_MEMORY)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class InMemoryStorageTest {
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private AdminController adminController;
+
+    @Autowired
+    private ItemController itemController;
+
+    @Autowired
+    FirebaseIntegration firebaseIntegration;
+
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private TokenManager tokenManager;
+
+    @Autowired
+    private ItemService itemService;
+
+    @Autowired
+    private WishlistService wishlistService;
+
+    @Autowired
+    private JobRegistry jobRegistry;
+
+    @Autowired
+    private ItemSearchIndex itemSearchIndex;
+
+    final String USERNAME = "memory-user";
+    final String PASSWORD = "memory-pass1";
+
+    final String ITEM_NAME = "memory item";
+
+    @Test
+    @Order(1)
+    void saveUser_Success() {
+
+        SignUpDTO signUpDTO = new SignUpDTO("memory", "user", "memoryuser@gmail.com", USERNAME, PASSWORD);
+        String response = userController.saveUser(signUpDTO).join();
+
+        assertEquals(Constants.USER_CREATED, response);
+        assertThat(firebaseIntegration.getUser(USERNAME), notNullValue());
+    }
+
+    @Test
+    @Order(2)
+    void createItem_Success() {
+
+        String token = getAccessToken();
+
+        ItemDTO itemDTO = new ItemDTO();
+        itemDTO.setName(ITEM_NAME);
+        itemDTO.setDescription("stored without firestore");
+
+        String createResponse = itemController.createItem(token, new CreateItemDTO(itemDTO, USERNAME)).join();
+        assertThat(createResponse, notNullValue());
+
+        List<ItemDTO> userItems = itemController.getUserItems(token, USERNAME).join();
+        assertEquals(1, userItems.size());
+        assertEquals(ITEM_NAME, userItems.get(0).getName());
+        assertEquals(firebaseIntegration.getUserId(USERNAME), userItems.get(0).getUserId());
+
+        ItemDTO duplicateDTO = new ItemDTO();
+        duplicateDTO.setName(ITEM_NAME.toUpperCase());
+        CompletionException ex = assertThrows(CompletionException.class,
+                () -> itemController.createItem(token, new CreateItemDTO(duplicateDTO, USERNAME)).join());
+        assertTrue(ex.getCause() instanceof ConflictException);
+        assertEquals(1, itemController.getUserItems(token, USERNAME).join().size());
+    }
+
+    @Test
+    @Order(3)
+    void removeItem_Success() {
+
+        String token = getAccessToken();
+
+        itemController.removeItem(token, ITEM_NAME, USERNAME).join();
+
+        assertTrue(itemController.getUserItems(token, USERNAME).join().isEmpty());
+    }
+
+    @Test
+    @Order(4)
+    void deleteUser_Success() {
+
+        String response = userController.deleteUser(getAccessToken(), new DeleteUserDTO(USERNAME, PASSWORD)).join();
+
+        assertEquals(Constants.USER_DELETED + " " + USERNAME, response);
+        assertTrue(Objects.isNull(firebaseIntegration.getUser(USERNAME)));
+    }
+
+    @Test
+    @Order(5)
+    void nextId_UniqueAcrossConcurrentCallers() {
+
+        List<CompletableFuture<Long>> futures = IntStream.range(0, 500).parallel()
+                .mapToObj(i -> idAllocator.nextId(IdSequence.ITEM))
+                .collect(Collectors.toList());
+
+        Set<Long> ids = futures.stream().map(CompletableFuture::join).collect(Collectors.toSet());
+        assertEquals(500, ids.size());
+    }
+
+    @Test
+    @Order(6)
+    void saveUser_DuplicateUsername() {
+
+        SignUpDTO signUpDTO = new SignUpDTO("memory", "twin", "memorytwin@gmail.com", "memory-twin", PASSWORD);
+        assertEquals(Constants.USER_CREATED, userController.saveUser(signUpDTO).join());
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> userController.saveUser(signUpDTO).join());
+        assertTrue(ex.getCause() instanceof BadRequestException);
+
+        firebaseIntegration.deleteUser("memory-twin");
+    }
+
+    @Test
+    @Order(7)
+    void logout_RevokesCachedToken() {
+
+        SignUpDTO signUpDTO = new SignUpDTO("memory", "token", "memorytoken@gmail.com", "memory-token", PASSWORD);
+        userController.saveUser(signUpDTO).join();
+
+        SignInDTO credentials = new SignInDTO();
+        credentials.setUsername("memory-token");
+        credentials.setPassword(PASSWORD);
+        String token = userController.login(credentials).join().getData().getAccessToken();
+
+        assertEquals("memory-token", tokenManager.getUser(token).getUsername());
+        assertEquals("memory-token", tokenManager.getUser(token).getUsername());
+
+        userController.logout(token).join();
+        assertThrows(UnauthorizedException.class, () -> tokenManager.getUser(token));
+
+        firebaseIntegration.deleteUser("memory-token");
+    }
+
+    @Test
+    @Order(8)
+    void wishlist_SetSemanticsAndMissingItems() {
+
+        SignUpDTO signUpDTO = new SignUpDTO("memory", "wishlist", "memorywishlist@gmail.com", "memory-wishlist", PASSWORD);
+        userController.saveUser(signUpDTO).join();
+        long userId = firebaseIntegration.getUserId("memory-wishlist");
+
+        ItemDTO itemDTO = new ItemDTO();
+        itemDTO.setName(ITEM_NAME);
+        itemService.createItem(itemDTO, "memory-wishlist").join();
+        Long itemId = firebaseIntegration.getItem(ITEM_NAME, userId).getItemId();
+
+        AddItemsWishlistDTO addItemsWishlistDTO = new AddItemsWishlistDTO();
+        addItemsWishlistDTO.setUserId(userId);
+        addItemsWishlistDTO.setItemIds(new ArrayList<>(Arrays.asList(itemId, -1L)));
+        wishlistService.addItemsWishlist(addItemsWishlistDTO);
+        wishlistService.addItemsWishlist(addItemsWishlistDTO);
+
+        WishlistResponseDTO wishlist = wishlistService.getWishlistByUser(userId);
+        assertEquals(1, wishlist.getItemDTOList().size());
+        assertEquals(itemId, wishlist.getItemDTOList().get(0).getItemId());
+        assertEquals(Collections.singletonList(-1L), wishlist.getMissingItemIds());
+
+        addItemsWishlistDTO.setItemIds(Arrays.asList(-1L, itemId));
+        assertEquals(Arrays.asList(-1L, itemId), wishlistService.reorderWishlist(addItemsWishlistDTO).getItemIds());
+
+        addItemsWishlistDTO.setItemIds(Collections.singletonList(-1L));
+        wishlistService.removeItemsWishlist(addItemsWishlistDTO);
+        assertTrue(wishlistService.getWishlistByUser(userId).getMissingItemIds().isEmpty());
+
+        itemService.removeItemsByUser("memory-wishlist").join();
+        firebaseIntegration.deleteUser("memory-wishlist");
+    }
+
+    @Test
+    @Order(9)
+    void search_FollowsItemWrites() {
+
+        createSearchItems("memory-search");
+
+        assertEquals(1, itemService.getSearchAllItems(Collections.singletonList("Brass")).join().size());
+        assertEquals(1, itemService.getSearchAllItems(Collections.singletonList("ass fin")).join().size());
+        assertTrue(itemService.getSearchAllItems(Collections.singletonList("red lamp")).join().isEmpty());
+
+        deleteSearchUser("memory-search");
+        assertTrue(itemService.getSearchAllItems(Collections.singletonList("lamp")).join().isEmpty());
+    }
+
+    @Test
+    @Order(10)
+    void searchTop_RanksBestMatchesFirst() {
+
+        createSearchItems("memory-top");
+
+        List<ItemDTO> ranked = itemService.getSearchAllItems(Arrays.asList("lamp", "shade"), 1).join();
+        assertEquals(1, ranked.size());
+        assertEquals("Shade", ranked.get(0).getName());
+        assertEquals("Blue Lamp", itemService.getSearchAllItems(Collections.singletonList("lamp"), 1).join().get(0).getName());
+
+        deleteSearchUser("memory-top");
+    }
+
+    @Test
+    @Order(11)
+    void fuzzySearch_ToleratesTypos() {
+
+        createSearchItems("memory-fuzzy");
+
+        List<ItemDTO> fuzzy = itemService.getFuzzySearchItems(Arrays.asList("bras lmap", "shdae"), null).join();
+        assertEquals(Arrays.asList("Shade", "Blue Lamp"), fuzzy.stream().map(ItemDTO::getName).collect(Collectors.toList()));
+        assertTrue(itemService.getFuzzySearchItems(Collections.singletonList("bress lumps"), null).join().isEmpty());
+
+        deleteSearchUser("memory-fuzzy");
+    }
+
+    @Test
+    @Order(12)
+    void userItems_PagedByCursor() {
+
+        createSearchItems("memory-paging");
+
+        PageDTO<ItemDTO> firstPage = itemService.getUserItems("memory-paging", 1, null).join();
+        assertEquals(1, firstPage.getItems().size());
+        PageDTO<ItemDTO> lastPage = itemService.getUserItems("memory-paging", 1, firstPage.getNextCursor()).join();
+        assertEquals(1, lastPage.getItems().size());
+        assertTrue(Objects.isNull(lastPage.getNextCursor()));
+        assertTrue(!firstPage.getItems().get(0).getName().equals(lastPage.getItems().get(0).getName()));
+
+        deleteSearchUser("memory-paging");
+    }
+
+    @Test
+    @Order(13)
+    void facetedSearch_CountsEveryMatch() {
+
+        createSearchItems("memory-facets");
+
+        ItemSearchResultDTO faceted = itemService.getFacetedSearchItems(Collections.singletonList("lamp"), 1, 1).join();
+        assertEquals(1, faceted.getItems().size());
+        assertEquals(2, faceted.getTotal());
+        assertEquals(1L, faceted.getPriorityCounts().get("high"));
+        assertEquals(1L, faceted.getPriorityCounts().get(ItemSearchIndex.NO_PRIORITY));
+
+        deleteSearchUser("memory-facets");
+    }
+
+    @Test
+    @Order(14)
+    void queryItems_CombinesPredicates() {
+
+        createSearchItems("memory-query");
+
+        ItemQueryDTO itemQueryDTO = new ItemQueryDTO();
+        itemQueryDTO.setUserIds(Collections.singletonList(firebaseIntegration.getUserId("memory-query")));
+        itemQueryDTO.setPriorities(Collections.singletonList("HIGH"));
+        itemQueryDTO.setKeywords(Collections.singletonList("lamp"));
+        assertEquals(1, itemService.queryItems(itemQueryDTO).join().size());
+
+        itemQueryDTO.setPriorities(null);
+        itemQueryDTO.setHasLink(false);
+        assertEquals(2, itemService.queryItems(itemQueryDTO).join().size());
+
+        itemQueryDTO.setOperator(QueryOperator.OR);
+        itemQueryDTO.setUserIds(Collections.singletonList(-1L));
+        itemQueryDTO.setHasLink(true);
+        itemQueryDTO.setKeywords(Collections.singletonList("shade"));
+        assertEquals(1, itemService.queryItems(itemQueryDTO).join().size());
+
+        deleteSearchUser("memory-query");
+    }
+
+    @Test
+    @Order(15)
+    void suggestions_FollowItemWrites() {
+
+        createSearchItems("memory-suggest");
+
+        assertEquals(Collections.singletonList("Blue Lamp"), itemService.getItemSuggestions("BLUE l", 10).join());
+        assertEquals(Collections.singletonList("Shade"), itemService.getItemSuggestions("sh", 10).join());
+
+        deleteSearchUser("memory-suggest");
+        assertTrue(itemService.getItemSuggestions("blue", 10).join().isEmpty());
+    }
+
+    @Test
+    @Order(16)
+    void importItems_ReportsEveryRow() {
+
+        SignUpDTO signUpDTO = new SignUpDTO("memory", "import", "memoryimport@gmail.com", "memory-import", PASSWORD);
+        userController.saveUser(signUpDTO).join();
+
+        ItemDTO existing = new ItemDTO();
+        existing.setName("Kettle");
+        itemService.createItem(existing, "memory-import").join();
+
+        String ndjson = "{\"name\":\"Teapot\",\"priority\":\"high\"}\n"
+                + "\n"
+                + "{\"name\":\"kettle\"}\n"
+                + "{\"name\":\"Mug\",\"priority\":\"urgent\"}\n"
+                + "not json\n";
+        ImportResultDTO ndjsonResult = itemService.importItems("memory-import", ImportFormat.NDJSON, toStream(ndjson)).join();
+        assertEquals(1, ndjsonResult.getImported());
+        assertEquals(3, ndjsonResult.getFailed());
+        assertEquals(Arrays.asList(1L, 3L, 4L, 5L), ndjsonResult.getRows().stream().map(ImportRowDTO::getLine).collect(Collectors.toList()));
+        assertThat(ndjsonResult.getRows().get(0).getItemId(), notNullValue());
+
+        String csv = "priority,Name,description\r\n"
+                + "low,Tray,\"wooden, \"\"oak\"\"\nfinish\"\r\n"
+                + ",Teapot,\r\n"
+                + "med,Saucer\r\n";
+        ImportResultDTO csvResult = itemService.importItems("memory-import", ImportFormat.CSV, toStream(csv)).join();
+        assertEquals(1, csvResult.getImported());
+        assertEquals(Arrays.asList(2L, 4L, 5L), csvResult.getRows().stream().map(ImportRowDTO::getLine).collect(Collectors.toList()));
+
+        ItemDTO tray = firebaseIntegration.getItem("Tray", firebaseIntegration.getUserId("memory-import"));
+        assertEquals("wooden, \"oak\"\nfinish", tray.getDescription());
+        assertEquals(3, itemService.getUserItems("memory-import").join().size());
+        assertEquals(1, itemService.getSearchAllItems(Collections.singletonList("oak")).join().size());
+
+        itemService.removeItemsByUser("memory-import").join();
+        firebaseIntegration.deleteUser("memory-import");
+    }
+
+    @Test
+    @Order(17)
+    void removeItemsByUser_JobDeletesEveryBatch() {
+
+        SignUpDTO signUpDTO = new SignUpDTO("memory", "cascade", "memorycascade@gmail.com", "memory-cascade", PASSWORD);
+        userController.saveUser(signUpDTO).join();
+
+        int itemCount = ItemRepository.MAX_BATCH_ITEMS + 10;
+        String ndjson = IntStream.rangeClosed(1, itemCount)
+                .mapToObj(i -> "{\"name\":\"Cascade " + i + "\",\"description\":\"cascadeonly\"}\n")
+                .collect(Collectors.joining());
+        assertEquals(itemCount, itemService.importItems("memory-cascade", ImportFormat.NDJSON, toStream(ndjson)).join().getImported());
+        assertEquals(itemCount, itemService.getSearchAllItems(Collections.singletonList("cascadeonly")).join().size());
+
+        JobDTO job = itemService.startRemoveItemsByUser("memory-cascade").join();
+        JobDTO finished = itemService.getJob(job.getJobId()).join();
+        assertEquals(JobStatus.DONE, finished.getStatus());
+        assertEquals(itemCount, finished.getCount());
+        assertTrue(itemService.getUserItems("memory-cascade").join().isEmpty());
+        assertTrue(itemService.getSearchAllItems(Collections.singletonList("cascadeonly")).join().isEmpty());
+        assertTrue(itemService.getItemSuggestions("cascade", 10).join().isEmpty());
+
+        // a job is RUNNING until its work completes, then DONE with the count or FAILED with the error
+        CompletableFuture<Integer> work = new CompletableFuture<>();
+        JobDTO running = jobRegistry.submit(() -> work);
+        assertEquals(JobStatus.RUNNING, itemService.getJob(running.getJobId()).join().getStatus());
+        work.complete(7);
+        JobDTO completed = itemService.getJob(running.getJobId()).join();
+        assertEquals(JobStatus.DONE, completed.getStatus());
+        assertEquals(7, completed.getCount());
+
+        JobDTO failed = jobRegistry.submit(() -> CompletableFuture.failedFuture(new BadRequestException(Constants.ERROR_ITEM_NOT_FOUND)));
+        assertEquals(JobStatus.FAILED, itemService.getJob(failed.getJobId()).join().getStatus());
+        assertTrue(itemService.getJob(failed.getJobId()).join().getError().contains(Constants.ERROR_ITEM_NOT_FOUND));
+
+        CompletionException unknown = assertThrows(CompletionException.class, () -> itemService.getJob("no-such-job").join());
+        assertTrue(unknown.getCause() instanceof NotFoundException);
+
+        firebaseIntegration.deleteUser("memory-cascade");
+    }
+
+    @Test
+    @Order(18)
+    void updates_AreVersionChecked() {
+
+        SignUpDTO signUpDTO = new SignUpDTO("memory", "versions", "memoryversions@gmail.com", "memory-versions", PASSWORD);
+        userController.saveUser(signUpDTO).join();
+        long userId = firebaseIntegration.getUserId("memory-versions");
+
+        ItemDTO itemDTO = new ItemDTO();
+        itemDTO.setName("Lantern");
+        itemDTO.setDescription("brass");
+        itemService.createItem(itemDTO, "memory-versions").join();
+        String version = firebaseIntegration.getItem("Lantern", userId).getVersion();
+        assertThat(version, notNullValue());
+
+        // only the priority is sent, the description has to survive
+        ItemDTO changes = new ItemDTO();
+        changes.setUserId(userId);
+        changes.setPriority("high");
+        String newVersion = itemService.updateItem("Lantern", changes, version).join();
+        ItemDTO updated = firebaseIntegration.getItem("Lantern", userId);
+        assertEquals("brass", updated.getDescription());
+        assertEquals("high", updated.getPriority());
+        assertEquals(newVersion, updated.getVersion());
+
+        CompletionException stale = assertThrows(CompletionException.class, () -> itemService.updateItem("Lantern", changes, version).join());
+        assertTrue(stale.getCause() instanceof PreconditionFailedException);
+
+        ItemDTO rename = new ItemDTO();
+        rename.setUserId(userId);
+        rename.setName("Lamp");
+        itemService.updateItem("Lantern", rename, newVersion).join();
+        assertEquals("brass", firebaseIntegration.getItem("Lamp", userId).getDescription());
+        assertEquals(1, itemService.getSearchAllItems(Collections.singletonList("lamp")).join().size());
+        assertTrue(itemService.getSearchAllItems(Collections.singletonList("lantern")).join().isEmpty());
+
+        String userVersion = firebaseIntegration.getUser("memory-versions").getVersion();
+        UserDTO userChanges = new UserDTO("renamed", null, null, "memory-versions", null);
+        UserDTO updatedUser = userController.updateUser(getAccessToken("memory-versions"), userChanges, "\"" + userVersion + "\"").join().getBody();
+        assertEquals("renamed", updatedUser.getFirstName());
+        assertEquals("versions", updatedUser.getLastName());
+
+        CompletionException staleUser = assertThrows(CompletionException.class,
+                () -> userController.updateUser(getAccessToken("memory-versions"), userChanges, "\"" + userVersion + "\"").join());
+        assertTrue(staleUser.getCause() instanceof PreconditionFailedException);
+
+        itemService.removeItemsByUser("memory-versions").join();
+        firebaseIntegration.deleteUser("memory-versions");
+    }
+
+    @Test
+    @Order(19)
+    void singleFlight_SharesConcurrentLoads() {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test");
+        CompletableFuture<String> backend = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> first = singleFlight.execute("key", key -> { calls.incrementAndGet(); return backend; });
+        CompletableFuture<String> second = singleFlight.execute("key", key -> { calls.incrementAndGet(); return backend; });
+        assertEquals(1, calls.get());
+        assertEquals(1L, singleFlight.getStats().get("shared"));
+
+        backend.complete("value");
+        assertEquals("value", first.join());
+        assertEquals("value", second.join());
+        assertEquals(0L, singleFlight.getStats().get("inFlight"));
+
+        // nothing is kept after the load, and forget() starts a new one while another is in flight
+        CompletableFuture<String> stale = new CompletableFuture<>();
+        singleFlight.execute("key", key -> { calls.incrementAndGet(); return stale; });
+        singleFlight.forget("key");
+        CompletableFuture<String> fresh = singleFlight.execute("key", key -> { calls.incrementAndGet(); return CompletableFuture.completedFuture("fresh"); });
+        assertEquals(3, calls.get());
+        assertEquals("fresh", fresh.join());
+    }
+
+    @Test
+    @Order(20)
+    void batchLoader_GroupsPointReads() {
+
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        BatchLoader<Integer, String> batchLoader = new BatchLoader<>("test", keys -> {
+            batches.add(keys);
+            return CompletableFuture.completedFuture(keys.stream().filter(key -> key > 0)
+                    .collect(Collectors.toMap(key -> key, key -> "value" + key)));
+        }, Duration.ofMillis(50), 3);
+
+        CompletableFuture<String> first = batchLoader.load(1);
+        CompletableFuture<String> again = batchLoader.load(1);
+        CompletableFuture<String> missing = batchLoader.load(-2);
+        assertEquals("value1", first.join());
+        assertEquals("value1", again.join());
+        assertNull(missing.join());
+        assertEquals(Collections.singletonList(Arrays.asList(1, -2)), batches);
+
+        // a full batch goes out without waiting for the window
+        batches.clear();
+        List<CompletableFuture<String>> full = IntStream.rangeClosed(1, 3).mapToObj(batchLoader::load).collect(Collectors.toList());
+        assertEquals(1, batches.size());
+        assertTrue(full.stream().allMatch(CompletableFuture::isDone));
+
+        Map<String, Long> stats = batchLoader.getStats();
+        assertEquals(6L, stats.get("loads"));
+        assertEquals(2L, stats.get("batches"));
+        assertEquals(1L, stats.get("fullBatches"));
+    }
+
+    @Test
+    @Order(21)
+    void batchLoader_InvalidKeyDoesNotFailItsBatch() {
+
+        // like a firestore getAll, the batch fails as a whole if any key can't be a document id
+        List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        BatchLoader<String, String> batchLoader = new BatchLoader<>("test", keys -> {
+            batches.add(keys);
+            keys.forEach(key -> {
+                if (!Utils.isValidDocumentId(key))
+                    throw new IllegalArgumentException("invalid document id " + key);
+            });
+            return CompletableFuture.completedFuture(keys.stream().collect(Collectors.toMap(key -> key, key -> "value-" + key)));
+        }, Utils::isValidDocumentId, Duration.ofMillis(50), 10);
+
+        CompletableFuture<String> poisoned = batchLoader.load("a/b");
+        CompletableFuture<String> good = batchLoader.load("alice");
+        CompletableFuture<String> reserved = batchLoader.load("__name__");
+
+        assertNull(poisoned.join());
+        assertNull(reserved.join());
+        assertEquals("value-alice", good.join());
+        assertEquals(Collections.singletonList(Collections.singletonList("alice")), batches);
+        assertEquals(2L, batchLoader.getStats().get("invalidKeys"));
+    }
+
+    @Test
+    @Order(22)
+    void groupCommitWriter_BatchesWritesWithinTheWindow() {
+
+        Map<WriteBatch, List<String>> batches = Collections.synchronizedMap(new LinkedHashMap<>());
+        Map<WriteBatch, SettableApiFuture<List<WriteResult>>> commits = new ConcurrentHashMap<>();
+        GroupCommitWriter groupCommitWriter = newGroupCommitWriter(batches, commits);
+
+        List<CompletableFuture<String>> writes = Stream.of("a", "b", "c")
+                .map(name -> groupCommitWriter.write(addTo(batches, name)))
+                .collect(Collectors.toList());
+
+        awaitBatches(batches, 1);
+        assertEquals(Collections.singletonList(Arrays.asList("a", "b", "c")), new ArrayList<>(batches.values()));
+
+        commits.values().forEach(commit -> commit.set(Collections.emptyList()));
+        writes.forEach(CompletableFuture::join);
+        assertEquals(1L, groupCommitWriter.getStats().get("batches"));
+        assertEquals(3L, groupCommitWriter.getStats().get("averageBatchSize"));
+        assertEquals(0L, groupCommitWriter.getStats().get("retries"));
+    }
+
+    @Test
+    @Order(23)
+    void groupCommitWriter_IsolatesConflictingCreate() {
+
+        Map<WriteBatch, List<String>> batches = Collections.synchronizedMap(new LinkedHashMap<>());
+        Map<WriteBatch, SettableApiFuture<List<WriteResult>>> commits = new ConcurrentHashMap<>();
+        GroupCommitWriter groupCommitWriter = newGroupCommitWriter(batches, commits);
+
+        CompletableFuture<String> first = groupCommitWriter.write(addTo(batches, "a"));
+        CompletableFuture<String> conflicting = groupCommitWriter.write(addTo(batches, "taken"));
+        CompletableFuture<String> last = groupCommitWriter.write(addTo(batches, "c"));
+
+        // firestore rejects the batch as a whole, nothing in it was applied so each write is committed on its own
+        awaitBatches(batches, 1);
+        commits.get(batches.keySet().iterator().next()).setException(Status.ALREADY_EXISTS.asRuntimeException());
+        awaitBatches(batches, 4);
+
+        batches.forEach((batch, names) -> {
+            if (names.equals(Collections.singletonList("taken")))
+                commits.get(batch).setException(Status.ALREADY_EXISTS.asRuntimeException());
+            else if (!commits.get(batch).isDone())
+                commits.get(batch).set(Collections.emptyList());
+        });
+
+        first.join();
+        last.join();
+        CompletionException ex = assertThrows(CompletionException.class, conflicting::join);
+        assertEquals(Status.Code.ALREADY_EXISTS, Status.fromThrowable(ex.getCause()).getCode());
+        assertEquals(3L, groupCommitWriter.getStats().get("retries"));
+    }
+
+    @Test
+    @Order(24)
+    void groupCommitWriter_DoesNotRetryAmbiguousFailure() {
+
+        Map<WriteBatch, List<String>> batches = Collections.synchronizedMap(new LinkedHashMap<>());
+        Map<WriteBatch, SettableApiFuture<List<WriteResult>>> commits = new ConcurrentHashMap<>();
+        GroupCommitWriter groupCommitWriter = newGroupCommitWriter(batches, commits);
+
+        CompletableFuture<String> first = groupCommitWriter.write(addTo(batches, "a"));
+        CompletableFuture<String> second = groupCommitWriter.write(addTo(batches, "b"));
+
+        // the batch may have been applied, a retried create would conflict with the caller's own write
+        awaitBatches(batches, 1);
+        commits.values().forEach(commit -> commit.setException(Status.DEADLINE_EXCEEDED.asRuntimeException()));
+
+        for (CompletableFuture<String> write : Arrays.asList(first, second)) {
+            CompletionException ex = assertThrows(CompletionException.class, write::join);
+            assertEquals(Status.Code.DEADLINE_EXCEEDED, Status.fromThrowable(ex.getCause()).getCode());
+        }
+        assertEquals(1, batches.size());
+        assertEquals(0L, groupCommitWriter.getStats().get("retries"));
+    }
+
+    @Test
+    @Order(25)
+    void userCache_WritesRefreshNextRead() {
+
+        userController.saveUser(new SignUpDTO("memory", "admin", "memorycacheadmin@gmail.com", "memory-cache-admin", PASSWORD)).join();
+        UserDTO adminRole = new UserDTO();
+        adminRole.setRole(RoleType.ADMIN.getValue());
+        firebaseIntegration.updateUser("memory-cache-admin", adminRole, null);
+        SignInDTO adminCredentials = new SignInDTO();
+        adminCredentials.setUsername("memory-cache-admin");
+        adminCredentials.setPassword(PASSWORD);
+        String adminToken = adminController.login(adminCredentials).join().getData().getAccessToken();
+
+        userController.saveUser(new SignUpDTO("memory", "cache", "memorycache@gmail.com", "memory-cache", PASSWORD)).join();
+        String token = getAccessToken("memory-cache");
+
+        // a read of a cached user is a hit
+        firebaseIntegration.getUser("memory-cache");
+        Map<String, Long> before = getUserCacheStats(adminToken);
+        assertEquals("memory", firebaseIntegration.getUser("memory-cache").getFirstName());
+        assertUserCacheCounts(adminToken, before, 1, 0);
+
+        // updateUser reads the user back once, that read misses and the next one hits the fresh user
+        before = getUserCacheStats(adminToken);
+        UserDTO changes = new UserDTO("renamed", null, null, "memory-cache", null);
+        userController.updateUser(token, changes, null).join();
+        assertEquals("renamed", firebaseIntegration.getUser("memory-cache").getFirstName());
+        assertUserCacheCounts(adminToken, before, 1, 1);
+
+        before = getUserCacheStats(adminToken);
+        String oldPassword = firebaseIntegration.getUser("memory-cache").getPassword();
+        userController.changePassword(token, new ChangePasswordDTO("memory-pass2", "memory-pass2")).join();
+        String newPassword = firebaseIntegration.getUser("memory-cache").getPassword();
+        assertTrue(Utils.checkPassword("memory-pass2", newPassword));
+        assertNotEquals(oldPassword, newPassword);
+        assertUserCacheCounts(adminToken, before, 1, 1);
+
+        before = getUserCacheStats(adminToken);
+        UserDTO adminChanges = new UserDTO(null, "relabelled", null, "memory-cache", null);
+        adminController.updateUser(adminToken, adminChanges, null).join();
+        assertEquals("relabelled", firebaseIntegration.getUser("memory-cache").getLastName());
+        assertUserCacheCounts(adminToken, before, 1, 1);
+
+        // deleteUser reads the user to check the password, then the deleted user isn't served from the cache
+        before = getUserCacheStats(adminToken);
+        userController.deleteUser(token, new DeleteUserDTO("memory-cache", "memory-pass2")).join();
+        assertNull(firebaseIntegration.getUser("memory-cache"));
+        assertUserCacheCounts(adminToken, before, 1, 1);
+
+        firebaseIntegration.deleteUser("memory-cache-admin");
+    }
+
+    @Test
+    @Order(26)
+    void legacyItem_UpdateAndMigrationKeepSearchIndexCurrent() {
+
+        long userId = 990001L;
+        Item legacy = new Item();
+        legacy.setDocId("legacy-random-id");
+        legacy.setItemId(990001L);
+        legacy.setName("Old Chair");
+        legacy.setDescription("legacyfinish");
+        legacy.setUserId(userId);
+        legacy.setVersion("1");
+
+        Item migrated = new Item();
+        migrated.setDocId(Utils.itemKey(userId, "Old Chair"));
+        migrated.setItemId(990001L);
+        migrated.setName("Old Chair");
+        migrated.setDescription("freshfinish");
+        migrated.setUserId(userId);
+        migrated.setVersion("2");
+
+        // a firestore collection with one item written before items were keyed, the in-memory store has none
+        ItemRepository legacyRepository = mock(ItemRepository.class);
+        when(legacyRepository.findByNameAndUserId("Old Chair", userId))
+                .thenReturn(CompletableFuture.completedFuture(legacy), CompletableFuture.completedFuture(migrated));
+        when(legacyRepository.update(eq(userId), eq("Old Chair"), any(ItemDTO.class), isNull()))
+                .thenReturn(CompletableFuture.completedFuture(new ItemUpdate("legacy-random-id", "2")));
+        when(legacyRepository.migrateLegacyKeys()).thenReturn(CompletableFuture.completedFuture(1));
+        when(legacyRepository.findAll()).thenReturn(CompletableFuture.completedFuture(Collections.singletonList(migrated)));
+
+        Object itemRepository = ReflectionTestUtils.getField(firebaseIntegration, "itemRepository");
+        ReflectionTestUtils.setField(firebaseIntegration, "itemRepository", legacyRepository);
+        ReflectionTestUtils.setField(itemSearchIndex, "itemRepository", legacyRepository);
+        try {
+            itemSearchIndex.put(legacy.getDocId(), legacy.fetchItemDTO());
+            assertEquals("legacyfinish", firebaseIntegration.getItem("Old Chair", userId).getDescription());
+
+            ItemDTO changes = new ItemDTO();
+            changes.setDescription("freshfinish");
+            assertEquals("2", firebaseIntegration.updateItem(userId, "Old Chair", changes, null));
+
+            // the entry under the legacy id is the one patched, and it moves to the item's key
+            assertTrue(firebaseIntegration.getSearchAllItems(Collections.singletonList("legacyfinish")).isEmpty());
+            List<ItemDTO> updated = firebaseIntegration.getSearchAllItems(Collections.singletonList("freshfinish"));
+            assertEquals(1, updated.size());
+            assertEquals("2", updated.get(0).getVersion());
+
+            assertEquals(1, firebaseIntegration.migrateItemKeys());
+            assertEquals(1, firebaseIntegration.getSearchAllItems(Collections.singletonList("freshfinish")).size());
+            itemSearchIndex.remove(migrated.getDocId());
+            assertTrue(firebaseIntegration.getSearchAllItems(Collections.singletonList("freshfinish")).isEmpty());
+
+            assertEquals("freshfinish", firebaseIntegration.getItem("Old Chair", userId).getDescription());
+        } finally {
+            ReflectionTestUtils.setField(firebaseIntegration, "itemRepository", itemRepository);
+            ReflectionTestUtils.setField(itemSearchIndex, "itemRepository", itemRepository);
+            itemSearchIndex.reload().join();
+        }
+    }
+
+    //Private Methods
+    private Map<String, Long> getUserCacheStats(String adminToken) {
+        return adminController.getStats(adminToken).join().get("userCache");
+    }
+
+    private void assertUserCacheCounts(String adminToken, Map<String, Long> before, long hits, long misses) {
+        Map<String, Long> after = getUserCacheStats(adminToken);
+        assertEquals(hits, after.get("hits") - before.get("hits"));
+        assertEquals(misses, after.get("misses") - before.get("misses"));
+    }
+
+    private GroupCommitWriter newGroupCommitWriter(Map<WriteBatch, List<String>> batches,
+                                                   Map<WriteBatch, SettableApiFuture<List<WriteResult>>> commits) {
+        Firestore firestore = mock(Firestore.class);
+        when(firestore.batch()).thenAnswer(invocation -> {
+            WriteBatch batch = mock(WriteBatch.class);
+            SettableApiFuture<List<WriteResult>> commit = SettableApiFuture.create();
+            doReturn(commit).when(batch).commit();
+            commits.put(batch, commit);
+            return batch;
+        });
+
+        ApiFutureAdapter apiFutureAdapter = new ApiFutureAdapter();
+        ReflectionTestUtils.setField(apiFutureAdapter, "callbackExecutor", (Executor) Runnable::run);
+
+        GroupCommitWriter groupCommitWriter = new GroupCommitWriter();
+        ReflectionTestUtils.setField(groupCommitWriter, "dbFirestore", firestore);
+        ReflectionTestUtils.setField(groupCommitWriter, "apiFutureAdapter", apiFutureAdapter);
+        ReflectionTestUtils.setField(groupCommitWriter, "enabled", true);
+        ReflectionTestUtils.setField(groupCommitWriter, "windowMs", 50L);
+        ReflectionTestUtils.setField(groupCommitWriter, "maxBatchSize", 100);
+        groupCommitWriter.init();
+        return groupCommitWriter;
+    }
+
+    private Consumer<WriteBatch> addTo(Map<WriteBatch, List<String>> batches, String name) {
+        return batch -> batches.computeIfAbsent(batch, key -> new ArrayList<>()).add(name);
+    }
+
+    private void awaitBatches(Map<WriteBatch, List<String>> batches, int count) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (batches.size() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "expected " + count + " batches, got " + batches.size());
+            Thread.onSpinWait();
+        }
+    }
+
+    private void createSearchItems(String username) {
+        SignUpDTO signUpDTO = new SignUpDTO("memory", "search", username + "@gmail.com", username, PASSWORD);
+        userController.saveUser(signUpDTO).join();
+
+        ItemDTO itemDTO = new ItemDTO();
+        itemDTO.setName("Blue Lamp");
+        itemDTO.setDescription("desk light, brass finish");
+        itemDTO.setPriority("high");
+        itemService.createItem(itemDTO, username).join();
+
+        ItemDTO shadeDTO = new ItemDTO();
+        shadeDTO.setName("Shade");
+        shadeDTO.setDescription("fits any lamp");
+        itemService.createItem(shadeDTO, username).join();
+    }
+
+    private void deleteSearchUser(String username) {
+        itemService.removeItemsByUser(username).join();
+        firebaseIntegration.deleteUser(username);
+    }
+
+    private InputStream toStream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String getAccessToken() {
+        return getAccessToken(USERNAME);
+    }
+
+    private String getAccessToken(String username) {
+        SignInDTO credentials = new SignInDTO();
+        credentials.setUsername(username);
+        credentials.setPassword(PASSWORD);
+
+        ResponseDTO<UserLoginDTO> response = userController.login(credentials).join();
+        assertThat(response.getData().getAccessToken(), notNullValue());
+        return response.getData().getAccessToken();
+    }
+}
@@ -66,7 +66,7 @@ public class ItemControllerTest {
 //		mockMvc.perform(mockRequest)
 //                .andExpect(status().isOk());
 
-        ResponseDTO<UserLoginDTO> response = userController.login(credentials);
+        ResponseDTO<UserLoginDTO> response = userController.login(credentials).join();
         assertThat(response.getData().getAccessToken(), notNullValue());
         return response.getData().getAccessToken();
     }
@@ -85,42 +85,42 @@ public class ItemControllerTest {
         createItemDTO.setUsername(USERNAME);
         System.out.println(createItemDTO);
 
-        return itemController.createItem(accessToken, createItemDTO);
+        return itemController.createItem(accessToken, createItemDTO).join();
     }
 
     @Test
     public void getAllItems_Success() {
         String token = getAccessToken();
-        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME);
+        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         if (userItemsResponse.size() > 0) {
-            String clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME);
-            assertEquals(clearUserItemsResponse.substring(0, 5), "2021-");
+            int clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME).join();
+            assertEquals(userItemsResponse.size(), clearUserItemsResponse);
         }
 
-        List<ItemDTO> allItemsResponse = itemController.getAllItems(token);
+        List<ItemDTO> allItemsResponse = itemController.getAllItems(token).join();
         assert(allItemsResponse.size() > 0);
     }
 
     @Test
     public void getUserItems_Success() {
         String token = getAccessToken();
-        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME);
+        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         if (userItemsResponse.size() > 0) {
-            String clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME);
-            assertEquals(clearUserItemsResponse.substring(0, 5), "2021-");
+            int clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME).join();
+            assertEquals(userItemsResponse.size(), clearUserItemsResponse);
         }
 
-        userItemsResponse = itemController.getUserItems(token, USERNAME);
+        userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() == 0);
     }
 
     @Test
     public void createItem_Success() {
         String token = getAccessToken();
-        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME);
+        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         if (userItemsResponse.size() > 0) {
-            String clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME);
-            assertEquals(clearUserItemsResponse.substring(0, 5), "2021-");
+            int clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME).join();
+            assertEquals(userItemsResponse.size(), clearUserItemsResponse);
         }
 
         ItemDTO itemDTO = new ItemDTO();
@@ -131,71 +131,71 @@ public class ItemControllerTest {
         createItemDTO.setUsername(USERNAME);
         System.out.println(createItemDTO);
 
-        String createResponse = itemController.createItem(token, createItemDTO);
+        String createResponse = itemController.createItem(token, createItemDTO).join();
         System.out.println(createResponse);
         assertEquals(createResponse.substring(0,5), "2021-");
 
-        userItemsResponse = itemController.getUserItems(token, USERNAME);
+        userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() == 1);
 
-        String removeResponse = itemController.removeItem(token, itemDTO.getName(), USERNAME);
+        String removeResponse = itemController.removeItem(token, itemDTO.getName(), USERNAME).join();
         assertEquals(removeResponse.substring(0,5), "2021-");
 
-        userItemsResponse = itemController.getUserItems(token, USERNAME);
+        userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() == 0);
     }
 
     @Test
     public void updateItem_Success() {
         String token = getAccessToken();
-        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME);
+        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         if (userItemsResponse.size() > 0) {
-            String clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME);
-            assertEquals(clearUserItemsResponse.substring(0, 5), "2021-");
+            int clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME).join();
+            assertEquals(userItemsResponse.size(), clearUserItemsResponse);
         }
         addItemToDb(token, INITIAL_ITEM_NAME);
-        userItemsResponse = itemController.getUserItems(token, USERNAME);
+        userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() == 1);
 
         ItemDTO updatedItemDTO = new ItemDTO();
         updatedItemDTO.setName(UPDATE_ITEM_NAME);
         updatedItemDTO.setUserId(firebaseIntegration.getUserId(USERNAME));
 
-        String updateResponse = itemController.updateItem(token, INITIAL_ITEM_NAME, updatedItemDTO);
+        String updateResponse = itemController.updateItem(token, INITIAL_ITEM_NAME, updatedItemDTO, null).join().getBody();
         System.out.println(updateResponse);
         assertEquals(updateResponse.substring(0,5), "2021-");
 
-        userItemsResponse = itemController.getUserItems(token, USERNAME);
+        userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() == 1);
 
-        String removeResponse = itemController.removeItem(token, updatedItemDTO.getName(), USERNAME);
+        String removeResponse = itemController.removeItem(token, updatedItemDTO.getName(), USERNAME).join();
         assertEquals(removeResponse.substring(0,5), "2021-");
 
-        userItemsResponse = itemController.getUserItems(token, USERNAME);
+        userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() == 0);
     }
 
     @Test
     public void removeItem_Success() {
         String token = getAccessToken();
-        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME);
+        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         if (userItemsResponse.size() > 0) {
-            String clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME);
-            assertEquals(clearUserItemsResponse.substring(0, 5), "2021-");
+            int clearUserItemsResponse = itemController.removeItemsByUser(token, USERNAME).join();
+            assertEquals(userItemsResponse.size(), clearUserItemsResponse);
         }
         addItemToDb(token, INITIAL_ITEM_NAME);
-        userItemsResponse = itemController.getUserItems(token, USERNAME);
+        userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() == 1);
 
         ItemDTO itemDTO = new ItemDTO();
         itemDTO.setName(INITIAL_ITEM_NAME);
         itemDTO.setUserId(firebaseIntegration.getUserId(USERNAME));
 
-        String removeResponse = itemController.removeItem(token, INITIAL_ITEM_NAME, USERNAME);
+        String removeResponse = itemController.removeItem(token, INITIAL_ITEM_NAME, USERNAME).join();
         System.out.println(removeResponse);
         assertEquals(removeResponse.substring(0,5), "2021-");
 
-        userItemsResponse = itemController.getUserItems(token, USERNAME);
+        userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() == 0);
     }
 
@@ -205,12 +205,13 @@ public class ItemControllerTest {
         addItemToDb(token, "item 1");
         addItemToDb(token, "item 2");
         addItemToDb(token, "item 3");
-        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME);
+        List<ItemDTO> userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() >= 3);
 
-        String removeAllResponse = itemController.removeItemsByUser(token, USERNAME);
+        int removeAllResponse = itemController.removeItemsByUser(token, USERNAME).join();
+        assertEquals(userItemsResponse.size(), removeAllResponse);
 
-        userItemsResponse = itemController.getUserItems(token, USERNAME);
+        userItemsResponse = itemController.getUserItems(token, USERNAME).join();
         assert(userItemsResponse.size() == 0);
     }
 }
@@ -51,7 +51,7 @@ public class UserControllerTest {
         }
 
         SignUpDTO signUpDTO = new SignUpDTO(FIRSTNAME, LASTNAME, EMAIL, USERNAME, PASSWORD);
-        String responseTimestamp = userController.saveUser(signUpDTO);
+        String responseTimestamp = userController.saveUser(signUpDTO).join();
         assertThat(responseTimestamp, notNullValue());
     }
 
@@ -62,7 +62,7 @@ public class UserControllerTest {
         credentials.setUsername(USERNAME);
         credentials.setPassword(PASSWORD);
 
-        ResponseDTO<UserLoginDTO> response = userController.login(credentials);
+        ResponseDTO<UserLoginDTO> response = userController.login(credentials).join();
 
         String token = response.getData().getAccessToken();
 
@@ -78,7 +78,7 @@ public class UserControllerTest {
         String newEmail = "unittestuser@gmail.com";
 
         UserDTO updateUserRequest = new UserDTO(newFirstName, newLastName, newEmail, USERNAME, null);
-        UserDTO updateUserResponse = userController.updateUser(getAccessToken(PASSWORD), updateUserRequest);
+        UserDTO updateUserResponse = userController.updateUser(getAccessToken(PASSWORD), updateUserRequest, null).join().getBody();
 
         assertThat(updateUserResponse, notNullValue());
         assertEquals(newFirstName, updateUserResponse.getFirstName());
@@ -93,7 +93,7 @@ public class UserControllerTest {
         String confirmPassword = "user-pass32";
 
         ChangePasswordDTO changePasswordDTO = new ChangePasswordDTO(NEW_PASSWORD, confirmPassword);
-        ResponseDTO<Long> responseDTO = userController.changePassword(getAccessToken(PASSWORD), changePasswordDTO);
+        ResponseDTO<Long> responseDTO = userController.changePassword(getAccessToken(PASSWORD), changePasswordDTO).join();
 
         assertThat(responseDTO.getData(), notNullValue());
 
@@ -107,7 +107,7 @@ public class UserControllerTest {
     @Order(5)
     void userLogout_Success() {
 
-        String response = userController.logout(getAccessToken(NEW_PASSWORD));
+        String response = userController.logout(getAccessToken(NEW_PASSWORD)).join();
 
         assertEquals(Constants.USER_LOGOUT_SUCCESSFUL, response);
     }
@@ -120,7 +120,7 @@ public class UserControllerTest {
         String updatedPassword = "user-pass32";
 
         DeleteUserDTO deleteUserDTO = new DeleteUserDTO(USERNAME, updatedPassword);
-        String response = userController.deleteUser(accessToken, deleteUserDTO);
+        String response = userController.deleteUser(accessToken, deleteUserDTO).join();
 
         assertEquals(Constants.USER_DELETED + " " + USERNAME, response);
 
@@ -135,7 +135,7 @@ public class UserControllerTest {
         credentials.setUsername(USERNAME);
         credentials.setPassword(password);
 
-        ResponseDTO<UserLoginDTO> response = userController.login(credentials);
+        ResponseDTO<UserLoginDTO> response = userController.login(credentials).join();
         assertThat(response.getData().getAccessToken(), notNullValue());
         return response.getData().getAccessToken();
     }